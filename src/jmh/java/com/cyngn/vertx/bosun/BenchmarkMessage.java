@@ -0,0 +1,88 @@
+/*
+ * Copyright 2015 Cyanogen Inc.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.cyngn.vertx.bosun;
+
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Handler;
+import io.vertx.core.MultiMap;
+import io.vertx.core.eventbus.DeliveryOptions;
+import io.vertx.core.eventbus.Message;
+import io.vertx.core.json.JsonObject;
+
+/**
+ * A message that can be handed to the reporter directly so benchmarks measure the handling and not the event bus.
+ * Replies are kept so they can be checked and consumed.
+ */
+class BenchmarkMessage implements Message<Object> {
+
+    private final Object body;
+    private final MultiMap headers = MultiMap.caseInsensitiveMultiMap();
+    volatile Object lastReply;
+    int failures;
+
+    BenchmarkMessage(JsonObject body) {
+        this.body = body;
+    }
+
+    BenchmarkMessage(OpenTsDbMetric body, String action) {
+        this.body = body;
+        headers.add(BosunReporter.ACTION_FIELD, action);
+    }
+
+    @Override
+    public String address() {
+        return "vertx.bosun-reporter";
+    }
+
+    @Override
+    public MultiMap headers() {
+        return headers;
+    }
+
+    @Override
+    public Object body() {
+        return body;
+    }
+
+    @Override
+    public String replyAddress() {
+        return null;
+    }
+
+    @Override
+    public void reply(Object message) {
+        lastReply = message;
+    }
+
+    @Override
+    public <R> void reply(Object message, Handler<AsyncResult<Message<R>>> replyHandler) {
+        lastReply = message;
+    }
+
+    @Override
+    public void reply(Object message, DeliveryOptions options) {
+        lastReply = message;
+    }
+
+    @Override
+    public <R> void reply(Object message, DeliveryOptions options, Handler<AsyncResult<Message<R>>> replyHandler) {
+        lastReply = message;
+    }
+
+    @Override
+    public void fail(int failureCode, String message) {
+        failures++;
+    }
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright 2015 Cyanogen Inc.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.cyngn.vertx.bosun;
+
+import io.vertx.core.DeploymentOptions;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Dispatch of messages through BosunReporter.handle. The reporter points at a stub bosun that accepts everything,
+ * every series gets indexed up front so the benchmarks exercise the in process path, looking up the action
+ * handler, building the metric and checking it has already been indexed.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class BosunReporterBenchmark {
+
+    private static final String ADDRESS = "vertx.bosun-reporter";
+    private static final int STUB_PORT = 8094;
+
+    @Param({"1000"})
+    public int seriesCount;
+
+    private Vertx vertx;
+    private BosunReporter reporter;
+    private BenchmarkMessage[] jsonMessages;
+    private BenchmarkMessage[] metricMessages;
+    private BenchmarkMessage invalidAction;
+    private int next;
+
+    @Setup
+    public void setup() throws Exception {
+        vertx = Vertx.vertx();
+
+        CountDownLatch listening = new CountDownLatch(1);
+        vertx.createHttpServer().requestHandler(request -> request.response().setStatusCode(204).end())
+                .listen(STUB_PORT, result -> listening.countDown());
+        await(listening);
+
+        JsonObject config = new JsonObject().put("address", ADDRESS)
+                .put("hosts", new JsonArray().add(new JsonObject().put("host", "localhost").put("port", STUB_PORT)));
+        CountDownLatch deployed = new CountDownLatch(1);
+        reporter = new BosunReporter();
+        vertx.deployVerticle(reporter, new DeploymentOptions().setConfig(config), result -> deployed.countDown());
+        await(deployed);
+
+        jsonMessages = new BenchmarkMessage[seriesCount];
+        metricMessages = new BenchmarkMessage[seriesCount];
+        BosunPublisher publisher = new BosunPublisher(ADDRESS, vertx.eventBus());
+        CountDownLatch indexed = new CountDownLatch(seriesCount);
+        AtomicInteger failures = new AtomicInteger();
+        for (int i = 0; i < seriesCount; i++) {
+            JsonObject tags = new JsonObject().put("host", "host" + i).put("endpoint", "/v1/items");
+            jsonMessages[i] = new BenchmarkMessage(new JsonObject()
+                    .put(BosunReporter.ACTION_FIELD, BosunReporter.INDEX_COMMAND)
+                    .put(OpenTsDbMetric.METRIC_FIELD, "api.add_item.time").put(OpenTsDbMetric.VALUE_FIELD, 150.23)
+                    .put(OpenTsDbMetric.TAGS_FIELD, tags));
+            metricMessages[i] = new BenchmarkMessage(new OpenTsDbMetric("api.add_item.time", 150.23, tags),
+                    BosunReporter.INDEX_COMMAND);
+
+            publisher.index("api.add_item.time", 150.23, tags, result -> {
+                if (result.failed()) { failures.incrementAndGet(); }
+                indexed.countDown();
+            });
+        }
+        await(indexed);
+        if (failures.get() > 0) { throw new IllegalStateException(failures.get() + " series failed to index"); }
+
+        invalidAction = new BenchmarkMessage(new JsonObject().put(BosunReporter.ACTION_FIELD, "delete"));
+    }
+
+    private static void await(CountDownLatch latch) throws InterruptedException {
+        if (!latch.await(30, TimeUnit.SECONDS)) { throw new IllegalStateException("timed out setting up"); }
+    }
+
+    @TearDown
+    public void tearDown() {
+        vertx.close();
+    }
+
+    @Benchmark
+    public Object indexSeenJson() {
+        next = (next + 1) % seriesCount;
+        BenchmarkMessage message = jsonMessages[next];
+        reporter.handle(message);
+        return message.lastReply;
+    }
+
+    @Benchmark
+    public Object indexSeenMetric() {
+        next = (next + 1) % seriesCount;
+        BenchmarkMessage message = metricMessages[next];
+        reporter.handle(message);
+        return message.lastReply;
+    }
+
+    @Benchmark
+    public int invalidAction() {
+        reporter.handle(invalidAction);
+        return invalidAction.failures;
+    }
+}
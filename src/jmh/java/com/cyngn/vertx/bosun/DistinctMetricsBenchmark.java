@@ -0,0 +1,99 @@
+/*
+ * Copyright 2015 Cyanogen Inc.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.cyngn.vertx.bosun;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import io.vertx.core.json.JsonObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The lookup an index call makes to see if bosun has seen a series lately, comparing the String keyed Guava cache
+ * the reporter used to build against the SeriesKeyIndex it uses now.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class DistinctMetricsBenchmark {
+
+    @Param({"1000", "100000"})
+    public int seriesCount;
+
+    private OpenTsDbMetric[] seen;
+    private OpenTsDbMetric[] unseen;
+    private LoadingCache<String, Boolean> distinctMetrics;
+    private SeriesKeyIndex seriesKeyIndex;
+    private int next;
+
+    @Setup
+    public void setup() {
+        // the old reporter defaults for max_index_cache_size and index_expiry_minutes
+        distinctMetrics = CacheBuilder.newBuilder()
+                .maximumSize(1000000)
+                .expireAfterWrite(10, TimeUnit.MINUTES)
+                .build(new CacheLoader<String, Boolean>() { public Boolean load(String key) { return true; } });
+
+        seriesKeyIndex = new SeriesKeyIndex(1000000, TimeUnit.MINUTES.toMillis(10));
+
+        long now = System.currentTimeMillis();
+        seen = new OpenTsDbMetric[seriesCount];
+        unseen = new OpenTsDbMetric[seriesCount];
+        for (int i = 0; i < seriesCount; i++) {
+            seen[i] = createMetric("host" + i);
+            unseen[i] = createMetric("other" + i);
+            distinctMetrics.put(seen[i].getDistinctKey(), true);
+            seriesKeyIndex.add(seen[i].getFingerprint(), now);
+        }
+    }
+
+    private static OpenTsDbMetric createMetric(String host) {
+        JsonObject tags = new JsonObject().put("host", host).put("endpoint", "/v1/items").put("status", "200");
+        return new OpenTsDbMetric("api.add_item.time", 150.23, tags);
+    }
+
+    @Benchmark
+    public Boolean guavaLookupSeen() {
+        next = (next + 1) % seriesCount;
+        return distinctMetrics.getIfPresent(seen[next].getDistinctKey());
+    }
+
+    @Benchmark
+    public Boolean guavaLookupUnseen() {
+        next = (next + 1) % seriesCount;
+        return distinctMetrics.getIfPresent(unseen[next].getDistinctKey());
+    }
+
+    @Benchmark
+    public boolean seriesKeyIndexLookupSeen() {
+        next = (next + 1) % seriesCount;
+        return seriesKeyIndex.contains(seen[next].getFingerprint(), System.currentTimeMillis());
+    }
+
+    @Benchmark
+    public boolean seriesKeyIndexLookupUnseen() {
+        next = (next + 1) % seriesCount;
+        return seriesKeyIndex.contains(unseen[next].getFingerprint(), System.currentTimeMillis());
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright 2015 Cyanogen Inc.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.cyngn.vertx.bosun;
+
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.json.JsonObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Measures the CPU cost of gzipping put request bodies, against a new GZIPOutputStream per request. The
+ * compression ratio for each batch size and level is printed during setup.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class GzipEncoderBenchmark {
+
+    @Param({"10", "100", "500"})
+    public int batchSize;
+
+    @Param({"1", "6"})
+    public int level;
+
+    private Buffer body;
+    private GzipEncoder encoder;
+
+    @Setup
+    public void setup() {
+        List<OpenTsDbMetric> metrics = new ArrayList<>(batchSize);
+        for (int i = 0; i < batchSize; i++) {
+            JsonObject tags = new JsonObject().put("host", "api" + (i % 10) + ".my.server.com")
+                    .put("endpoint", "/v1/items/" + (i % 25)).put("status", i % 20 == 0 ? "500" : "200");
+            metrics.add(new OpenTsDbMetric("api.add_item.time", 150.23 + i * 1.7, tags));
+        }
+        body = new PutBodyWriter().write(metrics);
+        encoder = new GzipEncoder(level);
+
+        int compressed = encoder.encode(body).length();
+        System.out.printf("%nbatchSize=%d level=%d: %d bytes -> %d bytes, ratio %.2f%n", batchSize, level,
+                body.length(), compressed, (double) body.length() / compressed);
+    }
+
+    @TearDown
+    public void tearDown() {
+        encoder.close();
+    }
+
+    @Benchmark
+    public Buffer gzipEncoder() {
+        return encoder.encode(body);
+    }
+
+    @Benchmark
+    public Buffer gzipOutputStream() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out) {{ def.setLevel(level); }}) {
+            gzip.write(body.getBytes());
+        }
+        return Buffer.buffer(out.toByteArray());
+    }
+}
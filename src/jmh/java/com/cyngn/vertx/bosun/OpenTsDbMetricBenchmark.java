@@ -0,0 +1,82 @@
+/*
+ * Copyright 2015 Cyanogen Inc.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.cyngn.vertx.bosun;
+
+import io.vertx.core.json.JsonObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Covers the per metric work every message pays for, building and validating the metric, the keys used to
+ * de-dupe index calls and the JSON encoding.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class OpenTsDbMetricBenchmark {
+
+    @Param({"1", "4", "8"})
+    public int tagCount;
+
+    private JsonObject tags;
+    private JsonObject message;
+    private OpenTsDbMetric metric;
+
+    @Setup
+    public void setup() {
+        tags = new JsonObject();
+        for (int i = 0; i < tagCount; i++) {
+            tags.put("tag" + i, "value" + i);
+        }
+
+        message = new JsonObject().put(BosunReporter.ACTION_FIELD, BosunReporter.PUT_COMMAND)
+                .put(OpenTsDbMetric.METRIC_FIELD, "api.add_item.time").put(OpenTsDbMetric.VALUE_FIELD, 150.23)
+                .put(OpenTsDbMetric.TAGS_FIELD, tags);
+        metric = new OpenTsDbMetric(message);
+    }
+
+    @Benchmark
+    public OpenTsDbMetric constructFromFields() {
+        return new OpenTsDbMetric("api.add_item.time", 150.23, tags);
+    }
+
+    @Benchmark
+    public OpenTsDbMetric constructFromJson() {
+        return new OpenTsDbMetric(message);
+    }
+
+    @Benchmark
+    public String distinctKey() {
+        return metric.getDistinctKey();
+    }
+
+    @Benchmark
+    public long fingerprint() {
+        return metric.getFingerprint();
+    }
+
+    @Benchmark
+    public String asJsonEncode() {
+        return metric.asJson().encode();
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright 2015 Cyanogen Inc.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.cyngn.vertx.bosun;
+
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares building put request bodies through JsonObject encoding against the PutBodyWriter. Run with the gc
+ * profiler to see bytes allocated per operation, divide by batchSize for per metric numbers.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class PutBodyWriterBenchmark {
+
+    @Param({"1", "100"})
+    public int batchSize;
+
+    private List<OpenTsDbMetric> metrics;
+    private PutBodyWriter writer;
+
+    @Setup
+    public void setup() {
+        metrics = new ArrayList<>(batchSize);
+        for (int i = 0; i < batchSize; i++) {
+            JsonObject tags = new JsonObject().put("host", "api" + (i % 10) + ".my.server.com")
+                    .put("endpoint", "/v1/items").put("status", "200");
+            metrics.add(new OpenTsDbMetric("api.add_item.time", 150.23 + i, tags));
+        }
+        writer = new PutBodyWriter();
+    }
+
+    @Benchmark
+    public Buffer jsonObjectEncode() {
+        String data;
+        if (metrics.size() == 1) {
+            data = metrics.get(0).asJson().encode();
+        } else {
+            JsonArray array = new JsonArray();
+            for (OpenTsDbMetric metric : metrics) { array.add(metric.asJson()); }
+            data = array.encode();
+        }
+        return Buffer.buffer(data.getBytes());
+    }
+
+    @Benchmark
+    public Buffer putBodyWriter() {
+        return writer.write(metrics);
+    }
+}
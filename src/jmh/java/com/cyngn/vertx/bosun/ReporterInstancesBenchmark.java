@@ -0,0 +1,115 @@
+/*
+ * Copyright 2015 Cyanogen Inc.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.cyngn.vertx.bosun;
+
+import io.vertx.core.Context;
+import io.vertx.core.DeploymentOptions;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Messages per millisecond the reporter handles as more instances are deployed. Several senders on their own event
+ * loops fire index calls for series that have already been indexed, so the work is all in the reporter instances
+ * and their shared index rather than in talking to bosun. Throughput should grow with instances up to the number of
+ * cores.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ReporterInstancesBenchmark {
+
+    private static final String ADDRESS = "vertx.bosun-reporter";
+    private static final int STUB_PORT = 8095;
+    private static final int SERIES = 1000;
+    private static final int SENDERS = 8;
+    private static final int MESSAGES_PER_SENDER = 500;
+
+    @Param({"1", "2", "4", "8"})
+    public int instances;
+
+    private Vertx vertx;
+    private BosunPublisher publisher;
+    private JsonObject[] tags;
+    private Context[] senders;
+
+    @Setup
+    public void setup() throws Exception {
+        vertx = Vertx.vertx();
+
+        CountDownLatch listening = new CountDownLatch(1);
+        vertx.createHttpServer().requestHandler(request -> request.response().setStatusCode(204).end())
+                .listen(STUB_PORT, result -> listening.countDown());
+        await(listening);
+
+        JsonObject config = new JsonObject().put("address", ADDRESS)
+                .put("hosts", new JsonArray().add(new JsonObject().put("host", "localhost").put("port", STUB_PORT)));
+        CountDownLatch deployed = new CountDownLatch(1);
+        vertx.deployVerticle(BosunReporter.class.getName(),
+                new DeploymentOptions().setConfig(config).setInstances(instances), result -> deployed.countDown());
+        await(deployed);
+
+        publisher = new BosunPublisher(ADDRESS, vertx.eventBus(), true);
+        tags = new JsonObject[SERIES];
+        CountDownLatch indexed = new CountDownLatch(SERIES);
+        for (int i = 0; i < SERIES; i++) {
+            tags[i] = new JsonObject().put("host", "host" + i).put("endpoint", "/v1/items");
+            publisher.index("api.add_item.time", 150.23, tags[i], result -> indexed.countDown());
+        }
+        await(indexed);
+
+        // from outside vert.x every call hands out a new context, spread over the event loops
+        senders = new Context[SENDERS];
+        for (int i = 0; i < SENDERS; i++) { senders[i] = vertx.getOrCreateContext(); }
+    }
+
+    private static void await(CountDownLatch latch) throws InterruptedException {
+        if (!latch.await(30, TimeUnit.SECONDS)) { throw new IllegalStateException("timed out waiting on vert.x"); }
+    }
+
+    @TearDown
+    public void tearDown() {
+        vertx.close();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SENDERS * MESSAGES_PER_SENDER)
+    public void indexSeen() throws InterruptedException {
+        CountDownLatch replies = new CountDownLatch(SENDERS * MESSAGES_PER_SENDER);
+        for (int i = 0; i < SENDERS; i++) {
+            int offset = i * MESSAGES_PER_SENDER;
+            senders[i].runOnContext(v -> {
+                for (int j = 0; j < MESSAGES_PER_SENDER; j++) {
+                    publisher.index("api.add_item.time", 150.23, tags[(offset + j) % SERIES],
+                            result -> replies.countDown());
+                }
+            });
+        }
+        await(replies);
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright 2015 Cyanogen Inc.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.cyngn.vertx.bosun;
+
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.json.JsonObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The per metric work from a put to the request body, building the metric, fingerprinting it for the index and
+ * writing it in a batch, for plain metrics against ones from a SeriesHandle. Times are per metric.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class SeriesHandleBenchmark {
+
+    private static final int BATCH_SIZE = 100;
+
+    @Param({"1", "4", "8"})
+    public int tagCount;
+
+    private JsonObject tags;
+    private SeriesHandle series;
+    private PutBodyWriter writer;
+    private List<OpenTsDbMetric> batch;
+    private long timestamp;
+
+    @Setup
+    public void setup() {
+        tags = new JsonObject();
+        for (int i = 0; i < tagCount; i++) {
+            tags.put("tag" + i, "value" + i);
+        }
+        series = new BosunPublisher("benchmark", null).series("api.add_item.time", tags);
+        writer = new PutBodyWriter();
+        batch = new ArrayList<>(BATCH_SIZE);
+        timestamp = System.currentTimeMillis();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public Buffer plainMetric(Blackhole blackhole) {
+        batch.clear();
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            OpenTsDbMetric metric = new OpenTsDbMetric("api.add_item.time", 150.23, timestamp, tags);
+            blackhole.consume(metric.getFingerprint());
+            batch.add(metric);
+        }
+        return writer.write(batch);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public Buffer seriesMetric(Blackhole blackhole) {
+        batch.clear();
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            OpenTsDbMetric metric = new OpenTsDbMetric(series, 150.23, timestamp);
+            blackhole.consume(metric.getFingerprint());
+            batch.add(metric);
+        }
+        return writer.write(batch);
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ * Copyright 2015 Cyanogen Inc.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.cyngn.vertx.bosun;
+
+import io.vertx.core.Context;
+import io.vertx.core.DeploymentOptions;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Puts per millisecond through the reporter to a stub server over http against the telnet protocol. The stubs
+ * read and throw away what they get, so this is the cost on the reporter side of each transport.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class TransportBenchmark {
+
+    private static final String ADDRESS = "vertx.bosun-reporter";
+    private static final int HTTP_PORT = 8096;
+    private static final int TELNET_PORT = 8097;
+    private static final int SERIES = 100;
+    private static final int SENDERS = 4;
+    private static final int MESSAGES_PER_SENDER = 1000;
+
+    @Param({BosunHost.HTTP_PROTOCOL, BosunHost.TELNET_PROTOCOL})
+    public String protocol;
+
+    @Param({"1", "100"})
+    public int batchSize;
+
+    private Vertx vertx;
+    private BosunPublisher publisher;
+    private JsonObject[] tags;
+    private Context[] senders;
+
+    @Setup
+    public void setup() throws Exception {
+        vertx = Vertx.vertx();
+
+        CountDownLatch listening = new CountDownLatch(2);
+        vertx.createHttpServer().requestHandler(request -> request.bodyHandler(body ->
+                request.response().setStatusCode(204).end())).listen(HTTP_PORT, result -> listening.countDown());
+        vertx.createNetServer().connectHandler(socket -> socket.handler(data -> { }))
+                .listen(TELNET_PORT, result -> listening.countDown());
+        await(listening);
+
+        int port = BosunHost.TELNET_PROTOCOL.equals(protocol) ? TELNET_PORT : HTTP_PORT;
+        JsonObject config = new JsonObject().put("address", ADDRESS).put("max_batch_size", batchSize)
+                .put("max_batch_delay_ms", 5)
+                .put("hosts", new JsonArray().add(new JsonObject().put("host", "localhost").put("port", port)
+                        .put("protocol", protocol)));
+        CountDownLatch deployed = new CountDownLatch(1);
+        vertx.deployVerticle(BosunReporter.class.getName(), new DeploymentOptions().setConfig(config),
+                result -> deployed.countDown());
+        await(deployed);
+
+        publisher = new BosunPublisher(ADDRESS, vertx.eventBus(), true);
+        tags = new JsonObject[SERIES];
+        for (int i = 0; i < SERIES; i++) {
+            tags[i] = new JsonObject().put("host", "host" + i).put("endpoint", "/v1/items");
+        }
+
+        // the telnet connection opens in the background, wait until a put makes it through
+        CountDownLatch connected = new CountDownLatch(1);
+        while (connected.getCount() > 0) {
+            publisher.put("api.add_item.time", 150.23, tags[0], result -> {
+                if (result.succeeded()) { connected.countDown(); }
+            });
+            connected.await(100, TimeUnit.MILLISECONDS);
+        }
+
+        // from outside vert.x every call hands out a new context, spread over the event loops
+        senders = new Context[SENDERS];
+        for (int i = 0; i < SENDERS; i++) { senders[i] = vertx.getOrCreateContext(); }
+    }
+
+    private static void await(CountDownLatch latch) throws InterruptedException {
+        if (!latch.await(30, TimeUnit.SECONDS)) { throw new IllegalStateException("timed out waiting on vert.x"); }
+    }
+
+    @TearDown
+    public void tearDown() {
+        vertx.close();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SENDERS * MESSAGES_PER_SENDER)
+    public void put() throws InterruptedException {
+        CountDownLatch replies = new CountDownLatch(SENDERS * MESSAGES_PER_SENDER);
+        for (int i = 0; i < SENDERS; i++) {
+            int offset = i * MESSAGES_PER_SENDER;
+            senders[i].runOnContext(v -> {
+                for (int j = 0; j < MESSAGES_PER_SENDER; j++) {
+                    publisher.put("api.add_item.time", 150.23, tags[(offset + j) % SERIES],
+                            result -> replies.countDown());
+                }
+            });
+        }
+        await(replies);
+    }
+}
@@ -0,0 +1,449 @@
+/*
+ * Copyright 2015 Cyanogen Inc.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.cyngn.vertx.bosun;
+
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Aggregates observations in process and publishes one data point per series each flush interval instead of one
+ * per observation.
+ *
+ * Series are keyed the same way as {@link OpenTsDbMetric#getDistinctKey()}. Recording is lock free and safe from
+ * any thread, flushing happens on a vert.x timer. Counters publish the total for the interval, gauges the last
+ * value set and timers publish '.count', '.min', '.max', '.mean' and a '.pNN' metric per configured percentile.
+ * Histograms publish each configured percentile as the same metric with a 'quantile' tag, ie quantile=p99.
+ * Series that see no updates in an interval publish nothing and are dropped until they are next used, a recorder that
+ * finds the series it looked up was dropped under it records again in a new one.
+ */
+public class BosunAggregator {
+
+    public static final double[] DEFAULT_PERCENTILES = {0.5, 0.9, 0.99, 0.999};
+    public static final String QUANTILE_TAG = "quantile";
+
+    // timers take fractional values, keep three decimal places of them in the histogram
+    private static final double TIMER_SCALE = 1000.0;
+
+    private final Vertx vertx;
+    private final BosunPublisher publisher;
+    private final long flushIntervalMs;
+    private final double[] percentiles;
+
+    private final Map<String, CounterCell> counters = new ConcurrentHashMap<>();
+    private final Map<String, GaugeCell> gauges = new ConcurrentHashMap<>();
+    private final Map<String, TimerCell> timers = new ConcurrentHashMap<>();
+    private final Map<String, HistogramCell> histograms = new ConcurrentHashMap<>();
+    private long flushTimerId = -1;
+
+    public BosunAggregator(Vertx vertx, BosunPublisher publisher, long flushIntervalMs) {
+        this(vertx, publisher, flushIntervalMs, DEFAULT_PERCENTILES);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param vertx the vertx instance to schedule flushes on
+     * @param publisher where the aggregated metrics get published
+     * @param flushIntervalMs how often to publish the aggregated metrics
+     * @param percentiles the percentiles to publish for timers and histograms, ie 0.99
+     */
+    public BosunAggregator(Vertx vertx, BosunPublisher publisher, long flushIntervalMs, double[] percentiles) {
+        this.vertx = vertx;
+        this.publisher = publisher;
+        this.flushIntervalMs = flushIntervalMs;
+        this.percentiles = Arrays.copyOf(percentiles, percentiles.length);
+    }
+
+    /**
+     * Start publishing on the flush interval
+     */
+    public void start() {
+        if (flushTimerId == -1) {
+            flushTimerId = vertx.setPeriodic(flushIntervalMs, timerId -> flush());
+        }
+    }
+
+    /**
+     * Stop the flush timer, publishing whatever has been aggregated so far
+     */
+    public void stop() {
+        if (flushTimerId != -1) {
+            vertx.cancelTimer(flushTimerId);
+            flushTimerId = -1;
+        }
+        flush();
+    }
+
+    /**
+     * Add to a counter
+     *
+     * @param metric the metric name
+     * @param delta the amount to add
+     * @param tags the tags associated
+     */
+    public void increment(String metric, long delta, JsonObject tags) {
+        String key = OpenTsDbMetric.getDistinctKey(metric, tags);
+        while (true) {
+            CounterCell cell = counters.get(key);
+            if (cell == null) { cell = counters.computeIfAbsent(key, k -> new CounterCell(metric, tags)); }
+            if (cell.add(delta)) { return; }
+            counters.remove(key, cell);
+        }
+    }
+
+    /**
+     * Set a gauge, only the last value set in an interval is published
+     *
+     * @param metric the metric name
+     * @param value the current value
+     * @param tags the tags associated
+     */
+    public void gauge(String metric, double value, JsonObject tags) {
+        String key = OpenTsDbMetric.getDistinctKey(metric, tags);
+        while (true) {
+            GaugeCell cell = gauges.get(key);
+            if (cell == null) { cell = gauges.computeIfAbsent(key, k -> new GaugeCell(metric, tags)); }
+            if (cell.set(value)) { return; }
+            gauges.remove(key, cell);
+        }
+    }
+
+    /**
+     * Record a timing
+     *
+     * @param metric the metric name
+     * @param value the timing
+     * @param tags the tags associated
+     */
+    public void time(String metric, double value, JsonObject tags) {
+        String key = OpenTsDbMetric.getDistinctKey(metric, tags);
+        while (true) {
+            TimerCell cell = timers.get(key);
+            if (cell == null) { cell = timers.computeIfAbsent(key, k -> new TimerCell(metric, tags)); }
+            if (cell.record(value)) { return; }
+            timers.remove(key, cell);
+        }
+    }
+
+    /**
+     * Record a value in a histogram, ie a latency in microseconds
+     *
+     * @param metric the metric name
+     * @param value the value, negative values are recorded as 0
+     * @param tags the tags associated, without a 'quantile' tag
+     */
+    public void histogram(String metric, long value, JsonObject tags) {
+        String key = OpenTsDbMetric.getDistinctKey(metric, tags);
+        while (true) {
+            HistogramCell cell = getHistogramCell(key, metric, tags);
+            if (cell.startRecording()) {
+                cell.histogram.record(value);
+                cell.finishRecording();
+                return;
+            }
+            histograms.remove(key, cell);
+        }
+    }
+
+    /**
+     * Merge a histogram recorded elsewhere, ie by another verticle instance, into a series
+     *
+     * @param metric the metric name
+     * @param histogram a histogram with the default layout
+     * @param tags the tags associated, without a 'quantile' tag
+     */
+    public void histogram(String metric, LatencyHistogram histogram, JsonObject tags) {
+        String key = OpenTsDbMetric.getDistinctKey(metric, tags);
+        while (true) {
+            HistogramCell cell = getHistogramCell(key, metric, tags);
+            if (cell.startRecording()) {
+                cell.histogram.merge(histogram);
+                cell.finishRecording();
+                return;
+            }
+            histograms.remove(key, cell);
+        }
+    }
+
+    private HistogramCell getHistogramCell(String key, String metric, JsonObject tags) {
+        HistogramCell cell = histograms.get(key);
+        if (cell == null) { cell = histograms.computeIfAbsent(key, k -> new HistogramCell(metric, tags, percentiles)); }
+        return cell;
+    }
+
+    /**
+     * Publish everything aggregated since the last flush and reset for the next interval
+     */
+    public void flush() {
+        // everything from one interval goes out with the same timestamp
+        long now = publisher.now();
+        for (Map.Entry<String, CounterCell> entry : counters.entrySet()) {
+            CounterCell cell = entry.getValue();
+            if (!cell.takeUpdated()) {
+                if (cell.retire()) { counters.remove(entry.getKey(), cell); }
+                continue;
+            }
+            publisher.put(cell.metric, cell.count.getAndSet(0), now, cell.tags);
+        }
+
+        for (Map.Entry<String, GaugeCell> entry : gauges.entrySet()) {
+            GaugeCell cell = entry.getValue();
+            if (!cell.takeUpdated()) {
+                if (cell.retire()) { gauges.remove(entry.getKey(), cell); }
+                continue;
+            }
+            publisher.put(cell.metric, Double.longBitsToDouble(cell.valueBits.get()), now, cell.tags);
+        }
+
+        for (Map.Entry<String, TimerCell> entry : timers.entrySet()) {
+            TimerCell cell = entry.getValue();
+            if (!cell.takeUpdated()) {
+                if (cell.retire()) { timers.remove(entry.getKey(), cell); }
+                continue;
+            }
+            flushTimer(cell, now);
+        }
+
+        for (Map.Entry<String, HistogramCell> entry : histograms.entrySet()) {
+            HistogramCell cell = entry.getValue();
+            if (!cell.takeUpdated()) {
+                if (cell.retire()) { histograms.remove(entry.getKey(), cell); }
+                continue;
+            }
+
+            LatencyHistogram snapshot = cell.histogram.snapshotAndReset();
+            if (snapshot.getCount() == 0) { continue; }
+            for (int i = 0; i < percentiles.length; i++) {
+                publisher.put(cell.metric, snapshot.getValueAtPercentile(percentiles[i]), now,
+                        cell.quantileTags[i]);
+            }
+        }
+    }
+
+    private void flushTimer(TimerCell cell, long now) {
+        // nobody writes to a taken window, plain sums are exact
+        TimerWindow window = cell.takeWindow();
+        long count = window.count.sum();
+        if (count == 0) { return; }
+        double min = Double.longBitsToDouble(window.minBits.get());
+        double max = Double.longBitsToDouble(window.maxBits.get());
+        double sum = window.sum.sum();
+
+        publisher.put(cell.metric + ".count", count, now, cell.tags);
+        publisher.put(cell.metric + ".min", min, now, cell.tags);
+        publisher.put(cell.metric + ".max", max, now, cell.tags);
+        publisher.put(cell.metric + ".mean", sum / count, now, cell.tags);
+
+        for (double percentile : percentiles) {
+            // a bucket's upper bound can overshoot what was actually seen
+            double value = Math.min(max, window.histogram.getValueAtPercentile(percentile) / TIMER_SCALE);
+            publisher.put(cell.metric + getPercentileSuffix(percentile), value, now, cell.tags);
+        }
+    }
+
+    /**
+     * Get the metric name suffix for a percentile, ie 0.99 becomes '.p99' and 0.999 becomes '.p999'
+     *
+     * @param percentile the percentile between 0 and 1
+     * @return the suffix
+     */
+    static String getPercentileSuffix(double percentile) {
+        return "." + getPercentileName(percentile);
+    }
+
+    /**
+     * Get the short name for a percentile, ie 0.99 becomes 'p99' and 0.999 becomes 'p999'
+     *
+     * @param percentile the percentile between 0 and 1
+     * @return the name
+     */
+    static String getPercentileName(double percentile) {
+        return "p" + new BigDecimal(Double.toString(percentile)).movePointRight(2).stripTrailingZeros()
+                .toPlainString().replace(".", "");
+    }
+
+    private static abstract class Cell {
+        // the low bit is set once a value has been recorded, the rest counts recorders part way through recording
+        private static final int UPDATED = 1;
+        private static final int RECORDER = 2;
+        // dropped from the map by a flush, nothing can be recorded in it any more
+        private static final int RETIRED = -1;
+
+        final String metric;
+        final JsonObject tags;
+        final AtomicInteger state = new AtomicInteger();
+
+        Cell(String metric, JsonObject tags) {
+            this.metric = metric;
+            // the caller is free to keep changing their tags object
+            this.tags = tags.copy();
+        }
+
+        /**
+         * Call before recording a value in the cell, a flush can't retire the cell until finishRecording is called
+         *
+         * @return false if the cell has been retired, the value has to be recorded in a new cell instead
+         */
+        boolean startRecording() {
+            while (true) {
+                int current = state.get();
+                if (current == RETIRED) { return false; }
+                if (state.compareAndSet(current, current + RECORDER)) { return true; }
+            }
+        }
+
+        /**
+         * Call once the value is recorded, marks the cell as updated
+         */
+        void finishRecording() {
+            while (true) {
+                int current = state.get();
+                if (state.compareAndSet(current, (current - RECORDER) | UPDATED)) { return; }
+            }
+        }
+
+        /**
+         * @return true if the cell was updated since the last call, it counts as not updated again afterwards
+         */
+        boolean takeUpdated() {
+            while (true) {
+                int current = state.get();
+                if ((current & UPDATED) == 0) { return false; }
+                if (state.compareAndSet(current, current & ~UPDATED)) { return true; }
+            }
+        }
+
+        /**
+         * Retire the cell if nothing has been recorded in it since it was last flushed and nobody is recording
+         *
+         * @return true if it was retired and should be dropped
+         */
+        boolean retire() {
+            return state.compareAndSet(0, RETIRED);
+        }
+    }
+
+    private static class CounterCell extends Cell {
+        // not a LongAdder, on java 8 its sumThenReset can lose an add that races with the reset
+        final AtomicLong count = new AtomicLong();
+
+        CounterCell(String metric, JsonObject tags) { super(metric, tags); }
+
+        boolean add(long delta) {
+            if (!startRecording()) { return false; }
+            count.addAndGet(delta);
+            finishRecording();
+            return true;
+        }
+    }
+
+    private static class GaugeCell extends Cell {
+        final AtomicLong valueBits = new AtomicLong();
+
+        GaugeCell(String metric, JsonObject tags) { super(metric, tags); }
+
+        boolean set(double value) {
+            if (!startRecording()) { return false; }
+            valueBits.set(Double.doubleToLongBits(value));
+            finishRecording();
+            return true;
+        }
+    }
+
+    private static class TimerCell extends Cell {
+        // each flush swaps in a fresh window, so count, sum, min, max and percentiles all cover the same values
+        volatile TimerWindow window = new TimerWindow();
+
+        TimerCell(String metric, JsonObject tags) { super(metric, tags); }
+
+        boolean record(double value) {
+            if (!startRecording()) { return false; }
+            while (true) {
+                TimerWindow current = window;
+                current.writers.incrementAndGet();
+                // the window was swapped before we registered, the flush may already have read it
+                if (current != window) {
+                    current.writers.decrementAndGet();
+                    continue;
+                }
+                current.record(value);
+                current.writers.decrementAndGet();
+                break;
+            }
+            finishRecording();
+            return true;
+        }
+
+        /**
+         * Swap in an empty window and wait for anyone still writing to the old one
+         *
+         * @return everything recorded since the last call
+         */
+        TimerWindow takeWindow() {
+            TimerWindow taken = window;
+            window = new TimerWindow();
+            // a writer only holds the window for the few atomic ops of a single record
+            while (taken.writers.get() != 0) { Thread.yield(); }
+            return taken;
+        }
+    }
+
+    private static class TimerWindow {
+        final AtomicInteger writers = new AtomicInteger();
+        final LongAdder count = new LongAdder();
+        final DoubleAdder sum = new DoubleAdder();
+        final AtomicLong minBits = new AtomicLong(Double.doubleToLongBits(Double.MAX_VALUE));
+        final AtomicLong maxBits = new AtomicLong(Double.doubleToLongBits(-Double.MAX_VALUE));
+        final LatencyHistogram histogram = new LatencyHistogram();
+
+        void record(double value) {
+            count.increment();
+            sum.add(value);
+
+            long bits = Double.doubleToLongBits(value);
+            long current;
+            while (value < Double.longBitsToDouble(current = minBits.get())) {
+                if (minBits.compareAndSet(current, bits)) { break; }
+            }
+            while (value > Double.longBitsToDouble(current = maxBits.get())) {
+                if (maxBits.compareAndSet(current, bits)) { break; }
+            }
+
+            histogram.record(Math.round(value * TIMER_SCALE));
+        }
+    }
+
+    private static class HistogramCell extends Cell {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        final JsonObject[] quantileTags;
+
+        HistogramCell(String metric, JsonObject tags, double[] percentiles) {
+            super(metric, tags);
+            quantileTags = new JsonObject[percentiles.length];
+            for (int i = 0; i < percentiles.length; i++) {
+                quantileTags[i] = this.tags.copy().put(QUANTILE_TAG, getPercentileName(percentiles[i]));
+            }
+        }
+    }
+}
@@ -0,0 +1,205 @@
+/*
+ * Copyright 2015 Cyanogen Inc.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.cyngn.vertx.bosun;
+
+import io.vertx.core.http.HttpClient;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A single bosun endpoint and the state we track about the requests outstanding against it. Endpoints talk http,
+ * or for puts only, the OpenTsDb telnet protocol.
+ */
+public class BosunHost {
+
+    public static final String HTTP_PROTOCOL = "http";
+    public static final String TELNET_PROTOCOL = "telnet";
+
+    // how much weight the newest response time gets in the moving average
+    private static final double EWMA_ALPHA = 0.2;
+    // until we hear back, assume a host is quick so it gets a chance to prove otherwise
+    private static final long INITIAL_LATENCY_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    public final String host;
+    public final int port;
+    public final HttpClient client;
+    // set instead of the client for telnet hosts
+    public final TelnetConnection telnet;
+    public final CircuitBreaker breaker;
+    public final ReporterStats.HostStats stats;
+
+    private final int maxOutstanding;
+    private final AtomicInteger inFlight = new AtomicInteger(0);
+    private final AtomicLong latencyEwmaBits = new AtomicLong(Double.doubleToLongBits(INITIAL_LATENCY_NANOS));
+    // moving average of request outcomes, 1 for a failure and 0 for a response
+    private final AtomicLong failureEwmaBits = new AtomicLong(Double.doubleToLongBits(0));
+
+    /**
+     * Constructor
+     *
+     * @param host the bosun host name
+     * @param port the bosun port
+     * @param client the http client connected to the host
+     * @param maxOutstanding the max number of requests that can be in flight or queued for a connection, -1 for
+     *                       no limit
+     * @param breaker tracks whether the host is healthy enough to take traffic
+     */
+    public BosunHost(String host, int port, HttpClient client, int maxOutstanding, CircuitBreaker breaker) {
+        this(host, port, client, maxOutstanding, breaker, new ReporterStats.HostStats(host, port));
+    }
+
+    /**
+     * Constructor
+     *
+     * @param host the bosun host name
+     * @param port the bosun port
+     * @param client the http client connected to the host
+     * @param maxOutstanding the max number of requests that can be in flight or queued for a connection, -1 for
+     *                       no limit
+     * @param breaker tracks whether the host is healthy enough to take traffic
+     * @param stats where requests to the host are counted, shared with other reporter instances
+     */
+    public BosunHost(String host, int port, HttpClient client, int maxOutstanding, CircuitBreaker breaker,
+                     ReporterStats.HostStats stats) {
+        this.host = host;
+        this.port = port;
+        this.client = client;
+        this.telnet = null;
+        this.breaker = breaker;
+        this.maxOutstanding = maxOutstanding;
+        this.stats = stats;
+    }
+
+    /**
+     * Constructor for a host that takes puts over the telnet protocol
+     *
+     * @param telnet the connection to the host
+     * @param maxOutstanding the max number of requests that can be in flight for the host, -1 for no limit
+     * @param breaker tracks whether the host is healthy enough to take traffic
+     * @param stats where requests to the host are counted, shared with other reporter instances
+     */
+    public BosunHost(TelnetConnection telnet, int maxOutstanding, CircuitBreaker breaker,
+                     ReporterStats.HostStats stats) {
+        this.host = telnet.host;
+        this.port = telnet.port;
+        this.client = null;
+        this.telnet = telnet;
+        this.breaker = breaker;
+        this.maxOutstanding = maxOutstanding;
+        this.stats = stats;
+    }
+
+    /**
+     * Can the host handle calls to an api, telnet hosts only take puts
+     *
+     * @param api the bosun api path, null for any
+     * @return true if requests to the api can go to this host
+     */
+    public boolean supports(String api) {
+        return telnet == null || api == null || BosunReporter.PUT_API.equals(api);
+    }
+
+    /**
+     * Reserve a slot for a request against this host
+     *
+     * @return true if the request can go out, false if the host already has too many requests waiting
+     */
+    public boolean tryAcquire() {
+        if (maxOutstanding < 0) {
+            inFlight.incrementAndGet();
+            stats.inFlight.increment();
+            return true;
+        }
+
+        while (true) {
+            int current = inFlight.get();
+            if (current >= maxOutstanding) { return false; }
+            if (inFlight.compareAndSet(current, current + 1)) {
+                stats.inFlight.increment();
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Release a slot taken by tryAcquire once the request finishes
+     */
+    public void release() {
+        inFlight.decrementAndGet();
+        stats.inFlight.decrement();
+    }
+
+    /**
+     * @return true if the host can take another request without going over its limit, for telnet hosts the
+     * connection also has to be open with room in its write queue
+     */
+    public boolean hasCapacity() {
+        if (telnet != null && !telnet.isWritable()) { return false; }
+        return maxOutstanding < 0 || inFlight.get() < maxOutstanding;
+    }
+
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    /**
+     * Fold a request's response time into the host's moving average
+     *
+     * @param nanos how long the request took to get a response
+     */
+    public void recordLatency(long nanos) {
+        updateEwma(latencyEwmaBits, nanos);
+        updateEwma(failureEwmaBits, 0);
+    }
+
+    /**
+     * Count a request that got no response or a 5XX against the host. Failures can come back far quicker than real
+     * responses, a host refusing connections would look like the fastest host around if they counted as their
+     * actual time, so they go into the moving average as a penalty instead.
+     *
+     * @param penaltyNanos the time to count the failure as, ie the request timeout
+     */
+    public void recordFailure(long penaltyNanos) {
+        updateEwma(latencyEwmaBits, penaltyNanos);
+        updateEwma(failureEwmaBits, 1);
+    }
+
+    private static void updateEwma(AtomicLong ewmaBits, double sample) {
+        while (true) {
+            long currentBits = ewmaBits.get();
+            double current = Double.longBitsToDouble(currentBits);
+            double updated = current + EWMA_ALPHA * (sample - current);
+            if (ewmaBits.compareAndSet(currentBits, Double.doubleToLongBits(updated))) { return; }
+        }
+    }
+
+    public double getLatencyEwmaNanos() {
+        return Double.longBitsToDouble(latencyEwmaBits.get());
+    }
+
+    /**
+     * @return the moving average share of requests to the host that failed, between 0 and 1
+     */
+    public double getFailureRate() {
+        return Double.longBitsToDouble(failureEwmaBits.get());
+    }
+
+    @Override
+    public String toString() {
+        return host + ":" + port;
+    }
+}
@@ -16,11 +16,21 @@ package com.cyngn.vertx.bosun;
 
 
 import io.vertx.core.AsyncResult;
+import io.vertx.core.Future;
 import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.core.eventbus.DeliveryOptions;
 import io.vertx.core.eventbus.EventBus;
 import io.vertx.core.eventbus.Message;
+import io.vertx.core.eventbus.MessageConsumer;
+import io.vertx.core.eventbus.ReplyException;
+import io.vertx.core.eventbus.ReplyFailure;
 import io.vertx.core.json.JsonObject;
 
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongSupplier;
+
 /**
  * Handles publishing bosun metrics on the event bus.
  *
@@ -30,14 +40,62 @@ public class BosunPublisher {
 
     private final String address;
     private final EventBus bus;
+    private final boolean useMetricCodec;
+    private final LongSupplier clock;
+    private final DeliveryOptions putOptions;
+    private final DeliveryOptions indexOptions;
+    private final DeliveryOptions putNoAckOptions;
+    private final DeliveryOptions indexNoAckOptions;
+    private final DeliveryOptions noAckOptions;
+    // the vertx-bosun instances that last said they were overloaded
+    private final Set<String> overloadedInstances = ConcurrentHashMap.newKeySet();
+    private MessageConsumer<JsonObject> backpressureConsumer;
 
     public BosunPublisher(String address, EventBus bus) {
+        this(address, bus, false);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param address the address vertx-bosun is listening on
+     * @param bus the event bus to publish on
+     * @param useMetricCodec send OpenTsDbMetric objects with the OpenTsDbMetricCodec instead of JsonObjects, this
+     *                       skips building and copying JSON for every metric but needs a vertx-bosun version that
+     *                       understands the codec. The tags passed in must not be changed after a metric is sent.
+     */
+    public BosunPublisher(String address, EventBus bus, boolean useMetricCodec) {
+        this(address, bus, useMetricCodec, System::currentTimeMillis);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param address the address vertx-bosun is listening on
+     * @param bus the event bus to publish on
+     * @param useMetricCodec send OpenTsDbMetric objects with the OpenTsDbMetricCodec instead of JsonObjects
+     * @param clock where the time metrics are stamped with comes from in ms, ie a CoarseClock for high rate callers
+     */
+    public BosunPublisher(String address, EventBus bus, boolean useMetricCodec, LongSupplier clock) {
         this.address = address;
         this.bus = bus;
+        this.useMetricCodec = useMetricCodec;
+        this.clock = clock;
+        this.putOptions = new DeliveryOptions().addHeader(BosunReporter.ACTION_FIELD, BosunReporter.PUT_COMMAND);
+        this.indexOptions = new DeliveryOptions().addHeader(BosunReporter.ACTION_FIELD, BosunReporter.INDEX_COMMAND);
+        // when nobody is listening for the result vertx-bosun doesn't need to keep the message around
+        this.putNoAckOptions = new DeliveryOptions().addHeader(BosunReporter.ACTION_FIELD, BosunReporter.PUT_COMMAND)
+                .addHeader(BosunReporter.NO_ACK_HEADER, "true");
+        this.indexNoAckOptions = new DeliveryOptions()
+                .addHeader(BosunReporter.ACTION_FIELD, BosunReporter.INDEX_COMMAND)
+                .addHeader(BosunReporter.NO_ACK_HEADER, "true");
+        this.noAckOptions = new DeliveryOptions().addHeader(BosunReporter.NO_ACK_HEADER, "true");
+
+        if (useMetricCodec) { OpenTsDbMetricCodec.register(bus); }
     }
 
     /**
-     * Publish an index to bosun to track
+     * Publish an index to bosun to track, vertx-bosun doesn't reply and failures only show up in its stats
      *
      * @param metric the metric name
      * @param value the value
@@ -60,11 +118,18 @@ public class BosunPublisher {
      */
     public <T,U> void index(String metric, T value, JsonObject tags,
                             Handler<AsyncResult<Message<U>>> onComplete) {
-        send(getBosunMessage(BosunReporter.INDEX_COMMAND, metric, value, tags), onComplete);
+        long timestamp = clock.getAsLong();
+        if (useMetricCodec) {
+            sendMetric(metric, value, timestamp, tags, onComplete == null ? indexNoAckOptions : indexOptions,
+                    onComplete);
+        } else {
+            send(getBosunMessage(BosunReporter.INDEX_COMMAND, metric, value, timestamp, tags), onComplete);
+        }
     }
 
     /**
-     * Publish a metric to bosun to be indexed and passed on to OpenTsDb
+     * Publish a metric to bosun to be indexed and passed on to OpenTsDb, vertx-bosun doesn't reply and failures only
+     * show up in its stats
      *
      * @param metric the metric name
      * @param value the value
@@ -87,7 +152,132 @@ public class BosunPublisher {
      */
     public <T,U> void put(String metric, T value, JsonObject tags,
                           Handler<AsyncResult<Message<U>>> onComplete) {
-        send(getBosunMessage(BosunReporter.PUT_COMMAND, metric, value, tags), onComplete);
+        put(metric, value, clock.getAsLong(), tags, onComplete);
+    }
+
+    /**
+     * Publish a metric captured at a given time, vertx-bosun doesn't reply and failures only show up in its stats
+     *
+     * @param metric the metric name
+     * @param value the value
+     * @param timestamp when the value was captured, in seconds or ms since the epoch
+     * @param tags the tags associated
+     * @param <T> the type of value int, double etc..
+     */
+    public <T> void put(String metric, T value, long timestamp, JsonObject tags) {
+        put(metric, value, timestamp, tags, null);
+    }
+
+    /**
+     * Publish a metric captured at a given time to bosun to be indexed and passed on to OpenTsDb
+     *
+     * @param metric the metric name
+     * @param value the value
+     * @param timestamp when the value was captured, in seconds or ms since the epoch
+     * @param tags the tags associated
+     * @param onComplete a handler to receive the result of the call
+     * @param <T> the type of value int, double etc..
+     * @param <U> the type of object coming back in the response
+     */
+    public <T,U> void put(String metric, T value, long timestamp, JsonObject tags,
+                          Handler<AsyncResult<Message<U>>> onComplete) {
+        if (useMetricCodec) {
+            sendMetric(metric, value, timestamp, tags, onComplete == null ? putNoAckOptions : putOptions,
+                    onComplete);
+        } else {
+            send(getBosunMessage(BosunReporter.PUT_COMMAND, metric, value, timestamp, tags), onComplete);
+        }
+    }
+
+    /**
+     * Get a handle for publishing values on a series over and over, the per series work is done once here instead
+     * of on every put
+     *
+     * @param metric the metric name
+     * @param tags the tags associated, at least one
+     * @return the handle
+     * @throws IllegalArgumentException if the metric name is empty or there are no tags
+     */
+    public SeriesHandle series(String metric, JsonObject tags) {
+        return new SeriesHandle(this, metric, tags);
+    }
+
+    /**
+     * Publish a value on a series
+     *
+     * @param series the series
+     * @param value the value
+     * @param timestamp when the value was captured, in seconds or ms since the epoch
+     * @param onComplete a handler to receive the result of the call, can be null
+     */
+    <T,U> void putSeries(SeriesHandle series, T value, long timestamp, Handler<AsyncResult<Message<U>>> onComplete) {
+        if (!useMetricCodec) {
+            send(getBosunMessage(BosunReporter.PUT_COMMAND, series.metric, value, timestamp, series.tags), onComplete);
+            return;
+        }
+
+        OpenTsDbMetric data;
+        try {
+            data = new OpenTsDbMetric(series, value, OpenTsDbMetric.toMillis(timestamp));
+        } catch (IllegalArgumentException ex) {
+            failInvalid(ex, onComplete);
+            return;
+        }
+        sendMetric(data, onComplete == null ? putNoAckOptions : putOptions, onComplete);
+    }
+
+    /**
+     * Get the time to stamp metrics with
+     *
+     * @return the time in ms
+     */
+    long now() {
+        return clock.getAsLong();
+    }
+
+    /**
+     * Get an aggregator that collects observations in process and publishes them through this publisher once per
+     * flush interval, call start() on it to begin publishing.
+     *
+     * @param vertx the vertx instance to schedule flushes on
+     * @param flushIntervalMs how often to publish the aggregated metrics
+     * @return the aggregator
+     */
+    public BosunAggregator aggregator(Vertx vertx, long flushIntervalMs) {
+        return new BosunAggregator(vertx, this, flushIntervalMs);
+    }
+
+    /**
+     * Start listening for backpressure signals from vertx-bosun. While any vertx-bosun instance is shedding load
+     * isOverloaded returns true, callers can use that to sample or hold back metrics. Sends that get shed fail with
+     * BosunReporter.OVERLOADED_ERROR_CODE either way.
+     *
+     * @param onChange optional, told whenever isOverloaded changes
+     */
+    public synchronized void watchBackpressure(Handler<Boolean> onChange) {
+        if (backpressureConsumer != null) { backpressureConsumer.unregister(); }
+
+        backpressureConsumer = bus.consumer(address + BosunReporter.BACKPRESSURE_ADDRESS_SUFFIX, message -> {
+            boolean before = isOverloaded();
+            String instance = message.body().getString(BosunReporter.INSTANCE_FIELD);
+            if (message.body().getBoolean(BosunReporter.OVERLOADED_FIELD, false)) {
+                overloadedInstances.add(instance);
+            } else {
+                overloadedInstances.remove(instance);
+            }
+
+            boolean after = isOverloaded();
+            if (onChange != null && before != after) { onChange.handle(after); }
+        });
+    }
+
+    /**
+     * Is vertx-bosun shedding load, only tracked once watchBackpressure has been called
+     *
+     * @return true if any vertx-bosun instance says it is overloaded
+     */
+    public boolean isOverloaded() {
+        return !overloadedInstances.isEmpty();
     }
 
     /**
@@ -100,7 +290,58 @@ public class BosunPublisher {
         if (onComplete != null) {
             bus.send(address, msg, onComplete);
         } else {
-            bus.send(address, msg);
+            bus.send(address, msg, noAckOptions);
+        }
+    }
+
+    /**
+     * Send a metric over to the vertx-bosun listener as an OpenTsDbMetric, the action travels in a header
+     *
+     * @param metric the metric name
+     * @param value the value
+     * @param timestamp when the value was captured
+     * @param tags the tags associated
+     * @param options the delivery options carrying the action
+     * @param onComplete a handler potentially to pass along
+     */
+    private <T,U> void sendMetric(String metric, T value, long timestamp, JsonObject tags, DeliveryOptions options,
+                                  Handler<AsyncResult<Message<U>>> onComplete) {
+        OpenTsDbMetric data;
+        try {
+            data = new OpenTsDbMetric(metric, value, OpenTsDbMetric.toMillis(timestamp), tags);
+        } catch (IllegalArgumentException ex) {
+            failInvalid(ex, onComplete);
+            return;
+        }
+        sendMetric(data, options, onComplete);
+    }
+
+    /**
+     * Send a metric over to the vertx-bosun listener as an OpenTsDbMetric
+     *
+     * @param data the metric
+     * @param options the delivery options carrying the action
+     * @param onComplete a handler potentially to pass along
+     */
+    private <U> void sendMetric(OpenTsDbMetric data, DeliveryOptions options,
+                                Handler<AsyncResult<Message<U>>> onComplete) {
+        if (onComplete != null) {
+            bus.send(address, data, options, onComplete);
+        } else {
+            bus.send(address, data, options);
+        }
+    }
+
+    /**
+     * Fail a metric that could never be sent the same way vertx-bosun would have if it got the bad metric
+     *
+     * @param ex what was wrong with the metric
+     * @param onComplete a handler potentially to pass along
+     */
+    private static <U> void failInvalid(IllegalArgumentException ex, Handler<AsyncResult<Message<U>>> onComplete) {
+        if (onComplete != null) {
+            onComplete.handle(Future.failedFuture(new ReplyException(ReplyFailure.RECIPIENT_FAILURE,
+                    BosunReporter.DEFAULT_MSG_ERROR_CODE, ex.getMessage())));
         }
     }
 
@@ -110,15 +351,18 @@ public class BosunPublisher {
      * @param action the action desired, ie index or put
      * @param metric the metric name
      * @param value the value
+     * @param timestamp when the value was captured
      * @param tags the tags associated
      * @param <T> the type of value int, double etc..
      * @return the JsonObject representing the metric data
      */
-    private static <T> JsonObject getBosunMessage(String action, String metric, T value, JsonObject tags) {
+    private static <T> JsonObject getBosunMessage(String action, String metric, T value, long timestamp,
+                                                  JsonObject tags) {
         return  new JsonObject()
                 .put(BosunReporter.ACTION_FIELD, action)
                 .put(OpenTsDbMetric.METRIC_FIELD, metric)
                 .put(OpenTsDbMetric.VALUE_FIELD, value)
+                .put(OpenTsDbMetric.TIMESTAMP_FIELD, timestamp)
                 .put(OpenTsDbMetric.TAGS_FIELD, tags);
     }
 }
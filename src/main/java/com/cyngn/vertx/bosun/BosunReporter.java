@@ -14,47 +14,82 @@
  */
 package com.cyngn.vertx.bosun;
 
-import com.google.common.cache.CacheBuilder;
-import com.google.common.cache.CacheLoader;
-import com.google.common.cache.LoadingCache;
 import com.google.common.net.MediaType;
 import io.netty.handler.codec.http.HttpResponseStatus;
 import io.vertx.core.AbstractVerticle;
+import io.vertx.core.AsyncResult;
 import io.vertx.core.Future;
 import io.vertx.core.Handler;
 import io.vertx.core.buffer.Buffer;
 import io.vertx.core.eventbus.EventBus;
 import io.vertx.core.eventbus.Message;
+import io.vertx.core.eventbus.MessageConsumer;
+import io.vertx.core.eventbus.ReplyException;
+import io.vertx.core.eventbus.ReplyFailure;
 import io.vertx.core.http.HttpClient;
 import io.vertx.core.http.HttpClientOptions;
+import io.vertx.core.http.HttpClientRequest;
 import io.vertx.core.http.HttpHeaders;
+import io.vertx.core.http.HttpMethod;
+import io.vertx.core.http.HttpServer;
+import io.vertx.core.http.HttpServerOptions;
+import io.vertx.core.http.HttpServerRequest;
+import io.vertx.core.http.HttpServerResponse;
+import io.vertx.core.net.NetClient;
+import io.vertx.core.net.NetClientOptions;
 import io.vertx.core.json.JsonArray;
 import io.vertx.core.json.JsonObject;
 import io.vertx.core.logging.Logger;
 import io.vertx.core.logging.LoggerFactory;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.google.common.io.ByteStreams;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.UUID;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.zip.GZIPInputStream;
 
 /**
  * Handles consuming metrics over the message bus and sending them on to bosun.
  *
  * @author truelove@cyngn.com (Jeremy Truelove) 07/22/15
  */
-public class BosunReporter extends AbstractVerticle implements Handler<Message<JsonObject>> {
+public class BosunReporter extends AbstractVerticle implements Handler<Message<Object>> {
 
     public final static String DEFAULT_ADDRESS = "vertx.bosun-reporter";
     private Logger logger = LoggerFactory.getLogger(BosunReporter.class);
     public static final String PUT_COMMAND = "put";
     public static final String INDEX_COMMAND = "index";
     public static final int DEFAULT_MSG_ERROR_CODE = -1;
+    public static final int OVERLOADED_ERROR_CODE = -2;
+    public static final int CARDINALITY_ERROR_CODE = -3;
+    public static final String BACKPRESSURE_ADDRESS_SUFFIX = ".backpressure";
+    public static final String OVERLOADED_FIELD = "overloaded";
+    public static final String INSTANCE_FIELD = "instance";
+    public static final String STATS_ADDRESS_SUFFIX = ".stats";
 
     public static final String ACTION_FIELD = "action";
+    // senders that don't want a reply set this header to 'true', their messages are let go as soon as they are read
+    public static final String NO_ACK_HEADER = "no_ack";
+    private static final String GZIP_ENCODING = "gzip";
     public static final String PUT_API = "/api/put";
     public static final String INDEX_API = "/api/index";
 
@@ -63,7 +98,44 @@ public class BosunReporter extends AbstractVerticle implements Handler<Message<J
     private final int DEFAULT_TIMEOUT_MS = 3000;
     private final int DEFAULT_UNIQUE_METRICS_INDEXED = 1000000;
     private final int DEFAULT_INDEX_EXPIRY_MINUTES = 10;
+    private final int DEFAULT_INDEX_EXPIRY_JITTER_PERCENT = 10;
+    private final int DEFAULT_INDEX_REFRESH_AHEAD_PERCENT = 20;
+    private final int DEFAULT_MAX_BATCH_SIZE = 1;
+    private final int DEFAULT_MAX_BATCH_DELAY_MS = 250;
+    private final int DEFAULT_MAX_WAIT_QUEUE_SIZE = -1;
+    private final int DEFAULT_MAX_IN_FLIGHT = -1;
+    private final int DEFAULT_MAX_IN_FLIGHT_PER_HOST = -1;
+    private final int DEFAULT_MAX_PENDING_REQUESTS = 1000;
+    private final int DEFAULT_CIRCUIT_FAILURE_THRESHOLD = 5;
+    private final int DEFAULT_CIRCUIT_BACKOFF_MS = 5000;
+    private final int DEFAULT_CIRCUIT_MAX_BACKOFF_MS = 60000;
+    private final int DEFAULT_SPOOL_SEGMENT_SIZE_BYTES = 1024 * 1024 * 16;
+    private final long DEFAULT_SPOOL_MAX_SIZE_BYTES = 1024L * 1024 * 256;
+    private final int DEFAULT_SPOOL_REPLAY_BATCH_SIZE = 500;
+    private final int DEFAULT_SPOOL_REPLAY_INTERVAL_MS = 1000;
+    private final int DEFAULT_STATS_INTERVAL_MS = 60000;
+    private final String DEFAULT_STATS_METRIC_PREFIX = "vertx.bosun";
+    private final int DEFAULT_COMPRESSION_MIN_BYTES = 1024;
+    private final int DEFAULT_COMPRESSION_LEVEL = 1;
+    private final int DEFAULT_MAX_RETRIES = 2;
+    private final int DEFAULT_RETRY_BACKOFF_MS = 100;
+    private final int DEFAULT_RETRY_MAX_BACKOFF_MS = 2000;
+    private final int DEFAULT_RETRY_BUDGET_PERCENT = 10;
+    private final int DEFAULT_TELNET_WRITE_QUEUE_MAX_SIZE = 1024 * 1024;
+    private final int TELNET_MIN_RECONNECT_MS = 100;
+    private final int DEFAULT_INGEST_PORT = -1;
+    private final String DEFAULT_INGEST_HOST = "localhost";
+    private final int DEFAULT_INGEST_MAX_BODY_BYTES = 1024 * 1024 * 4;
+    private final int DEFAULT_CARDINALITY_MAX_TAG_VALUES = -1;
+    private final int DEFAULT_CARDINALITY_MAX_METRICS = 10000;
+    // 16MB of sketches
+    private final int DEFAULT_CARDINALITY_MAX_SKETCHES = 16384;
+    private final int DEFAULT_CARDINALITY_WINDOW_MINUTES = 60;
+    private final JsonArray DEFAULT_RETRY_STATUSES = new JsonArray().add(500).add(502).add(503).add(504);
+    // the tags the reporter adds to its own stats, host, port, api and quantile
+    private final int STATS_EXTRA_TAGS = 4;
     private static int FIVE_MINUTES_MILLI = 1000 * 60 * 5;
+    private static final Predicate<BosunHost> TAKES_PUTS = host -> host.supports(PUT_API);
 
     public final static String RESULT_FIELD = "result";
 
@@ -71,18 +143,89 @@ public class BosunReporter extends AbstractVerticle implements Handler<Message<J
     private int maxTags;
     private int maxIndexCacheSize;
     private int indexExpiryInMinutes;
+    private int indexExpiryJitterPercent;
+    private int indexRefreshAheadPercent;
     private int timeout;
+    private int maxBatchSize;
+    private int maxBatchDelayMs;
+    private int maxPoolSize;
+    private boolean pipelining;
+    private int maxWaitQueueSize;
+    private int maxInFlight;
+    private int maxInFlightPerHost;
+    private int maxPendingRequests;
+    private OverloadPolicy overloadPolicy;
+    private String hostSelection;
+    private int circuitFailureThreshold;
+    private int circuitBackoffMs;
+    private int circuitMaxBackoffMs;
+    private String spoolDir;
+    private int spoolSegmentSize;
+    private long spoolMaxSize;
+    private int spoolReplayBatchSize;
+    private int spoolReplayIntervalMs;
+    private int statsIntervalMs;
+    private boolean statsReportToBosun;
+    private String statsMetricPrefix;
+    private JsonObject statsTags;
+    private boolean compressRequests;
+    private int compressionMinBytes;
+    private int compressionLevel;
+    private int maxRetries;
+    private int retryBackoffMs;
+    private int retryMaxBackoffMs;
+    private JsonArray retryStatuses;
+    private int retryBudgetPercent;
+    private int telnetWriteQueueMaxSize;
+    private int ingestPort;
+    private String ingestHost;
+    private int ingestMaxBodyBytes;
+    private int cardinalityMaxTagValues;
+    private int cardinalityMaxMetrics;
+    private int cardinalityMaxSketches;
+    private int cardinalityWindowMinutes;
+    private String cardinalityPolicy;
 
-    private Map<String, Consumer<Message<JsonObject>>> handlers;
-    private List<HttpClient> connections;
+    private Map<String, Consumer<Message<Object>>> handlers;
+    private List<BosunHost> connections;
     private String address;
     private EventBus eventBus;
-    private AtomicInteger currentConnectionIndex = new AtomicInteger(0);
-    private LoadingCache<String, Boolean> distinctMetrics;
+    private MessageConsumer<Object> consumer;
+    private MessageConsumer<Object> statsConsumer;
+    private HostSelector hostSelector;
+    // set when series are routed to hosts by consistent hashing
+    private ConsistentHashSelector seriesRouter;
+    private SharedReporterState shared;
+    private StripedSeriesKeyIndex indexedSeries;
+    private CardinalityLimiter cardinalityLimiter;
     private long reportingTimerId = -1;
-    private AtomicInteger metricsIndexed;
-    private AtomicInteger metricsPut;
-    private AtomicInteger metricsErrors;
+    // puts waiting for their batch to fill, one batch per host when series are routed and a single one otherwise
+    private MetricBatch[] pendingPuts;
+    private PutBodyWriter bodyWriter;
+    private GzipEncoder gzipEncoder;
+    private PutLineWriter lineWriter;
+    private NetClient netClient;
+    private HttpServer ingestServer;
+    private IngestParser ingestParser;
+    private Map<String, Consumer<OpenTsDbMetric>> ingestTargets;
+    private RetryPolicy retryPolicy;
+    // retries waiting on their backoff, keyed by timer id
+    private Map<Long, Runnable> scheduledRetries;
+    private long batchTimerId = -1;
+    private MetricSpool spool;
+    private long spoolTimerId = -1;
+    private long statsTimerId = -1;
+    private ReporterStats stats;
+    private String instanceId;
+    private int inFlight;
+    private Deque<PendingRequest> pendingRequests;
+    private boolean draining;
+    private boolean overloaded;
+    // set once stop is called, nothing new goes out and failures are no longer retried
+    private boolean stopping;
+    // sends that haven't finished, including any retries they make
+    private int outstandingSends;
+    private Future<Void> stopResult;
 
     @Override
     public void start(final Future<Void> startedResult) {
@@ -94,41 +237,184 @@ public class BosunReporter extends AbstractVerticle implements Handler<Message<J
         maxTags = config.getInteger("max_tags", OPENTSDB_DEFAULT_MAX_TAGS);
         maxIndexCacheSize = config.getInteger("max_index_cache_size", DEFAULT_UNIQUE_METRICS_INDEXED);
         indexExpiryInMinutes = config.getInteger("index_expiry_minutes", DEFAULT_INDEX_EXPIRY_MINUTES);
+        indexExpiryJitterPercent = config.getInteger("index_expiry_jitter_percent",
+                DEFAULT_INDEX_EXPIRY_JITTER_PERCENT);
+        indexRefreshAheadPercent = config.getInteger("index_refresh_ahead_percent",
+                DEFAULT_INDEX_REFRESH_AHEAD_PERCENT);
         timeout = config.getInteger("default_timeout_ms", DEFAULT_TIMEOUT_MS);
+        maxBatchSize = Math.max(1, config.getInteger("max_batch_size", DEFAULT_MAX_BATCH_SIZE));
+        maxBatchDelayMs = Math.max(1, config.getInteger("max_batch_delay_ms", DEFAULT_MAX_BATCH_DELAY_MS));
+        maxPoolSize = config.getInteger("max_pool_size", HttpClientOptions.DEFAULT_MAX_POOL_SIZE);
+        pipelining = config.getBoolean("pipelining", HttpClientOptions.DEFAULT_PIPELINING);
+        maxWaitQueueSize = config.getInteger("max_wait_queue_size", DEFAULT_MAX_WAIT_QUEUE_SIZE);
+        maxInFlight = config.getInteger("max_in_flight", DEFAULT_MAX_IN_FLIGHT);
+        maxInFlightPerHost = config.getInteger("max_in_flight_per_host", DEFAULT_MAX_IN_FLIGHT_PER_HOST);
+        maxPendingRequests = Math.max(0, config.getInteger("max_pending_requests", DEFAULT_MAX_PENDING_REQUESTS));
+        String overloadPolicyName = config.getString("overload_policy", OverloadPolicy.DROP_NEWEST.configName);
+        hostSelection = config.getString("host_selection", HostSelector.ROUND_ROBIN);
+        circuitFailureThreshold = config.getInteger("circuit_failure_threshold", DEFAULT_CIRCUIT_FAILURE_THRESHOLD);
+        circuitBackoffMs = config.getInteger("circuit_backoff_ms", DEFAULT_CIRCUIT_BACKOFF_MS);
+        circuitMaxBackoffMs = config.getInteger("circuit_max_backoff_ms", DEFAULT_CIRCUIT_MAX_BACKOFF_MS);
+        spoolDir = config.getString("spool_dir");
+        spoolSegmentSize = config.getInteger("spool_segment_size_bytes", DEFAULT_SPOOL_SEGMENT_SIZE_BYTES);
+        spoolMaxSize = config.getLong("spool_max_size_bytes", DEFAULT_SPOOL_MAX_SIZE_BYTES);
+        spoolReplayBatchSize = config.getInteger("spool_replay_batch_size", DEFAULT_SPOOL_REPLAY_BATCH_SIZE);
+        spoolReplayIntervalMs = config.getInteger("spool_replay_interval_ms", DEFAULT_SPOOL_REPLAY_INTERVAL_MS);
+        statsIntervalMs = Math.max(1, config.getInteger("stats_interval_ms", DEFAULT_STATS_INTERVAL_MS));
+        statsReportToBosun = config.getBoolean("stats_report_to_bosun", false);
+        statsMetricPrefix = config.getString("stats_metric_prefix", DEFAULT_STATS_METRIC_PREFIX);
+        statsTags = config.getJsonObject("stats_tags", new JsonObject().put("host", getLocalHostName()));
+        compressRequests = config.getBoolean("compress_requests", false);
+        compressionMinBytes = config.getInteger("compression_min_bytes", DEFAULT_COMPRESSION_MIN_BYTES);
+        compressionLevel = config.getInteger("compression_level", DEFAULT_COMPRESSION_LEVEL);
+        maxRetries = config.getInteger("max_retries", DEFAULT_MAX_RETRIES);
+        retryBackoffMs = config.getInteger("retry_backoff_ms", DEFAULT_RETRY_BACKOFF_MS);
+        retryMaxBackoffMs = config.getInteger("retry_max_backoff_ms", DEFAULT_RETRY_MAX_BACKOFF_MS);
+        retryStatuses = config.getJsonArray("retry_statuses", DEFAULT_RETRY_STATUSES);
+        retryBudgetPercent = config.getInteger("retry_budget_percent", DEFAULT_RETRY_BUDGET_PERCENT);
+        telnetWriteQueueMaxSize = config.getInteger("telnet_write_queue_max_size",
+                DEFAULT_TELNET_WRITE_QUEUE_MAX_SIZE);
+        ingestPort = config.getInteger("ingest_port", DEFAULT_INGEST_PORT);
+        ingestHost = config.getString("ingest_host", DEFAULT_INGEST_HOST);
+        ingestMaxBodyBytes = config.getInteger("ingest_max_body_bytes", DEFAULT_INGEST_MAX_BODY_BYTES);
+        cardinalityMaxTagValues = config.getInteger("cardinality_max_tag_values", DEFAULT_CARDINALITY_MAX_TAG_VALUES);
+        cardinalityMaxMetrics = config.getInteger("cardinality_max_metrics", DEFAULT_CARDINALITY_MAX_METRICS);
+        cardinalityMaxSketches = config.getInteger("cardinality_max_sketches", DEFAULT_CARDINALITY_MAX_SKETCHES);
+        cardinalityWindowMinutes = config.getInteger("cardinality_window_minutes",
+                DEFAULT_CARDINALITY_WINDOW_MINUTES);
+        cardinalityPolicy = config.getString("cardinality_policy", CardinalityLimiter.REJECT_POLICY);
 
-        metricsIndexed = new AtomicInteger(0);
-        metricsPut = new AtomicInteger(0);
-        metricsErrors = new AtomicInteger(0);
+        instanceId = UUID.randomUUID().toString();
+        pendingRequests = new ArrayDeque<>();
+        scheduledRetries = new HashMap<>();
+        // routed batches line up with the hosts they belong to
+        pendingPuts = new MetricBatch[HostSelector.CONSISTENT_HASH.equals(hostSelection) ? Math.max(1, hosts.size())
+                : 1];
+        for (int i = 0; i < pendingPuts.length; i++) { pendingPuts[i] = new MetricBatch(maxBatchSize); }
+        bodyWriter = new PutBodyWriter();
+        lineWriter = new PutLineWriter();
 
         eventBus = vertx.eventBus();
+        OpenTsDbMetricCodec.register(eventBus);
 
         // create the list of workers
         connections = new ArrayList<>(hosts.size());
 
-        initializeConnections(startedResult);
+        try {
+            hostSelector = HostSelector.create(hostSelection);
+            overloadPolicy = OverloadPolicy.fromConfig(overloadPolicyName);
+            if (compressRequests) { gzipEncoder = new GzipEncoder(compressionLevel); }
+            List<Integer> statuses = new ArrayList<>(retryStatuses.size());
+            for (int i = 0; i < retryStatuses.size(); i++) { statuses.add(retryStatuses.getInteger(i)); }
+            retryPolicy = new RetryPolicy(maxRetries, retryBackoffMs, retryMaxBackoffMs, statuses,
+                    retryBudgetPercent / 100.0);
+        } catch (IllegalArgumentException ex) {
+            startedResult.fail(ex.getMessage());
+            return;
+        }
+
+        if (statsReportToBosun && (statsTags.size() == 0 || statsTags.size() + STATS_EXTRA_TAGS > maxTags)) {
+            startedResult.fail(String.format("stats_tags needs between 1 and %d tags to report stats to bosun",
+                    maxTags - STATS_EXTRA_TAGS));
+            return;
+        }
+
+        if (!initializeSharedState(startedResult)) { return; }
+        if (!initializeConnections(startedResult)) { return; }
+        hostSelector.setHosts(connections);
+        if (hostSelector instanceof ConsistentHashSelector) { seriesRouter = (ConsistentHashSelector) hostSelector; }
         createMessageHandlers();
         outputConfig();
 
-        // initialize the in memory index cache
-        distinctMetrics = CacheBuilder.newBuilder()
-        .maximumSize(maxIndexCacheSize)
-                .expireAfterWrite(DEFAULT_INDEX_EXPIRY_MINUTES, TimeUnit.MINUTES)
-        .build( new CacheLoader<String, Boolean>(){ public Boolean load(String key) throws Exception { return true; }});
-
         // start listening for incoming messages
-        eventBus.consumer(address, this);
+        consumer = eventBus.consumer(address, this);
+        statsConsumer = eventBus.consumer(address + STATS_ADDRESS_SUFFIX, message -> message.reply(stats.toJson()));
         initStatsReporting();
+        initIngestServer(startedResult);
     }
 
 
     private void initStatsReporting() {
         reportingTimerId = vertx.setPeriodic(FIVE_MINUTES_MILLI, (timerId) -> {
-            logger.info(String.format("Currently indexing %d metrics, metrics indexed: %d put: %d errors: %d this period",
-                    distinctMetrics.size(), metricsIndexed.getAndSet(0), metricsPut.getAndSet(0),
-                    metricsErrors.getAndSet(0)));
+            logger.info(String.format("Currently indexing %d metrics, totals indexed: %d put: %d errors: %d " +
+                    "refreshed ahead of expiry: %d", indexedSeries.size(), stats.metricsIndexed.sum(),
+                    stats.metricsPut.sum(), stats.metricsErrors.sum(), indexedSeries.getRefreshes()));
+            logger.info(String.format("Requests in flight: %d pending: %d, total metrics shed: %d", inFlight,
+                    pendingRequests.size(), stats.metricsShed.sum()));
+            if (spool != null) {
+                logger.info(String.format("Spool has %d metrics waiting, totals spooled: %d replayed: %d " +
+                        "dropped: %d", spool.getPendingRecords(), stats.metricsSpooled.sum(),
+                        stats.metricsReplayed.sum(), spool.getDroppedRecords()));
+            }
+        });
+
+        // every instance checks, whichever gets there first once an interval is over rotates and reports
+        statsTimerId = vertx.setPeriodic(Math.min(statsIntervalMs, 1000), timerId -> {
+            if (stats.rotateIfDue(System.currentTimeMillis()) && statsReportToBosun) {
+                for (OpenTsDbMetric metric : stats.toMetrics(statsMetricPrefix, statsTags)) { bufferPut(metric, null); }
+            }
         });
     }
 
+    private static String getLocalHostName() {
+        try {
+            return InetAddress.getLocalHost().getHostName();
+        } catch (UnknownHostException ex) {
+            return "unknown";
+        }
+    }
+
+    /**
+     * Get the index cache and spool shared with the other instances on this address, the first instance to start
+     * creates them. Starts replaying anything in the spool.
+     *
+     * @param startedResult the startup callback for loading the module
+     * @return false if the shared state couldn't be created and startup failed
+     */
+    private boolean initializeSharedState(Future<Void> startedResult) {
+        try {
+            shared = SharedReporterState.acquire(vertx, address, this::createSharedState);
+        } catch (IOException ex) {
+            startedResult.fail("Failed to open spool: " + ex.getLocalizedMessage());
+            return false;
+        } catch (Exception ex) {
+            startedResult.fail("Invalid config: " + ex.getMessage());
+            return false;
+        }
+
+        indexedSeries = shared.indexedSeries;
+        cardinalityLimiter = shared.cardinalityLimiter;
+        spool = shared.spool;
+        stats = shared.stats;
+        if (spool != null) { spoolTimerId = vertx.setPeriodic(spoolReplayIntervalMs, timerId -> replaySpool()); }
+        return true;
+    }
+
+    private SharedReporterState createSharedState() throws IOException {
+        StripedSeriesKeyIndex index = new StripedSeriesKeyIndex(maxIndexCacheSize,
+                TimeUnit.MINUTES.toMillis(indexExpiryInMinutes), indexExpiryJitterPercent / 100.0,
+                indexRefreshAheadPercent / 100.0);
+        MetricSpool metricSpool = spoolDir == null ? null
+                : new MetricSpool(new File(spoolDir), spoolSegmentSize, spoolMaxSize);
+        CardinalityLimiter limiter = cardinalityMaxTagValues < 0 ? null
+                : new CardinalityLimiter(cardinalityMaxTagValues, cardinalityMaxMetrics, cardinalityMaxSketches,
+                        TimeUnit.MINUTES.toMillis(cardinalityWindowMinutes), cardinalityPolicy,
+                        System.currentTimeMillis());
+
+        ReporterStats reporterStats = new ReporterStats(statsIntervalMs);
+        reporterStats.addGauge("index.size", index::size);
+        reporterStats.addGauge("index.refreshes", index::getRefreshes);
+        if (metricSpool != null) {
+            reporterStats.addGauge("spool.pending", metricSpool::getPendingRecords);
+            reporterStats.addGauge("spool.dropped", metricSpool::getDroppedRecords);
+        }
+        if (limiter != null) {
+            reporterStats.addGauge("cardinality.metrics", limiter::size);
+            reporterStats.addGauge("cardinality.sketches", limiter::getSketchCount);
+        }
+        return new SharedReporterState(index, metricSpool, reporterStats, limiter);
+    }
+
 
     /**
      * Dump the config that we are using out
@@ -137,7 +423,39 @@ public class BosunReporter extends AbstractVerticle implements Handler<Message<J
         StringBuilder builder = new StringBuilder();
         builder.append("Config[address=").append(address).append(", maxTags=").append(maxTags)
                .append(", max_index_cache_size=").append(maxIndexCacheSize).append(", index_expiry_in_minutes=")
-               .append(indexExpiryInMinutes).append(", default_timeout_ms=").append(timeout).append(", hosts='")
+               .append(indexExpiryInMinutes).append(", index_expiry_jitter_percent=").append(indexExpiryJitterPercent)
+               .append(", index_refresh_ahead_percent=").append(indexRefreshAheadPercent)
+               .append(", default_timeout_ms=").append(timeout).append(", max_batch_size=")
+               .append(maxBatchSize).append(", max_batch_delay_ms=").append(maxBatchDelayMs)
+               .append(", max_pool_size=").append(maxPoolSize).append(", pipelining=").append(pipelining)
+               .append(", max_wait_queue_size=").append(maxWaitQueueSize)
+               .append(", max_in_flight=").append(maxInFlight).append(", max_in_flight_per_host=")
+               .append(maxInFlightPerHost).append(", max_pending_requests=").append(maxPendingRequests)
+               .append(", overload_policy=").append(overloadPolicy.configName)
+               .append(", host_selection=").append(hostSelection)
+               .append(", circuit_failure_threshold=").append(circuitFailureThreshold)
+               .append(", circuit_backoff_ms=").append(circuitBackoffMs)
+               .append(", circuit_max_backoff_ms=").append(circuitMaxBackoffMs)
+               .append(", spool_dir=").append(spoolDir).append(", spool_segment_size_bytes=").append(spoolSegmentSize)
+               .append(", spool_max_size_bytes=").append(spoolMaxSize).append(", spool_replay_batch_size=")
+               .append(spoolReplayBatchSize).append(", spool_replay_interval_ms=").append(spoolReplayIntervalMs)
+               .append(", stats_interval_ms=").append(statsIntervalMs).append(", stats_report_to_bosun=")
+               .append(statsReportToBosun).append(", stats_metric_prefix=").append(statsMetricPrefix)
+               .append(", stats_tags=").append(statsTags.encode())
+               .append(", compress_requests=").append(compressRequests).append(", compression_min_bytes=")
+               .append(compressionMinBytes).append(", compression_level=").append(compressionLevel)
+               .append(", max_retries=").append(maxRetries).append(", retry_backoff_ms=").append(retryBackoffMs)
+               .append(", retry_max_backoff_ms=").append(retryMaxBackoffMs).append(", retry_statuses=")
+               .append(retryStatuses.encode()).append(", retry_budget_percent=").append(retryBudgetPercent)
+               .append(", telnet_write_queue_max_size=").append(telnetWriteQueueMaxSize)
+               .append(", ingest_port=").append(ingestPort).append(", ingest_host=").append(ingestHost)
+               .append(", ingest_max_body_bytes=").append(ingestMaxBodyBytes)
+               .append(", cardinality_max_tag_values=").append(cardinalityMaxTagValues)
+               .append(", cardinality_max_metrics=").append(cardinalityMaxMetrics)
+               .append(", cardinality_max_sketches=").append(cardinalityMaxSketches)
+               .append(", cardinality_window_minutes=").append(cardinalityWindowMinutes)
+               .append(", cardinality_policy=").append(cardinalityPolicy)
+               .append(", hosts='")
                .append(hosts.encode()).append("']");
         logger.info(builder.toString());
     }
@@ -146,49 +464,222 @@ public class BosunReporter extends AbstractVerticle implements Handler<Message<J
      * Setup our client connections
      *
      * @param startedResult the startup callback for loading the module
+     * @return false if a connection couldn't be setup and startup failed
      */
-    private void initializeConnections(Future<Void> startedResult) {
+    private boolean initializeConnections(Future<Void> startedResult) {
+        // vert.x doesn't bound the queue of requests waiting on a pooled connection, so we track it ourselves
+        int maxOutstanding = maxWaitQueueSize < 0 ? -1 : maxPoolSize + maxWaitQueueSize;
+        if (maxInFlightPerHost >= 0) {
+            maxOutstanding = maxOutstanding < 0 ? maxInFlightPerHost : Math.min(maxOutstanding, maxInFlightPerHost);
+        }
         try {
             for (int i = 0; i < hosts.size(); i++) {
                 JsonObject jsonHost = hosts.getJsonObject(i);
-                connections.add(vertx.createHttpClient(new HttpClientOptions()
-                        .setDefaultHost(jsonHost.getString("host"))
-                        .setDefaultPort(jsonHost.getInteger("port"))
+                String host = jsonHost.getString("host");
+                int port = jsonHost.getInteger("port");
+                CircuitBreaker breaker = shared.getBreaker(host, port, circuitFailureThreshold, circuitBackoffMs,
+                        circuitMaxBackoffMs);
+                String protocol = jsonHost.getString("protocol", BosunHost.HTTP_PROTOCOL);
+                if (BosunHost.TELNET_PROTOCOL.equals(protocol)) {
+                    connections.add(createTelnetHost(host, port, maxOutstanding, breaker));
+                    continue;
+                } else if (!BosunHost.HTTP_PROTOCOL.equals(protocol)) {
+                    throw new IllegalArgumentException("Unknown protocol: " + protocol);
+                }
+
+                HttpClient client = vertx.createHttpClient(new HttpClientOptions()
+                        .setDefaultHost(host)
+                        .setDefaultPort(port)
                         .setKeepAlive(true)
                         .setTcpNoDelay(true)
                         .setConnectTimeout(timeout)
-                        .setTryUseCompression(true)));
+                        .setMaxPoolSize(maxPoolSize)
+                        .setPipelining(pipelining)
+                        .setTryUseCompression(true));
+                connections.add(new BosunHost(host, port, client, maxOutstanding, breaker, stats.getHost(host, port)));
             }
         } catch (Exception ex) {
-            startedResult.fail(ex.getLocalizedMessage());
-            return;
+            failStart(startedResult, ex.getLocalizedMessage());
+            return false;
         }
         // all connections added
-        startedResult.complete();
+        return true;
+    }
+
+    /**
+     * Setup a host that puts go to over a telnet protocol connection, the connection opens in the background
+     *
+     * @param host the OpenTsDb host name
+     * @param port the OpenTsDb telnet port
+     * @param maxOutstanding the max number of requests that can be in flight for the host
+     * @param breaker tracks whether the host is healthy enough to take traffic
+     * @return the host
+     */
+    private BosunHost createTelnetHost(String host, int port, int maxOutstanding, CircuitBreaker breaker) {
+        if (netClient == null) {
+            netClient = vertx.createNetClient(new NetClientOptions().setConnectTimeout(timeout).setTcpNoDelay(true));
+        }
+
+        TelnetConnection connection = new TelnetConnection(vertx, netClient, host, port, telnetWriteQueueMaxSize,
+                TELNET_MIN_RECONNECT_MS, circuitMaxBackoffMs);
+        BosunHost bosunHost = new BosunHost(connection, maxOutstanding, breaker, stats.getHost(host, port));
+        connection.connectHandler(v -> {
+            breaker.onSuccess();
+            drainPending();
+        }).drainHandler(v -> drainPending()).failureHandler(error -> {
+            // a reconnect attempt is the probe for an ejected host
+            breaker.allowRequest(System.currentTimeMillis());
+            onHostFailure(bosunHost);
+        }).connect();
+        return bosunHost;
+    }
+
+    /**
+     * Start the http server that takes OpenTsDb put and index requests from processes that aren't on the event bus,
+     * if one is configured. Instances deployed together share the port.
+     *
+     * @param startedResult the startup callback for loading the module, completed once the server is listening
+     */
+    private void initIngestServer(Future<Void> startedResult) {
+        if (ingestPort < 0) {
+            startedResult.complete();
+            return;
+        }
+
+        ingestParser = new IngestParser(maxTags, cardinalityLimiter);
+        ingestTargets = new HashMap<>();
+        ingestTargets.put(PUT_API, metric -> bufferPut(metric, null));
+        ingestTargets.put(INDEX_API, metric -> indexMetric(metric, null));
+
+        ingestServer = vertx.createHttpServer(new HttpServerOptions().setHost(ingestHost).setPort(ingestPort))
+                .requestHandler(this::handleIngest)
+                .listen(result -> {
+                    if (result.succeeded()) {
+                        startedResult.complete();
+                    } else {
+                        ingestServer = null;
+                        failStart(startedResult, "Failed to start the ingest server on " + ingestHost + ":" +
+                                ingestPort + ": " + result.cause().getMessage());
+                    }
+                });
+    }
+
+    /**
+     * Fail startup once the shared state has been acquired, undoing what has been set up so far. vert.x doesn't
+     * call stop for an instance that failed to start, without this the shared state would never be released.
+     *
+     * @param startedResult the startup callback for loading the module
+     * @param error why startup failed
+     */
+    private void failStart(Future<Void> startedResult, String error) {
+        if (consumer != null) { consumer.unregister(); }
+        if (statsConsumer != null) { statsConsumer.unregister(); }
+        cancelTimers();
+        releaseResources();
+        startedResult.fail(error);
     }
 
     @Override
-    public void stop() {
+    public void stop(Future<Void> stopResult) {
         logger.info("Shutting down vertx-bosun...");
+        stopping = true;
+        if (consumer != null) { consumer.unregister(); }
+        if (statsConsumer != null) { statsConsumer.unregister(); }
+        cancelTimers();
+        if (ingestServer != null) { ingestServer.close(); }
+
+        // don't strand anything we've buffered or that is waiting to be retried
+        flushPuts();
+        for (Map.Entry<Long, Runnable> retry : new ArrayList<>(scheduledRetries.entrySet())) {
+            vertx.cancelTimer(retry.getKey());
+            scheduledRetries.remove(retry.getKey());
+            retry.getValue().run();
+        }
+        while (!pendingRequests.isEmpty()) {
+            PendingRequest request = pollPending();
+            sendData(request.api, request.batch, request.onComplete);
+        }
+        setOverloaded(false);
+
+        // the connections and the encoder are still in use until what was just sent finishes
+        this.stopResult = stopResult;
+        finishStopping();
+    }
+
+    /**
+     * Release everything once stopping and the last send has finished
+     */
+    private void finishStopping() {
+        if (stopResult == null || outstandingSends > 0) { return; }
+
+        releaseResources();
+        stopResult.complete();
+        stopResult = null;
+    }
+
+    private void cancelTimers() {
         if (reportingTimerId != -1) {
             vertx.cancelTimer(reportingTimerId);
             reportingTimerId = -1;
         }
+        if (statsTimerId != -1) {
+            vertx.cancelTimer(statsTimerId);
+            statsTimerId = -1;
+        }
+        if (spoolTimerId != -1) {
+            vertx.cancelTimer(spoolTimerId);
+            spoolTimerId = -1;
+        }
     }
 
     /**
-     * Handles round robin'ing through the client connections
+     * Let go of the shared state and close the connections and anything else that outlives the instance
+     */
+    private void releaseResources() {
+        // the last instance out cleans up
+        if (SharedReporterState.release(vertx, address) && spool != null) { spool.close(); }
+        if (gzipEncoder != null) { gzipEncoder.close(); }
+        for (BosunHost host : connections) {
+            if (host.telnet != null) { host.telnet.close(); }
+        }
+        if (netClient != null) { netClient.close(); }
+    }
+
+    /**
+     * Get the client connections that can take a request right now, skipping any hosts that have been ejected for
+     * failing or are at their in flight limit.
+     *
+     * @param now the current time in ms
+     * @param avoid a host to skip as long as there is another one to use, ie the one a retry failed on, can be null
+     * @param api the bosun api the request is for, only hosts that support it are returned
+     * @return the hosts, empty if no host can take traffic right now
+     */
+    private List<BosunHost> getAvailableHosts(long now, BosunHost avoid, String api) {
+        List<BosunHost> available = new ArrayList<>(connections.size());
+        for (BosunHost host : connections) {
+            if (host.supports(api) && host.breaker.isAvailable(now) && host.hasCapacity()) { available.add(host); }
+        }
+        if (avoid != null && available.size() > 1) { available.remove(avoid); }
+        return available;
+    }
+
+    /**
+     * Split a batch by the host each series is routed to
      *
-     * @return the next client connection to use
+     * @param batch the metrics being sent
+     * @param hosts the hosts that can be picked
+     * @return a batch per host, the batch passed in if every series goes to the same host
      */
-    private HttpClient getNextHost() {
-       int nextIndex = currentConnectionIndex.incrementAndGet();
-       if (nextIndex >= hosts.size()) {
-           nextIndex = 0;
-           currentConnectionIndex.set(nextIndex);
-       }
+    private Map<BosunHost, MetricBatch> splitByHost(MetricBatch batch, List<BosunHost> hosts) {
+        Map<BosunHost, MetricBatch> parts = new LinkedHashMap<>();
+        for (int i = 0; i < batch.size(); i++) {
+            OpenTsDbMetric metric = batch.metrics.get(i);
+            BosunHost host = hostSelector.select(hosts, metric.getFingerprint());
+            parts.computeIfAbsent(host, key -> new MetricBatch(batch.size())).add(metric, batch.messages.get(i));
+        }
 
-       return connections.get(nextIndex);
+        if (parts.size() == 1) { return Collections.singletonMap(parts.keySet().iterator().next(), batch); }
+        return parts;
     }
 
     /**
@@ -205,12 +696,82 @@ public class BosunReporter extends AbstractVerticle implements Handler<Message<J
      *
      * @param message the message to send
      */
-    private void doPut(Message<JsonObject> message) {
+    private void doPut(Message<Object> message) {
         OpenTsDbMetric metric = getMetricFromMessage(message);
         if(metric == null) { return; }
 
-        metricsPut.incrementAndGet();
-        sendData(PUT_API, metric.asJson().encode(), message);
+        bufferPut(metric, getReplyTarget(message));
+    }
+
+    /**
+     * Add a metric to the batch being built, sending it once it is full or has waited long enough
+     *
+     * @param metric the metric to send
+     * @param message who to tell how it went, null if nobody is waiting
+     */
+    private void bufferPut(OpenTsDbMetric metric, Message<Object> message) {
+        stats.metricsPut.increment();
+        stats.bufferedPuts.increment();
+        int partition = getPartition(metric);
+        MetricBatch batch = pendingPuts[partition];
+        batch.add(metric, message);
+
+        if (batch.size() >= maxBatchSize) {
+            flushPuts(partition);
+        } else if (batchTimerId == -1) {
+            batchTimerId = vertx.setTimer(maxBatchDelayMs, timerId -> {
+                batchTimerId = -1;
+                flushPuts();
+            });
+        }
+    }
+
+    /**
+     * Work out which batch a put goes in, when series are routed it's the batch for the host the series belongs to
+     * so a batch only carries series for one host.
+     *
+     * @param metric the metric being put
+     * @return the index of the batch in pendingPuts
+     */
+    private int getPartition(OpenTsDbMetric metric) {
+        if (pendingPuts.length == 1) { return 0; }
+
+        BosunHost owner = seriesRouter.getOwner(metric.getFingerprint(), TAKES_PUTS);
+        return owner == null ? 0 : connections.indexOf(owner);
+    }
+
+    /**
+     * Send everything we have buffered for the put endpoint, a request per batch.
+     */
+    private void flushPuts() {
+        for (int i = 0; i < pendingPuts.length; i++) { flushPuts(i); }
+    }
+
+    /**
+     * Send one of the batches buffered for the put endpoint as a single request.
+     *
+     * @param partition the index of the batch in pendingPuts
+     */
+    private void flushPuts(int partition) {
+        MetricBatch batch = pendingPuts[partition];
+        if (batch.isEmpty()) { return; }
+
+        pendingPuts[partition] = new MetricBatch(maxBatchSize);
+        stats.bufferedPuts.add(-batch.size());
+
+        // nothing left to wait on
+        if (batchTimerId != -1 && allPutsFlushed()) {
+            vertx.cancelTimer(batchTimerId);
+            batchTimerId = -1;
+        }
+        deliver(PUT_API, batch);
+    }
+
+    private boolean allPutsFlushed() {
+        for (MetricBatch batch : pendingPuts) {
+            if (!batch.isEmpty()) { return false; }
+        }
+        return true;
     }
 
     /**
@@ -218,98 +779,688 @@ public class BosunReporter extends AbstractVerticle implements Handler<Message<J
      *
      * @param message the message to send
      */
-    private void doIndex(Message<JsonObject> message) {
+    private void doIndex(Message<Object> message) {
         OpenTsDbMetric metric = getMetricFromMessage(message);
         if(metric == null) { return; }
 
-        // ignore it we've seen it lately
-        String key = metric.getDistinctKey();
-        if (distinctMetrics.getIfPresent(key) != null) {
-            message.reply(new JsonObject().put(RESULT_FIELD, BosunResponse.EXISTS_MSG));
+        indexMetric(metric, getReplyTarget(message));
+    }
+
+    /**
+     * Send a metric to the index endpoint unless it has been indexed lately
+     *
+     * @param metric the metric to index
+     * @param replyTarget who to tell how it went, null if nobody is waiting
+     */
+    private void indexMetric(OpenTsDbMetric metric, Message<Object> replyTarget) {
+        long now = System.currentTimeMillis();
+        long seriesKey = metric.getFingerprint();
+        if (seriesRouter != null) {
+            // each host keeps its own index, a series that moves to another host needs indexing there too
+            BosunHost owner = seriesRouter.getOwner(seriesKey,
+                    host -> host.supports(INDEX_API) && host.breaker.isAvailable(now));
+            if (owner != null) { seriesKey = seriesRouter.getHostSeriesKey(seriesKey, owner); }
+        }
+
+        // ignore it we've seen it lately, otherwise cache it
+        if (!indexedSeries.add(seriesKey, now)) {
+            stats.indexHits.increment();
+            if (replyTarget != null) { replyTarget.reply(new JsonObject().put(RESULT_FIELD, BosunResponse.EXISTS_MSG)); }
             return;
         }
 
-        // cache it
-        distinctMetrics.put(key, true);
-        metricsIndexed.incrementAndGet();
+        stats.metricsIndexed.increment();
 
-        sendData(INDEX_API, metric.asJson().encode(), message);
+        MetricBatch batch = new MetricBatch(1);
+        batch.add(metric, replyTarget);
+        deliver(INDEX_API, batch);
+    }
+
+    /**
+     * Work out who hears how a metric got on, senders that asked for no ack get nothing so their message isn't held
+     * on to while the request to bosun is outstanding. Their failures only show up in the stats.
+     *
+     * @param message the event bus message
+     * @return the message to reply to or null if nobody is waiting on a reply
+     */
+    private static Message<Object> getReplyTarget(Message<Object> message) {
+        return Boolean.parseBoolean(message.headers().get(NO_ACK_HEADER)) ? null : message;
     }
 
     /**
-     * Convert the event bus message to a metric object we can work with.
+     * Convert the event bus message to a metric object we can work with, messages sent with the
+     * OpenTsDbMetricCodec already carry one.
      *
      * @param message the event bus message
      * @return a metric object that can be sent to Bosun
      */
-    private OpenTsDbMetric getMetricFromMessage(Message<JsonObject> message) {
+    private OpenTsDbMetric getMetricFromMessage(Message<Object> message) {
         OpenTsDbMetric metric = null;
-        try {
-            metric = new OpenTsDbMetric(message.body());
-        } catch (IllegalArgumentException ex) {
-            sendError(message, ex.getMessage());
-            return null;
+        Object body = message.body();
+        if (body instanceof OpenTsDbMetric) {
+            metric = (OpenTsDbMetric) body;
+        } else {
+            try {
+                metric = new OpenTsDbMetric((JsonObject) body);
+            } catch (IllegalArgumentException ex) {
+                sendError(message, ex.getMessage());
+                return null;
+            }
         }
 
         if(!metric.validate(maxTags)) {
             sendError(message, String.format("Cannot send more than %d tags, %d were attempted",
                     maxTags, metric.tags.size()));
-            metric = null;
+            return null;
+        }
+
+        if (cardinalityLimiter != null) {
+            try {
+                OpenTsDbMetric limited = cardinalityLimiter.apply(metric, System.currentTimeMillis());
+                if (limited != metric) { stats.metricsLimited.increment(); }
+                metric = limited;
+            } catch (CardinalityLimiter.LimitExceededException ex) {
+                stats.metricsLimited.increment();
+                sendError(message, ex.getMessage(), CARDINALITY_ERROR_CODE);
+                return null;
+            }
         }
         return metric;
     }
 
+    /**
+     * Send a batch to bosun and let every message in it know how it went. Puts that fail for reasons other than
+     * bad data go to the spool when one is configured.
+     *
+     * @param api the api on bosun to send to
+     * @param batch the metrics to send and the messages they came from
+     */
+    private void deliver(String api, MetricBatch batch) {
+        submit(api, batch, result -> {
+            if (result.succeeded()) {
+                reply(batch.messages, BosunResponse.OK_MSG);
+                return;
+            }
+
+            ReplyException failure = (ReplyException) result.cause();
+            int code = failure.failureCode();
+            if (spool != null && PUT_API.equals(api) && !isBadRequest(code) && code != OVERLOADED_ERROR_CODE) {
+                spoolBatch(batch);
+            } else {
+                sendError(batch.messages, failure.getMessage(), failure.failureCode());
+            }
+        });
+    }
+
     /**
      * Send data to the bosun instance
      *
      * @param api the api on bosun to send to
-     * @param data the json data to send
-     * @param message the event bus message the request originated from
+     * @param batch the metrics to send
+     * @param onComplete told whether bosun accepted the data, failures are a ReplyException with the error code
+     */
+    private void sendData(String api, MetricBatch batch, Handler<AsyncResult<Void>> onComplete) {
+        retryPolicy.onRequest();
+        outstandingSends++;
+        sendAttempt(api, batch, 0, null, result -> {
+            outstandingSends--;
+            onComplete.handle(result);
+            finishStopping();
+        });
+    }
+
+    /**
+     * Make one attempt at sending data, when series are routed each one goes to its own host so a batch can turn
+     * into a request per host
+     *
+     * @param api the api on bosun to send to
+     * @param batch the metrics to send
+     * @param retries how many times the data has been retried so far
+     * @param previous the host the last attempt went to, null on the first attempt
+     * @param onComplete told whether bosun accepted the data once there are no more attempts to make
+     */
+    private void sendAttempt(String api, MetricBatch batch, int retries, BosunHost previous,
+                             Handler<AsyncResult<Void>> onComplete) {
+        long now = System.currentTimeMillis();
+        List<BosunHost> available = getAvailableHosts(now, previous, api);
+        if (available.isEmpty()) {
+            fail(onComplete, "No healthy bosun hosts with capacity available for " + api, DEFAULT_MSG_ERROR_CODE);
+            return;
+        }
+
+        if (seriesRouter == null) {
+            sendTo(api, batch, retries, hostSelector.select(available), now, onComplete);
+            return;
+        }
+
+        // whatever batch a series turns up in, ie a spool replay or a retry off a failed host, it goes to its owner
+        Map<BosunHost, MetricBatch> parts = splitByHost(batch, available);
+        if (parts.size() == 1) {
+            Map.Entry<BosunHost, MetricBatch> part = parts.entrySet().iterator().next();
+            sendTo(api, part.getValue(), retries, part.getKey(), now, onComplete);
+        } else {
+            sendParts(api, batch, parts, retries, now, onComplete);
+        }
+    }
+
+    /**
+     * Send the parts of a batch that are routed to different hosts as a request each. The batch only fails if a part
+     * does, in which case the parts that got through are answered here and the batch is left holding what failed.
+     *
+     * @param api the api on bosun to send to
+     * @param batch the metrics to send
+     * @param parts the batch split by the host each part goes to
+     * @param retries how many times the data has been retried so far
+     * @param now the current time in ms
+     * @param onComplete told whether bosun accepted every part
+     */
+    private void sendParts(String api, MetricBatch batch, Map<BosunHost, MetricBatch> parts, int retries, long now,
+                           Handler<AsyncResult<Void>> onComplete) {
+        List<MetricBatch> sent = new ArrayList<>(parts.size());
+        List<MetricBatch> failed = new ArrayList<>(parts.size());
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        for (Map.Entry<BosunHost, MetricBatch> part : parts.entrySet()) {
+            sendTo(api, part.getValue(), retries, part.getKey(), now, result -> {
+                if (result.succeeded()) {
+                    sent.add(part.getValue());
+                } else {
+                    failed.add(part.getValue());
+                    failure.compareAndSet(null, result.cause());
+                }
+                if (sent.size() + failed.size() < parts.size()) { return; }
+
+                // sending can drop metrics that can't be written, the batch only keeps what was actually sent
+                batch.clear();
+                if (failed.isEmpty()) {
+                    for (MetricBatch done : sent) { batch.addAll(done); }
+                    onComplete.handle(Future.succeededFuture());
+                } else {
+                    for (MetricBatch done : sent) { reply(done.messages, BosunResponse.OK_MSG); }
+                    for (MetricBatch left : failed) { batch.addAll(left); }
+                    onComplete.handle(Future.failedFuture(failure.get()));
+                }
+            });
+        }
+    }
+
+    /**
+     * Make one attempt at sending data to a particular bosun host, failures that are worth it get retried
+     *
+     * @param api the api on bosun to send to
+     * @param batch the metrics to send
+     * @param retries how many times the data has been retried so far
+     * @param host the host to send to
+     * @param now the current time in ms
+     * @param onComplete told whether bosun accepted the data once there are no more attempts to make
      */
-    private void sendData(String api, String data, Message message) {
-        HttpClient client = getNextHost();
+    private void sendTo(String api, MetricBatch batch, int retries, BosunHost host, long now,
+                        Handler<AsyncResult<Void>> onComplete) {
+        if (!host.tryAcquire()) {
+            fail(onComplete, "Too many requests waiting on bosun host " + host, DEFAULT_MSG_ERROR_CODE);
+            return;
+        }
+
+        // someone else may have claimed the probe to an ejected host first
+        if (!host.breaker.allowRequest(now)) {
+            host.release();
+            fail(onComplete, "No healthy bosun hosts available", DEFAULT_MSG_ERROR_CODE);
+            return;
+        }
+
+        if (host.telnet != null) {
+            sendLines(batch, retries, host, onComplete);
+            return;
+        }
 
-        Buffer buffer = Buffer.buffer(data.getBytes());
+        Buffer buffer = bodyWriter.write(batch.metrics);
+        int uncompressedLength = buffer.length();
+        boolean compressed = gzipEncoder != null && uncompressedLength >= compressionMinBytes;
+        if (compressed) { buffer = gzipEncoder.encode(buffer); }
+        stats.recordRequest(batch.size(), buffer.length(), uncompressedLength);
+        // a request can see an exception after its response arrived, only handle the outcome once
+        AtomicBoolean handled = new AtomicBoolean(false);
+        long start = System.nanoTime();
 
-        client.post(api)
+        HttpClientRequest request = host.client.post(api)
         .exceptionHandler(error -> {
-            sendError(message, "Got ex contacting bosun, " + error.getLocalizedMessage());
+            if (handled.compareAndSet(false, true)) {
+                host.release();
+                long took = System.nanoTime() - start;
+                host.recordFailure(getFailurePenalty(took));
+                host.stats.recordLatency(api, took);
+                onHostFailure(host);
+                if (!retry(api, batch, retries, host, 0, onComplete)) {
+                    fail(onComplete, "Got ex contacting bosun, " + error.getLocalizedMessage(),
+                            DEFAULT_MSG_ERROR_CODE);
+                }
+            }
         })
         .handler(response -> {
+            if (!handled.compareAndSet(false, true)) { return; }
+            host.release();
+            long took = System.nanoTime() - start;
+            host.stats.recordLatency(api, took);
+
             int statusCode = response.statusCode();
+            // a 4XX is down to what we sent, not the health of the host
+            if (statusCode >= HttpResponseStatus.INTERNAL_SERVER_ERROR.code()) {
+                host.recordFailure(getFailurePenalty(took));
+                onHostFailure(host);
+            } else {
+                host.recordLatency(took);
+                host.breaker.onSuccess();
+            }
+
             // is it 2XX
             if (statusCode >= HttpResponseStatus.OK.code() && statusCode < HttpResponseStatus.MULTIPLE_CHOICES.code()) {
-                message.reply(new JsonObject().put(RESULT_FIELD, BosunResponse.OK_MSG));
+                onComplete.handle(Future.succeededFuture());
             } else {
                 response.bodyHandler(responseData -> {
-                    sendError(message, "got non 200 response from bosun, error: " + responseData, statusCode);
+                    if (!retry(api, batch, retries, host, statusCode, onComplete)) {
+                        fail(onComplete, "got non 200 response from bosun, error: " + responseData, statusCode);
+                    }
                 });
             }
         })
-        .setTimeout(timeout)
-        .putHeader(HttpHeaders.CONTENT_LENGTH, buffer.length() + "")
+        .setTimeout(timeout);
+
+        if (compressed) { request.putHeader(HttpHeaders.CONTENT_ENCODING, GZIP_ENCODING); }
+        request.putHeader(HttpHeaders.CONTENT_LENGTH, buffer.length() + "")
         .putHeader(HttpHeaders.CONTENT_TYPE, MediaType.JSON_UTF_8.toString())
         .write(buffer)
         .end();
     }
 
+    /**
+     * Send puts down a telnet connection, OpenTsDb doesn't answer puts so they are done once they are written
+     *
+     * @param batch the metrics to send
+     * @param retries how many times the data has been retried so far
+     * @param host the telnet host to send to
+     * @param onComplete told whether the data was written
+     */
+    private void sendLines(MetricBatch batch, int retries, BosunHost host, Handler<AsyncResult<Void>> onComplete) {
+        removeUnwritable(batch);
+        if (batch.isEmpty()) {
+            host.release();
+            onComplete.handle(Future.succeededFuture());
+            return;
+        }
+
+        Buffer lines = lineWriter.write(batch.metrics);
+        stats.recordRequest(batch.size(), lines.length(), lines.length());
+        boolean written = host.telnet.write(lines);
+        host.release();
+
+        if (written) {
+            host.breaker.onSuccess();
+            onComplete.handle(Future.succeededFuture());
+        } else if (!retry(PUT_API, batch, retries, host, 0, onComplete)) {
+            // the connection dropping has already been counted against the host
+            fail(onComplete, "Not connected to OpenTsDb " + host, DEFAULT_MSG_ERROR_CODE);
+        }
+    }
+
+    /**
+     * Get the time a failed request counts as in a host's response time average, at least the request timeout so a
+     * host that fails fast doesn't look fast
+     *
+     * @param took how long the request took to fail in ns
+     * @return the penalty in ns
+     */
+    private long getFailurePenalty(long took) {
+        return Math.max(took, TimeUnit.MILLISECONDS.toNanos(timeout));
+    }
+
+    /**
+     * Fail and take out of a batch the metrics that can't be put over telnet, a space or a newline in a name or tag
+     * would otherwise break the line or add lines of its own
+     *
+     * @param batch the batch to check
+     */
+    private void removeUnwritable(MetricBatch batch) {
+        for (int i = batch.size() - 1; i >= 0; i--) {
+            if (PutLineWriter.isWritable(batch.metrics.get(i))) { continue; }
+
+            batch.metrics.remove(i);
+            sendError(batch.messages.remove(i), "Metric names, tag keys and tag values put over telnet can only " +
+                    "contain letters, digits and '-', '_', '.' and '/'");
+        }
+    }
+
+    /**
+     * Schedule another attempt at a failed request after a backoff, if the retry policy allows it
+     *
+     * @param api the api on bosun to send to
+     * @param batch the metrics to send
+     * @param retries how many times the data has been retried so far
+     * @param host the host the failed attempt went to, the retry goes elsewhere if it can
+     * @param statusCode the HTTP status of the failure, 0 if there was no response
+     * @param onComplete told whether bosun accepted the data once there are no more attempts to make
+     * @return true if a retry was scheduled, false if the caller should fail the request
+     */
+    private boolean retry(String api, MetricBatch batch, int retries, BosunHost host, int statusCode,
+                          Handler<AsyncResult<Void>> onComplete) {
+        // a retry can't be left waiting on a timer after stop
+        if (stopping || !retryPolicy.isRetryable(retries, statusCode)) { return false; }
+        if (!retryPolicy.tryAcquire()) {
+            stats.retriesDenied.increment();
+            return false;
+        }
+
+        stats.retries.increment();
+        Runnable attempt = () -> sendAttempt(api, batch, retries + 1, host, onComplete);
+        long timerId = vertx.setTimer(retryPolicy.getBackoffMs(retries), id -> {
+            scheduledRetries.remove(id);
+            attempt.run();
+        });
+        scheduledRetries.put(timerId, attempt);
+        return true;
+    }
+
+    /**
+     * Send data to bosun if we are under the in flight limits, otherwise queue it or shed it according to the
+     * overload policy
+     *
+     * @param api the api on bosun to send to
+     * @param batch the metrics to send
+     * @param onComplete told whether bosun accepted the data, shed data fails with OVERLOADED_ERROR_CODE
+     */
+    private void submit(String api, MetricBatch batch, Handler<AsyncResult<Void>> onComplete) {
+        if (hasCapacity(System.currentTimeMillis(), api)) {
+            sendCounted(api, batch, onComplete);
+            return;
+        }
+
+        if (overloadPolicy == OverloadPolicy.FAIL_FAST) {
+            shed(onComplete);
+        } else if (pendingRequests.size() < maxPendingRequests) {
+            addPending(new PendingRequest(api, batch, onComplete));
+        } else if (overloadPolicy == OverloadPolicy.DROP_OLDEST && maxPendingRequests > 0) {
+            shed(pollPending().onComplete);
+            addPending(new PendingRequest(api, batch, onComplete));
+        } else {
+            shed(onComplete);
+        }
+    }
+
+    /**
+     * Send data counting it against the in flight limit, when it finishes anything pending gets a chance to go
+     */
+    private void sendCounted(String api, MetricBatch batch, Handler<AsyncResult<Void>> onComplete) {
+        inFlight++;
+        sendData(api, batch, result -> {
+            inFlight--;
+            drainPending();
+            onComplete.handle(result);
+        });
+    }
+
+    private void drainPending() {
+        // a request failing straight away would otherwise call back in here
+        if (draining) { return; }
+
+        draining = true;
+        while (!pendingRequests.isEmpty() && hasCapacity(System.currentTimeMillis(), pendingRequests.peek().api)) {
+            PendingRequest request = pollPending();
+            sendCounted(request.api, request.batch, request.onComplete);
+        }
+        draining = false;
+
+        // let senders know once we have worked through a good part of the backlog
+        if (overloaded && pendingRequests.size() <= maxPendingRequests / 2 &&
+                hasCapacity(System.currentTimeMillis(), null)) {
+            setOverloaded(false);
+        }
+    }
+
+    /**
+     * Is there room for another request under the global limit and on at least one host. If every host has been
+     * ejected there is room, the request will fail straight away rather than wait.
+     *
+     * @param now the current time in ms
+     * @param api only count hosts that support this bosun api, null for any
+     */
+    private boolean hasCapacity(long now, String api) {
+        if (maxInFlight >= 0 && inFlight >= maxInFlight) { return false; }
+
+        boolean anyAvailable = false;
+        for (BosunHost host : connections) {
+            if (host.supports(api) && host.breaker.isAvailable(now)) {
+                if (host.hasCapacity()) { return true; }
+                anyAvailable = true;
+            }
+        }
+        return !anyAvailable;
+    }
+
+    private void addPending(PendingRequest request) {
+        pendingRequests.add(request);
+        stats.pendingRequests.increment();
+    }
+
+    private PendingRequest pollPending() {
+        stats.pendingRequests.decrement();
+        return pendingRequests.poll();
+    }
+
+    private void shed(Handler<AsyncResult<Void>> onComplete) {
+        stats.metricsShed.increment();
+        setOverloaded(true);
+        fail(onComplete, BosunResponse.OVERLOADED_MSG, OVERLOADED_ERROR_CODE);
+    }
+
+    /**
+     * Publish a change in whether this instance is shedding load on the backpressure address
+     *
+     * @param value true if this instance is now overloaded
+     */
+    private void setOverloaded(boolean value) {
+        if (overloaded == value) { return; }
+
+        overloaded = value;
+        if (value) {
+            logger.warn(String.format("Overloaded with %d requests in flight and %d pending, shedding load", inFlight,
+                    pendingRequests.size()));
+        } else {
+            logger.info("No longer overloaded");
+        }
+        eventBus.publish(address + BACKPRESSURE_ADDRESS_SUFFIX, new JsonObject().put(INSTANCE_FIELD, instanceId)
+                .put(OVERLOADED_FIELD, value));
+    }
+
+    private static void fail(Handler<AsyncResult<Void>> onComplete, String error, int errorCode) {
+        onComplete.handle(Future.failedFuture(new ReplyException(ReplyFailure.RECIPIENT_FAILURE, errorCode, error)));
+    }
+
+    /**
+     * Did bosun reject the data itself, in which case there is no point sending it again
+     *
+     * @param errorCode the error code from sendData
+     * @return true if the code is a 4XX status
+     */
+    private static boolean isBadRequest(int errorCode) {
+        return errorCode >= HttpResponseStatus.BAD_REQUEST.code() &&
+                errorCode < HttpResponseStatus.INTERNAL_SERVER_ERROR.code();
+    }
+
+    /**
+     * Keep a batch bosun couldn't take so it can be replayed later
+     *
+     * @param batch the batch that failed
+     */
+    private void spoolBatch(MetricBatch batch) {
+        for (int i = 0; i < batch.size(); i++) {
+            Message<Object> message = batch.messages.get(i);
+            if (spool.append(batch.metrics.get(i))) {
+                stats.metricsSpooled.increment();
+                if (message != null) { message.reply(new JsonObject().put(RESULT_FIELD, BosunResponse.SPOOLED_MSG)); }
+            } else {
+                sendError(message, "Bosun unavailable and the metric could not be spooled");
+            }
+        }
+    }
+
+    /**
+     * Send spooled metrics on to bosun a batch at a time, only one replay request is ever outstanding across all
+     * instances
+     */
+    private void replaySpool() {
+        // live traffic comes first
+        if (stopping || spool.isEmpty() || !pendingRequests.isEmpty() || !hasCapacity(System.currentTimeMillis(), PUT_API)) {
+            return;
+        }
+        if (!shared.replaying.compareAndSet(false, true)) { return; }
+
+        List<OpenTsDbMetric> metrics = spool.read(spoolReplayBatchSize);
+        if (metrics.isEmpty()) {
+            shared.replaying.set(false);
+            return;
+        }
+
+        MetricBatch batch = new MetricBatch(metrics.size());
+        for (OpenTsDbMetric metric : metrics) { batch.add(metric, null); }
+
+        sendCounted(PUT_API, batch, result -> {
+            shared.replaying.set(false);
+            if (result.succeeded()) {
+                spool.ack();
+                stats.metricsReplayed.add(batch.size());
+                // keep going while bosun is taking data
+                replaySpool();
+            } else if (isBadRequest(((ReplyException) result.cause()).failureCode())) {
+                logger.warn("Bosun rejected spooled metrics, dropping them: " + result.cause().getMessage());
+                spool.ack();
+            }
+        });
+    }
+
+    /**
+     * Count a failed request against a host, ejecting the host if it has failed too many times
+     *
+     * @param host the host the request went to
+     */
+    private void onHostFailure(BosunHost host) {
+        if (host.breaker.onFailure(System.currentTimeMillis())) {
+            logger.warn(String.format("Ejecting bosun host %s for %d ms after repeated failures", host,
+                    host.breaker.getBackoffMs()));
+        }
+    }
+
     /**
      * Handles processing metric requests off the event bus
      *
      * @param message the metrics message
      */
     @Override
-    public void handle(Message<JsonObject> message) {
-        String action = message.body().getString(ACTION_FIELD);
+    public void handle(Message<Object> message) {
+        if (stopping) {
+            sendError(message, "vertx-bosun is shutting down");
+            return;
+        }
+
+        Object body = message.body();
+        String action;
+        if (body instanceof JsonObject) {
+            action = ((JsonObject) body).getString(ACTION_FIELD);
+        } else if (body instanceof OpenTsDbMetric) {
+            action = message.headers().get(ACTION_FIELD);
+        } else {
+            sendError(message, "Messages must be a JsonObject or an OpenTsDbMetric");
+            return;
+        }
 
         if (action == null ) { sendError(message, "You must specify an action"); }
 
-        Consumer<Message<JsonObject>> handler = handlers.get(action);
+        Consumer<Message<Object>> handler = handlers.get(action);
 
         if ( handler != null) { handler.accept(message); }
         else { sendError(message, "Invalid action: " + action + " specified."); }
     }
 
+    /**
+     * Handles a request to the ingest server, the datapoints in it go down the same path as event bus messages.
+     * Like OpenTsDb it answers 204 once the datapoints are accepted and 400 with the reasons when any of them were
+     * rejected, the valid ones are still sent. Adding 'summary' or 'details' to the query string gets the counts
+     * back on success too. Nobody waits on the result of sending to bosun, those failures only show in the stats.
+     *
+     * @param request the http request
+     */
+    private void handleIngest(HttpServerRequest request) {
+        Buffer body = Buffer.buffer();
+        AtomicBoolean tooLarge = new AtomicBoolean(false);
+        request.handler(chunk -> {
+            // keep reading so the connection stays usable, but don't hold on to what's over the limit
+            if (body.length() + chunk.length() > ingestMaxBodyBytes) { tooLarge.set(true); }
+            else if (!tooLarge.get()) { body.appendBuffer(chunk); }
+        });
+
+        request.endHandler(v -> {
+            HttpServerResponse response = request.response();
+            Consumer<OpenTsDbMetric> target = ingestTargets.get(request.path());
+            if (target == null) {
+                respondError(response, HttpResponseStatus.NOT_FOUND, "Unknown api " + request.path());
+            } else if (request.method() != HttpMethod.POST) {
+                respondError(response, HttpResponseStatus.METHOD_NOT_ALLOWED, "Datapoints must be POSTed");
+            } else if (tooLarge.get()) {
+                respondError(response, HttpResponseStatus.REQUEST_ENTITY_TOO_LARGE,
+                        "Request bodies can't be over " + ingestMaxBodyBytes + " bytes");
+            } else if (stopping) {
+                respondError(response, HttpResponseStatus.SERVICE_UNAVAILABLE, "vertx-bosun is shutting down");
+            } else if (overloaded) {
+                // tell the sender to back off rather than take datapoints we would have to shed
+                respondError(response, HttpResponseStatus.SERVICE_UNAVAILABLE, BosunResponse.OVERLOADED_MSG);
+            } else {
+                ingest(request, body, target);
+            }
+        });
+    }
+
+    private void ingest(HttpServerRequest request, Buffer body, Consumer<OpenTsDbMetric> target) {
+        HttpServerResponse response = request.response();
+        IngestParser.Result result;
+        try {
+            InputStream in = new ByteArrayInputStream(body.getBytes());
+            if (GZIP_ENCODING.equalsIgnoreCase(request.getHeader(HttpHeaders.CONTENT_ENCODING.toString()))) {
+                // the limit applies to what the body inflates to as well
+                in = ByteStreams.limit(new GZIPInputStream(in), ingestMaxBodyBytes);
+            }
+            result = ingestParser.parse(in);
+        } catch (JsonProcessingException ex) {
+            respondError(response, HttpResponseStatus.BAD_REQUEST, "Unable to parse the request: " +
+                    ex.getOriginalMessage());
+            return;
+        } catch (IOException ex) {
+            respondError(response, HttpResponseStatus.BAD_REQUEST, "Unable to read the request: " + ex.getMessage());
+            return;
+        }
+
+        stats.metricsIngested.add(result.metrics.size());
+        stats.metricsErrors.add(result.getFailed());
+        stats.metricsLimited.add(result.getLimited());
+        for (OpenTsDbMetric metric : result.metrics) { target.accept(metric); }
+
+        boolean details = request.params().contains("details");
+        if (result.getFailed() == 0 && !details && !request.params().contains("summary")) {
+            response.setStatusCode(HttpResponseStatus.NO_CONTENT.code()).end();
+            return;
+        }
+
+        JsonObject summary = new JsonObject().put("success", result.metrics.size()).put("failed", result.getFailed());
+        if (details || result.getFailed() > 0) { summary.put("errors", result.errors); }
+        respond(response, result.getFailed() > 0 ? HttpResponseStatus.BAD_REQUEST : HttpResponseStatus.OK, summary);
+    }
+
+    private static void respondError(HttpServerResponse response, HttpResponseStatus status, String error) {
+        respond(response, status, new JsonObject().put(IngestParser.ERROR_FIELD,
+                new JsonObject().put("code", status.code()).put("message", error)));
+    }
+
+    private static void respond(HttpServerResponse response, HttpResponseStatus status, JsonObject body) {
+        response.setStatusCode(status.code()).putHeader(HttpHeaders.CONTENT_TYPE, MediaType.JSON_UTF_8.toString())
+                .end(body.encode());
+    }
+
     /**
      * Send an error message back to the message sender
      *
@@ -318,12 +1469,45 @@ public class BosunReporter extends AbstractVerticle implements Handler<Message<J
      * @param errorCode an error code defaults to DEFAULT_MSG_ERROR_CODE, in the case of HTTP failures you'll get a
      *                  status back.
      */
-    private void sendError(Message message, String error, int errorCode) {
-        metricsErrors.incrementAndGet();
-        message.fail(errorCode, error);
+    private void sendError(Message<?> message, String error, int errorCode) {
+        stats.metricsErrors.increment();
+        // replayed metrics have nobody waiting on them
+        if (message != null) { message.fail(errorCode, error); }
     }
 
-    private void sendError(Message message, String error) {
+    private void sendError(Message<?> message, String error) {
         sendError(message, error, DEFAULT_MSG_ERROR_CODE);
     }
+
+    private void sendError(List<Message<Object>> messages, String error, int errorCode) {
+        for (Message<Object> message : messages) { sendError(message, error, errorCode); }
+    }
+
+    /**
+     * Send a successful result back to the message senders
+     *
+     * @param messages the messages to reply to
+     * @param result the result text
+     */
+    private void reply(List<Message<Object>> messages, String result) {
+        JsonObject reply = new JsonObject().put(RESULT_FIELD, result);
+        for (Message<Object> message : messages) {
+            if (message != null) { message.reply(reply); }
+        }
+    }
+
+    /**
+     * A request to bosun waiting for room under the in flight limits
+     */
+    private static class PendingRequest {
+        final String api;
+        final MetricBatch batch;
+        final Handler<AsyncResult<Void>> onComplete;
+
+        PendingRequest(String api, MetricBatch batch, Handler<AsyncResult<Void>> onComplete) {
+            this.api = api;
+            this.batch = batch;
+            this.onComplete = onComplete;
+        }
+    }
 }
@@ -29,4 +29,14 @@ public interface BosunResponse {
      * You passed in a metric that is still under the threshold of caching limits and being cached
      */
     String EXISTS_MSG = "exists";
+    /**
+     * Bosun couldn't take your metric right now, it has been written to the spool and will be sent once bosun is
+     * reachable again
+     */
+    String SPOOLED_MSG = "spooled";
+    /**
+     * vertx-bosun has too many requests outstanding to bosun and shed your metric, the message fails with
+     * BosunReporter.OVERLOADED_ERROR_CODE and this as the message. Back off for a while.
+     */
+    String OVERLOADED_MSG = "overloaded";
 }
@@ -0,0 +1,217 @@
+/*
+ * Copyright 2015 Cyanogen Inc.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.cyngn.vertx.bosun;
+
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.logging.Logger;
+import io.vertx.core.logging.LoggerFactory;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps a bad tag, ie one carrying a request id, from creating a new series for every value it takes. The distinct
+ * values of every tag on every metric name are counted with a {@link HyperLogLog} sketch, once a tag goes over the
+ * limit it is blocked on that metric for the rest of the window. Metrics with a blocked tag are either rejected or
+ * have the tag's value rewritten to 'other'.
+ *
+ * A sketch can't tell whether a value has been seen before, so it is the whole tag that gets blocked rather than
+ * just its new values. Memory is bounded by the max number of sketches, at 1KB each, tags that would need one past
+ * that are treated as over the limit until the window ends. The metric names tracked are capped too, any more are
+ * rejected. Safe to share across event loops.
+ */
+public class CardinalityLimiter {
+
+    public static final String OTHER_VALUE = "other";
+    public static final String REJECT_POLICY = "reject";
+    public static final String REWRITE_POLICY = "rewrite";
+    public static final int PRECISION = 10;
+    public static final int MAX_TAG_KEYS_PER_METRIC = 64;
+
+    private static final Logger logger = LoggerFactory.getLogger(CardinalityLimiter.class);
+
+    private final int maxTagValues;
+    private final int maxMetrics;
+    private final int maxSketches;
+    private final long windowMs;
+    private final boolean rewrite;
+    private final ConcurrentMap<String, MetricTags> metrics = new ConcurrentHashMap<>();
+    private final AtomicLong nextReset;
+    private final AtomicBoolean metricsFull = new AtomicBoolean(false);
+    private final AtomicInteger sketchCount = new AtomicInteger();
+    private final AtomicBoolean sketchesFull = new AtomicBoolean(false);
+
+    /**
+     * Constructor
+     *
+     * @param maxTagValues the max number of distinct values a tag can take on a metric in a window
+     * @param maxMetrics the max number of metric names to track in a window, metrics beyond that are rejected
+     * @param maxSketches the max number of metric and tag pairs to count values for in a window, at 1KB each
+     * @param windowMs how long before the counts start over and blocked tags are let through again
+     * @param policy either REJECT_POLICY or REWRITE_POLICY
+     * @param now the current time in ms
+     */
+    public CardinalityLimiter(int maxTagValues, int maxMetrics, int maxSketches, long windowMs, String policy,
+                              long now) {
+        if (maxTagValues < 1 || maxMetrics < 1 || maxSketches < 1 || windowMs < 1) {
+            throw new IllegalArgumentException("Cardinality limits and the window must be positive");
+        }
+        if (!REJECT_POLICY.equals(policy) && !REWRITE_POLICY.equals(policy)) {
+            throw new IllegalArgumentException("Unknown cardinality policy: " + policy);
+        }
+
+        this.maxTagValues = maxTagValues;
+        this.maxMetrics = maxMetrics;
+        this.maxSketches = maxSketches;
+        this.windowMs = windowMs;
+        this.rewrite = REWRITE_POLICY.equals(policy);
+        this.nextReset = new AtomicLong(now + windowMs);
+    }
+
+    /**
+     * Count the tag values on a metric and check it against the limits
+     *
+     * @param metric the metric
+     * @param now the current time in ms
+     * @return the metric, or a copy of it with the values of blocked tags rewritten to 'other'
+     * @throws LimitExceededException if the metric has a blocked tag and the policy is to reject
+     */
+    public OpenTsDbMetric apply(OpenTsDbMetric metric, long now) {
+        resetIfDue(now);
+
+        MetricTags tracked = metrics.get(metric.metric);
+        if (tracked == null) {
+            if (metrics.size() >= maxMetrics) {
+                if (metricsFull.compareAndSet(false, true)) {
+                    logger.warn(String.format("Tracking the max of %d metric names, rejecting new ones", maxMetrics));
+                }
+                throw new LimitExceededException(String.format("Over the limit of %d metric names", maxMetrics));
+            }
+            tracked = metrics.computeIfAbsent(metric.metric, name -> new MetricTags());
+        }
+
+        JsonObject rewritten = null;
+        synchronized (tracked) {
+            for (Map.Entry<String, Object> tag : metric.tags.getMap().entrySet()) {
+                if (tracked.allow(metric.metric, tag.getKey(), tag.getValue())) { continue; }
+
+                if (!rewrite) {
+                    throw new LimitExceededException(String.format("Tag '%s' on metric '%s' is over the cardinality " +
+                            "limit", tag.getKey(), metric.metric));
+                }
+                if (rewritten == null) { rewritten = metric.tags.copy(); }
+                rewritten.put(tag.getKey(), OTHER_VALUE);
+            }
+        }
+
+        return rewritten == null ? metric
+                : new OpenTsDbMetric(metric.metric, metric.value, metric.timestamp, rewritten);
+    }
+
+    private void resetIfDue(long now) {
+        long reset = nextReset.get();
+        if (now >= reset && nextReset.compareAndSet(reset, now + windowMs)) {
+            metrics.clear();
+            metricsFull.set(false);
+            sketchCount.set(0);
+            sketchesFull.set(false);
+        }
+    }
+
+    /**
+     * Get how many metric names are being tracked
+     *
+     * @return the number of metric names
+     */
+    public long size() {
+        return metrics.size();
+    }
+
+    /**
+     * Get how many sketches are counting tag values
+     *
+     * @return the number of sketches
+     */
+    public int getSketchCount() {
+        return sketchCount.get();
+    }
+
+    /**
+     * Reserve room for another sketch under the limit
+     *
+     * @return false if the limit has been reached
+     */
+    private boolean reserveSketch() {
+        while (true) {
+            int count = sketchCount.get();
+            if (count >= maxSketches) {
+                if (sketchesFull.compareAndSet(false, true)) {
+                    logger.warn(String.format("Counting the max of %d tags, treating new ones as over the limit",
+                            maxSketches));
+                }
+                return false;
+            }
+            if (sketchCount.compareAndSet(count, count + 1)) { return true; }
+        }
+    }
+
+    /**
+     * The sketches for the tags on one metric name
+     */
+    private class MetricTags {
+        private final Map<String, HyperLogLog> sketches = new HashMap<>();
+        private final Set<String> blocked = new HashSet<>();
+
+        boolean allow(String metric, String key, Object value) {
+            if (blocked.contains(key)) { return false; }
+
+            HyperLogLog sketch = sketches.get(key);
+            if (sketch == null) {
+                if (sketches.size() >= MAX_TAG_KEYS_PER_METRIC || !reserveSketch()) { return false; }
+                sketch = new HyperLogLog(PRECISION);
+                sketches.put(key, sketch);
+            }
+
+            String text = value instanceof String ? (String) value : String.valueOf(value);
+            if (sketch.add(SeriesKeyIndex.hash(text)) && sketch.estimate() > maxTagValues) {
+                // the sketch isn't needed once the tag is blocked
+                sketches.remove(key);
+                blocked.add(key);
+                logger.warn(String.format("Tag '%s' on metric '%s' has gone over %d distinct values, blocking it " +
+                        "for up to %d ms", key, metric, maxTagValues, windowMs));
+                return false;
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Thrown for a metric that is over a cardinality limit, there's no stack trace as these can come in floods
+     */
+    public static class LimitExceededException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        public LimitExceededException(String message) {
+            super(message, null, false, false);
+        }
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright 2015 Cyanogen Inc.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.cyngn.vertx.bosun;
+
+/**
+ * Tracks the health of a single bosun host. After too many failures in a row the host is ejected for a backoff
+ * window, once that passes a single probe request decides whether it comes back or stays out for longer.
+ */
+public class CircuitBreaker {
+
+    public enum State { CLOSED, OPEN, HALF_OPEN }
+
+    private final int failureThreshold;
+    private final long initialBackoffMs;
+    private final long maxBackoffMs;
+
+    private State state = State.CLOSED;
+    private int consecutiveFailures;
+    private long backoffMs;
+    private long retryAt;
+
+    /**
+     * Constructor
+     *
+     * @param failureThreshold how many failures in a row eject the host, 0 or less disables ejection
+     * @param initialBackoffMs how long the host stays out the first time it is ejected
+     * @param maxBackoffMs the longest the host can stay out, the window doubles every time a probe fails
+     */
+    public CircuitBreaker(int failureThreshold, long initialBackoffMs, long maxBackoffMs) {
+        this.failureThreshold = failureThreshold;
+        this.initialBackoffMs = initialBackoffMs;
+        this.maxBackoffMs = Math.max(initialBackoffMs, maxBackoffMs);
+        this.backoffMs = initialBackoffMs;
+    }
+
+    /**
+     * Can the host take traffic, either because it is healthy or because it is due a probe
+     *
+     * @param now the current time in ms
+     * @return true if the host can be picked for a request
+     */
+    public synchronized boolean isAvailable(long now) {
+        return state == State.CLOSED || (state == State.OPEN && now >= retryAt);
+    }
+
+    /**
+     * Claim the right to send a request, when the host is ejected only the first caller after the backoff window
+     * gets through as the probe.
+     *
+     * @param now the current time in ms
+     * @return true if the request can go out
+     */
+    public synchronized boolean allowRequest(long now) {
+        if (state == State.CLOSED) { return true; }
+
+        if (state == State.OPEN && now >= retryAt) {
+            state = State.HALF_OPEN;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * A request against the host worked
+     */
+    public synchronized void onSuccess() {
+        state = State.CLOSED;
+        consecutiveFailures = 0;
+        backoffMs = initialBackoffMs;
+    }
+
+    /**
+     * A request against the host failed
+     *
+     * @param now the current time in ms
+     * @return true if this failure ejected the host
+     */
+    public synchronized boolean onFailure(long now) {
+        if (failureThreshold <= 0) { return false; }
+
+        if (state == State.HALF_OPEN) {
+            // the probe failed, stay out for longer this time
+            backoffMs = Math.min(backoffMs * 2, maxBackoffMs);
+            return open(now);
+        }
+
+        consecutiveFailures++;
+        if (state == State.CLOSED && consecutiveFailures >= failureThreshold) { return open(now); }
+        return false;
+    }
+
+    private boolean open(long now) {
+        state = State.OPEN;
+        retryAt = now + backoffMs;
+        return true;
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    public synchronized long getBackoffMs() {
+        return backoffMs;
+    }
+}
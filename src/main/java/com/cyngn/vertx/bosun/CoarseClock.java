@@ -0,0 +1,73 @@
+/*
+ * Copyright 2015 Cyanogen Inc.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.cyngn.vertx.bosun;
+
+import io.vertx.core.Vertx;
+
+import java.util.function.LongSupplier;
+
+/**
+ * A clock that reads the system time once per tick on an event loop and hands out that cached value, for callers
+ * publishing at high rates that don't need the time to better than the tick resolution.
+ *
+ * Pass it to a BosunPublisher to stamp metrics with it.
+ */
+public class CoarseClock implements LongSupplier {
+
+    public static final long DEFAULT_RESOLUTION_MS = 10;
+
+    private final Vertx vertx;
+    private final long timerId;
+    private volatile long now;
+
+    public CoarseClock(Vertx vertx) {
+        this(vertx, DEFAULT_RESOLUTION_MS);
+    }
+
+    /**
+     * Constructor, the clock starts ticking straight away
+     *
+     * @param vertx the vertx instance to tick on
+     * @param resolutionMs how often to update the time
+     */
+    public CoarseClock(Vertx vertx, long resolutionMs) {
+        if (resolutionMs < 1) { throw new IllegalArgumentException("resolutionMs must be positive"); }
+
+        this.vertx = vertx;
+        now = System.currentTimeMillis();
+        timerId = vertx.setPeriodic(resolutionMs, id -> now = System.currentTimeMillis());
+    }
+
+    /**
+     * Get the time as of the last tick
+     *
+     * @return the time since the epoch in ms
+     */
+    public long currentTimeMillis() {
+        return now;
+    }
+
+    @Override
+    public long getAsLong() {
+        return now;
+    }
+
+    /**
+     * Stop updating the time
+     */
+    public void close() {
+        vertx.cancelTimer(timerId);
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright 2015 Cyanogen Inc.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.cyngn.vertx.bosun;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
+
+/**
+ * Sends every series to the same host by placing the hosts on a hash ring and picking the first host at or after
+ * the series fingerprint. Each host gets a number of virtual nodes on the ring so series spread evenly, and when a
+ * host can't take traffic only its own series move, each to the next host along the ring.
+ *
+ * The ring is built from the host names and ports, so every instance and every reporter with the same hosts routes
+ * a series the same way.
+ */
+public class ConsistentHashSelector implements HostSelector {
+
+    public static final int DEFAULT_VIRTUAL_NODES = 160;
+
+    private final int virtualNodes;
+    private final AtomicInteger next = new AtomicInteger(0);
+    private long[] points = new long[0];
+    private BosunHost[] owners = new BosunHost[0];
+    private Map<BosunHost, Long> hostIds = new IdentityHashMap<>();
+
+    public ConsistentHashSelector() {
+        this(DEFAULT_VIRTUAL_NODES);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param virtualNodes how many points each host gets on the ring
+     */
+    public ConsistentHashSelector(int virtualNodes) {
+        if (virtualNodes < 1) { throw new IllegalArgumentException("virtualNodes must be positive"); }
+        this.virtualNodes = virtualNodes;
+    }
+
+    @Override
+    public void setHosts(List<BosunHost> hosts) {
+        long[] ringPoints = new long[hosts.size() * virtualNodes];
+        Map<Long, BosunHost> pointOwners = new HashMap<>();
+        Map<BosunHost, Long> ids = new IdentityHashMap<>();
+        int count = 0;
+        for (BosunHost host : hosts) {
+            String name = host.host + ":" + host.port;
+            ids.put(host, SeriesKeyIndex.hash(name));
+            for (int i = 0; i < virtualNodes; i++) {
+                long point = SeriesKeyIndex.hash(name + "-" + i);
+                // the odd clash goes to whoever got there first
+                if (pointOwners.putIfAbsent(point, host) == null) { ringPoints[count++] = point; }
+            }
+        }
+
+        points = Arrays.copyOf(ringPoints, count);
+        Arrays.sort(points);
+        owners = new BosunHost[count];
+        for (int i = 0; i < count; i++) { owners[i] = pointOwners.get(points[i]); }
+        hostIds = ids;
+    }
+
+    /**
+     * Requests that aren't for a particular series take turns
+     */
+    @Override
+    public BosunHost select(List<BosunHost> hosts) {
+        return hosts.get(Math.floorMod(next.getAndIncrement(), hosts.size()));
+    }
+
+    @Override
+    public BosunHost select(List<BosunHost> hosts, long seriesKey) {
+        BosunHost owner = getOwner(seriesKey, hosts::contains);
+        // hosts that were never on the ring
+        return owner != null ? owner : select(hosts);
+    }
+
+    /**
+     * Get the host a series belongs to
+     *
+     * @param seriesKey the series fingerprint
+     * @param usable which hosts can be picked, the ring is walked past any that can't
+     * @return the host or null if none of the hosts on the ring are usable
+     */
+    public BosunHost getOwner(long seriesKey, Predicate<BosunHost> usable) {
+        if (points.length == 0) { return null; }
+
+        int index = Arrays.binarySearch(points, seriesKey);
+        if (index < 0) { index = -index - 1; }
+        for (int i = 0; i < points.length; i++) {
+            BosunHost owner = owners[(index + i) % points.length];
+            if (usable.test(owner)) { return owner; }
+        }
+        return null;
+    }
+
+    /**
+     * Get a key for a series on a particular host, so the index cache can tell a series indexed on one host from
+     * the same series after it has moved to another
+     *
+     * @param seriesKey the series fingerprint
+     * @param host the host the series is going to
+     * @return the key
+     */
+    public long getHostSeriesKey(long seriesKey, BosunHost host) {
+        Long id = hostIds.get(host);
+        return id == null ? seriesKey : SeriesKeyIndex.combine(seriesKey, id);
+    }
+}
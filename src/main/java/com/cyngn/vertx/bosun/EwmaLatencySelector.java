@@ -0,0 +1,46 @@
+/*
+ * Copyright 2015 Cyanogen Inc.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.cyngn.vertx.bosun;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Picks the host with the lowest expected wait, its moving average response time scaled by the number of requests
+ * already queued on it.
+ */
+public class EwmaLatencySelector implements HostSelector {
+
+    // rotate where we start looking so ties don't always land on the first host
+    private final AtomicInteger offset = new AtomicInteger(0);
+
+    @Override
+    public BosunHost select(List<BosunHost> hosts) {
+        int size = hosts.size();
+        int start = Math.floorMod(offset.getAndIncrement(), size);
+
+        BosunHost best = null;
+        double bestScore = Double.MAX_VALUE;
+        for (int i = 0; i < size; i++) {
+            BosunHost host = hosts.get((start + i) % size);
+            double score = host.getLatencyEwmaNanos() * (host.getInFlight() + 1);
+            if (score < bestScore) {
+                best = host;
+                bestScore = score;
+            }
+        }
+        return best;
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright 2015 Cyanogen Inc.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.cyngn.vertx.bosun;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.vertx.core.buffer.Buffer;
+
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Gzips request bodies reusing one Deflater and output array, so compressing a body doesn't allocate much beyond
+ * the Buffer it returns.
+ *
+ * Instances are not thread safe, use one per event loop.
+ */
+public class GzipEncoder {
+
+    private static final int INITIAL_OUTPUT_SIZE = 4096;
+    private static final int HEADER_SIZE = 10;
+    private static final int TRAILER_SIZE = 8;
+    // magic number, deflate, no flags, no time, no extra flags, unknown OS
+    private static final byte[] HEADER = {0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, (byte) 0xff};
+
+    private final Deflater deflater;
+    private final CRC32 crc = new CRC32();
+    private byte[] output = new byte[INITIAL_OUTPUT_SIZE];
+
+    /**
+     * @param level the deflate compression level from 1, fastest, to 9, smallest
+     */
+    public GzipEncoder(int level) {
+        if (level < Deflater.BEST_SPEED || level > Deflater.BEST_COMPRESSION) {
+            throw new IllegalArgumentException("compression level must be between 1 and 9");
+        }
+        // gzip wraps raw deflate data with its own header and trailer
+        deflater = new Deflater(level, true);
+    }
+
+    /**
+     * Gzip a body
+     *
+     * @param body the data to compress
+     * @return the gzipped data
+     */
+    public Buffer encode(Buffer body) {
+        ByteBuf data = body.getByteBuf();
+        byte[] input;
+        int offset;
+        int length = data.readableBytes();
+        if (data.hasArray()) {
+            input = data.array();
+            offset = data.arrayOffset() + data.readerIndex();
+        } else {
+            input = body.getBytes();
+            offset = 0;
+        }
+
+        crc.reset();
+        crc.update(input, offset, length);
+        deflater.reset();
+        deflater.setInput(input, offset, length);
+        deflater.finish();
+
+        System.arraycopy(HEADER, 0, output, 0, HEADER_SIZE);
+        int position = HEADER_SIZE;
+        while (!deflater.finished()) {
+            if (position == output.length) { output = Arrays.copyOf(output, output.length * 2); }
+            position += deflater.deflate(output, position, output.length - position);
+        }
+
+        if (position + TRAILER_SIZE > output.length) { output = Arrays.copyOf(output, position + TRAILER_SIZE); }
+        position = writeIntLE(output, position, (int) crc.getValue());
+        position = writeIntLE(output, position, length);
+
+        return Buffer.buffer(Unpooled.copiedBuffer(output, 0, position));
+    }
+
+    private static int writeIntLE(byte[] out, int position, int value) {
+        out[position++] = (byte) value;
+        out[position++] = (byte) (value >>> 8);
+        out[position++] = (byte) (value >>> 16);
+        out[position++] = (byte) (value >>> 24);
+        return position;
+    }
+
+    /**
+     * Free the native memory held by the deflater, the encoder can't be used after this
+     */
+    public void close() {
+        deflater.end();
+    }
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright 2015 Cyanogen Inc.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.cyngn.vertx.bosun;
+
+import java.util.List;
+
+/**
+ * Strategy for picking which bosun host a request goes to.
+ */
+public interface HostSelector {
+
+    String ROUND_ROBIN = "round_robin";
+    String LEAST_IN_FLIGHT = "least_in_flight";
+    String EWMA_LATENCY = "ewma_latency";
+    String CONSISTENT_HASH = "consistent_hash";
+
+    /**
+     * Pick the host for the next request
+     *
+     * @param hosts the hosts to choose from, never empty
+     * @return the host to send the request to
+     */
+    BosunHost select(List<BosunHost> hosts);
+
+    /**
+     * Pick the host for a request carrying a particular series, selectors that don't route by series ignore it
+     *
+     * @param hosts the hosts to choose from, never empty
+     * @param seriesKey the fingerprint of the series
+     * @return the host to send the request to
+     */
+    default BosunHost select(List<BosunHost> hosts, long seriesKey) {
+        return select(hosts);
+    }
+
+    /**
+     * Told about every host once they have all been setup, including the ones that will later be unavailable
+     *
+     * @param hosts all the hosts
+     */
+    default void setHosts(List<BosunHost> hosts) {
+    }
+
+    /**
+     * Build a selector from its config name
+     *
+     * @param name the selector name, ie 'round_robin'
+     * @return the selector
+     * @throws IllegalArgumentException if the name isn't a known selector
+     */
+    static HostSelector create(String name) {
+        switch (name) {
+            case ROUND_ROBIN: return new RoundRobinSelector();
+            case LEAST_IN_FLIGHT: return new LeastInFlightSelector();
+            case EWMA_LATENCY: return new EwmaLatencySelector();
+            case CONSISTENT_HASH: return new ConsistentHashSelector();
+            default: throw new IllegalArgumentException("Unknown host_selection: " + name);
+        }
+    }
+}
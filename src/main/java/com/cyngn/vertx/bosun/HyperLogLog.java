@@ -0,0 +1,83 @@
+/*
+ * Copyright 2015 Cyanogen Inc.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.cyngn.vertx.bosun;
+
+/**
+ * A HyperLogLog sketch, estimates how many distinct values have been added to it in a fixed amount of memory, one
+ * byte per register. With 2^precision registers the standard error is about 1.04 / sqrt(2^precision), ie 3.25% for
+ * a precision of 10. Small counts use linear counting, which is close to exact.
+ *
+ * The estimate is kept up to date as registers change so reading it doesn't walk the registers. Not thread safe.
+ */
+public class HyperLogLog {
+
+    private final int precision;
+    private final byte[] registers;
+    private final double alphaMM;
+    private int zeroRegisters;
+    // the sum of 2^-register over every register
+    private double inverseSum;
+
+    /**
+     * Constructor
+     *
+     * @param precision the log2 of the number of registers, between 4 and 16
+     */
+    public HyperLogLog(int precision) {
+        if (precision < 4 || precision > 16) {
+            throw new IllegalArgumentException("precision must be between 4 and 16");
+        }
+
+        this.precision = precision;
+        int m = 1 << precision;
+        registers = new byte[m];
+        alphaMM = 0.7213 / (1 + 1.079 / m) * m * m;
+        zeroRegisters = m;
+        inverseSum = m;
+    }
+
+    /**
+     * Add a value to the sketch
+     *
+     * @param hash a well mixed 64 bit hash of the value
+     * @return true if the sketch changed, which means the value is definitely new to it
+     */
+    public boolean add(long hash) {
+        int index = (int) (hash >>> (64 - precision));
+        // the rank of the first set bit in the rest of the hash, the sentinel bit caps it
+        int rank = Long.numberOfLeadingZeros((hash << precision) | (1L << (precision - 1))) + 1;
+        int current = registers[index];
+        if (rank <= current) { return false; }
+
+        if (current == 0) { zeroRegisters--; }
+        inverseSum += Math.scalb(1.0, -rank) - Math.scalb(1.0, -current);
+        registers[index] = (byte) rank;
+        return true;
+    }
+
+    /**
+     * Get the estimated number of distinct values that have been added
+     *
+     * @return the estimate
+     */
+    public long estimate() {
+        int m = registers.length;
+        double estimate = alphaMM / inverseSum;
+        if (estimate <= 2.5 * m && zeroRegisters > 0) {
+            estimate = m * Math.log((double) m / zeroRegisters);
+        }
+        return Math.round(estimate);
+    }
+}
@@ -0,0 +1,201 @@
+/*
+ * Copyright 2015 Cyanogen Inc.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.cyngn.vertx.bosun;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads the bodies of OpenTsDb put and index requests, either a single datapoint or an array of them. Datapoints
+ * are read a token at a time straight into metrics, without building a JsonObject for each one first.
+ *
+ * A datapoint that is wrong is reported and skipped and the rest are still read, a body that isn't valid JSON
+ * is rejected as a whole.
+ */
+public class IngestParser {
+
+    public static final String INDEX_FIELD = "index";
+    public static final String ERROR_FIELD = "error";
+
+    private static final JsonFactory FACTORY = new JsonFactory();
+
+    private final int maxTags;
+    private final CardinalityLimiter cardinalityLimiter;
+
+    public IngestParser(int maxTags) {
+        this(maxTags, null);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param maxTags the max number of tags a datapoint can have
+     * @param cardinalityLimiter checks datapoints against the cardinality limits, null for no limits
+     */
+    public IngestParser(int maxTags, CardinalityLimiter cardinalityLimiter) {
+        this.maxTags = maxTags;
+        this.cardinalityLimiter = cardinalityLimiter;
+    }
+
+    /**
+     * Read the datapoints in a request body
+     *
+     * @param body the request body
+     * @return the metrics read and the datapoints that were rejected
+     * @throws JsonParseException if the body isn't a JSON object or an array of them
+     * @throws IOException if the body can't be read
+     */
+    public Result parse(InputStream body) throws IOException {
+        Result result = new Result();
+        long now = System.currentTimeMillis();
+        try (JsonParser parser = FACTORY.createParser(body)) {
+            JsonToken token = parser.nextToken();
+            if (token == JsonToken.START_OBJECT) {
+                readDatapoint(parser, 0, now, result);
+            } else if (token == JsonToken.START_ARRAY) {
+                int index = 0;
+                while ((token = parser.nextToken()) != JsonToken.END_ARRAY) {
+                    if (token == JsonToken.START_OBJECT) {
+                        readDatapoint(parser, index, now, result);
+                    } else {
+                        parser.skipChildren();
+                        result.fail(index, "Every datapoint must be a JSON object");
+                    }
+                    index++;
+                }
+            } else {
+                throw new JsonParseException("Expected a datapoint or an array of datapoints",
+                        parser.getCurrentLocation());
+            }
+
+            if (parser.nextToken() != null) {
+                throw new JsonParseException("Unexpected content after the datapoints", parser.getCurrentLocation());
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Read one datapoint, the parser is on the start of its object and is left on the end of it
+     */
+    private void readDatapoint(JsonParser parser, int index, long now, Result result) throws IOException {
+        String metric = null;
+        Object value = null;
+        long timestamp = now;
+        JsonObject tags = null;
+        String error = null;
+
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            JsonToken token = parser.nextToken();
+            if (OpenTsDbMetric.METRIC_FIELD.equals(field)) {
+                if (token == JsonToken.VALUE_STRING) { metric = parser.getText(); }
+                else { error = "The 'metric' field must be a string"; }
+            } else if (OpenTsDbMetric.VALUE_FIELD.equals(field)) {
+                if (token.isNumeric()) { value = parser.getNumberValue(); }
+                else if (token == JsonToken.VALUE_STRING) { value = parser.getText(); }
+                else { error = "The 'value' field must be a number or a string"; }
+            } else if (OpenTsDbMetric.TIMESTAMP_FIELD.equals(field)) {
+                if (token.isNumeric()) {
+                    try {
+                        timestamp = OpenTsDbMetric.toMillis(parser.getNumberValue().longValue());
+                    } catch (IllegalArgumentException ex) {
+                        error = ex.getMessage();
+                    }
+                } else {
+                    error = "The 'timestamp' field must be a number";
+                }
+            } else if (OpenTsDbMetric.TAGS_FIELD.equals(field) && token == JsonToken.START_OBJECT) {
+                tags = new JsonObject();
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    String key = parser.getCurrentName();
+                    token = parser.nextToken();
+                    if (token.isScalarValue() && token != JsonToken.VALUE_NULL) { tags.put(key, parser.getText()); }
+                    else { error = "Tag values must be strings"; }
+                    parser.skipChildren();
+                }
+                continue;
+            } else if (OpenTsDbMetric.TAGS_FIELD.equals(field)) {
+                error = "The 'tags' field must be an object";
+            }
+            // skip over anything we don't know or didn't like
+            parser.skipChildren();
+        }
+
+        if (error != null) {
+            result.fail(index, error);
+            return;
+        }
+
+        OpenTsDbMetric parsed;
+        try {
+            parsed = new OpenTsDbMetric(metric, value, timestamp, tags);
+        } catch (IllegalArgumentException ex) {
+            result.fail(index, ex.getMessage());
+            return;
+        }
+
+        if (!parsed.validate(maxTags)) {
+            result.fail(index, String.format("Cannot send more than %d tags, %d were attempted", maxTags,
+                    tags.size()));
+            return;
+        }
+
+        if (cardinalityLimiter != null) {
+            try {
+                OpenTsDbMetric limited = cardinalityLimiter.apply(parsed, now);
+                if (limited != parsed) { result.limited++; }
+                parsed = limited;
+            } catch (CardinalityLimiter.LimitExceededException ex) {
+                result.limited++;
+                result.fail(index, ex.getMessage());
+                return;
+            }
+        }
+        result.metrics.add(parsed);
+    }
+
+    /**
+     * The metrics read from a request body and the datapoints that were rejected
+     */
+    public static class Result {
+        public final List<OpenTsDbMetric> metrics = new ArrayList<>();
+        // the position and reason for each datapoint that was rejected
+        public final JsonArray errors = new JsonArray();
+        // datapoints rejected or rewritten for going over the cardinality limits
+        private int limited;
+
+        private void fail(int index, String error) {
+            errors.add(new JsonObject().put(INDEX_FIELD, index).put(ERROR_FIELD, error));
+        }
+
+        public int getFailed() {
+            return errors.size();
+        }
+
+        public int getLimited() {
+            return limited;
+        }
+    }
+}
@@ -0,0 +1,164 @@
+/*
+ * Copyright 2015 Cyanogen Inc.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.cyngn.vertx.bosun;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A fixed size histogram of non-negative long values with log-linear buckets, in the style of HdrHistogram.
+ *
+ * Values below 2^precisionBits get their own bucket, above that every power of two range is split into
+ * 2^(precisionBits - 1) buckets, so a reported value is always within 1 / 2^(precisionBits - 1) of the value that
+ * was recorded. All memory is allocated up front, recording never allocates and is safe from any thread, and two
+ * histograms with the same layout can be merged, ie ones filled on different event loops.
+ */
+public class LatencyHistogram {
+
+    public static final int DEFAULT_PRECISION_BITS = 7;
+    public static final int DEFAULT_MAX_VALUE_BITS = 40;
+
+    private final int precisionBits;
+    private final int maxValueBits;
+    private final int halfBucketCount;
+    private final long maxValue;
+    private final AtomicLongArray counts;
+    private final LongAdder totalCount = new LongAdder();
+
+    public LatencyHistogram() {
+        this(DEFAULT_PRECISION_BITS, DEFAULT_MAX_VALUE_BITS);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param precisionBits how many significant bits of each value are kept, between 2 and 16
+     * @param maxValueBits the bit length of the largest trackable value, bigger values are recorded as the largest
+     */
+    public LatencyHistogram(int precisionBits, int maxValueBits) {
+        if (precisionBits < 2 || precisionBits > 16) {
+            throw new IllegalArgumentException("precisionBits must be between 2 and 16");
+        }
+        if (maxValueBits <= precisionBits || maxValueBits > 63) {
+            throw new IllegalArgumentException("maxValueBits must be greater than precisionBits and at most 63");
+        }
+
+        this.precisionBits = precisionBits;
+        this.maxValueBits = maxValueBits;
+        this.halfBucketCount = 1 << (precisionBits - 1);
+        this.maxValue = (1L << maxValueBits) - 1;
+        this.counts = new AtomicLongArray((1 << precisionBits) + (maxValueBits - precisionBits) * halfBucketCount);
+    }
+
+    /**
+     * Record a value
+     *
+     * @param value the value, negative values are recorded as 0
+     */
+    public void record(long value) {
+        counts.incrementAndGet(getIndex(value));
+        totalCount.increment();
+    }
+
+    /**
+     * Add the counts from another histogram into this one
+     *
+     * @param other a histogram with the same precisionBits and maxValueBits
+     */
+    public void merge(LatencyHistogram other) {
+        if (other.precisionBits != precisionBits || other.maxValueBits != maxValueBits) {
+            throw new IllegalArgumentException("Can only merge histograms with the same layout");
+        }
+
+        for (int i = 0; i < counts.length(); i++) {
+            long count = other.counts.get(i);
+            if (count != 0) {
+                counts.addAndGet(i, count);
+                totalCount.add(count);
+            }
+        }
+    }
+
+    /**
+     * Move everything recorded so far into a new histogram and reset this one, anything recorded while the copy is
+     * happening ends up in one or the other but is never lost.
+     *
+     * @return a histogram holding what was recorded since the last reset
+     */
+    public LatencyHistogram snapshotAndReset() {
+        LatencyHistogram snapshot = new LatencyHistogram(precisionBits, maxValueBits);
+        for (int i = 0; i < counts.length(); i++) {
+            long count = counts.getAndSet(i, 0);
+            if (count != 0) {
+                snapshot.counts.set(i, count);
+                snapshot.totalCount.add(count);
+                totalCount.add(-count);
+            }
+        }
+        return snapshot;
+    }
+
+    public long getCount() {
+        return totalCount.sum();
+    }
+
+    /**
+     * Get the value at a percentile
+     *
+     * @param percentile the percentile between 0 and 1, ie 0.99
+     * @return the highest value equivalent to the one at the percentile or 0 if nothing was recorded
+     */
+    public long getValueAtPercentile(double percentile) {
+        long total = 0;
+        for (int i = 0; i < counts.length(); i++) { total += counts.get(i); }
+        if (total == 0) { return 0; }
+
+        long target = Math.max(1, (long) Math.ceil(Math.min(1.0, percentile) * total));
+        long seen = 0;
+        for (int i = 0; i < counts.length(); i++) {
+            seen += counts.get(i);
+            if (seen >= target) { return getHighestEquivalentValue(i); }
+        }
+        return maxValue;
+    }
+
+    /**
+     * Get the bucket a value lands in
+     */
+    int getIndex(long value) {
+        if (value <= 0) { return 0; }
+        if (value > maxValue) { value = maxValue; }
+
+        int bitLength = 64 - Long.numberOfLeadingZeros(value);
+        if (bitLength <= precisionBits) { return (int) value; }
+
+        // keep the top precisionBits bits, the leading one is implied by the shift
+        int shift = bitLength - precisionBits;
+        int subBucket = (int) (value >>> shift) - halfBucketCount;
+        return (1 << precisionBits) + (shift - 1) * halfBucketCount + subBucket;
+    }
+
+    /**
+     * Get the largest value that lands in a bucket
+     */
+    long getHighestEquivalentValue(int index) {
+        if (index < (1 << precisionBits)) { return index; }
+
+        int offset = index - (1 << precisionBits);
+        int shift = offset / halfBucketCount + 1;
+        long subBucket = (offset % halfBucketCount) + halfBucketCount;
+        return ((subBucket + 1) << shift) - 1;
+    }
+}
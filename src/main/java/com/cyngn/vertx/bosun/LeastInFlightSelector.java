@@ -0,0 +1,50 @@
+/*
+ * Copyright 2015 Cyanogen Inc.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.cyngn.vertx.bosun;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Picks the host with the fewest requests outstanding, a slow host backs up and so naturally gets less traffic. A host
+ * failing requests straight away never backs up, so the count is scaled by the host's failure rate to give the
+ * requests it takes to get one through.
+ */
+public class LeastInFlightSelector implements HostSelector {
+
+    // keeps a host that has failed everything lately finite, it still gets picked if it's all there is
+    private static final double MIN_SUCCESS_RATE = 0.01;
+
+    // rotate where we start looking so ties don't always land on the first host
+    private final AtomicInteger offset = new AtomicInteger(0);
+
+    @Override
+    public BosunHost select(List<BosunHost> hosts) {
+        int size = hosts.size();
+        int start = Math.floorMod(offset.getAndIncrement(), size);
+
+        BosunHost best = null;
+        double bestScore = Double.MAX_VALUE;
+        for (int i = 0; i < size; i++) {
+            BosunHost host = hosts.get((start + i) % size);
+            double score = (host.getInFlight() + 1) / Math.max(1 - host.getFailureRate(), MIN_SUCCESS_RATE);
+            if (score < bestScore) {
+                best = host;
+                bestScore = score;
+            }
+        }
+        return best;
+    }
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright 2015 Cyanogen Inc.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.cyngn.vertx.bosun;
+
+import io.vertx.core.eventbus.Message;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A group of metrics that get sent to bosun in a single request, along with the event bus messages that
+ * are waiting on the result.
+ */
+public class MetricBatch {
+
+    public final List<OpenTsDbMetric> metrics;
+    public final List<Message<Object>> messages;
+
+    public MetricBatch(int expectedSize) {
+        metrics = new ArrayList<>(expectedSize);
+        messages = new ArrayList<>(expectedSize);
+    }
+
+    /**
+     * Add a metric to the batch
+     *
+     * @param metric the metric to send
+     * @param message the event bus message the metric came from
+     */
+    public void add(OpenTsDbMetric metric, Message<Object> message) {
+        metrics.add(metric);
+        messages.add(message);
+    }
+
+    /**
+     * Add everything in another batch to this one
+     *
+     * @param other the batch to add
+     */
+    public void addAll(MetricBatch other) {
+        metrics.addAll(other.metrics);
+        messages.addAll(other.messages);
+    }
+
+    public void clear() {
+        metrics.clear();
+        messages.clear();
+    }
+
+    public int size() {
+        return metrics.size();
+    }
+
+    public boolean isEmpty() {
+        return metrics.isEmpty();
+    }
+}
@@ -0,0 +1,350 @@
+/*
+ * Copyright 2015 Cyanogen Inc.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.cyngn.vertx.bosun;
+
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.logging.Logger;
+import io.vertx.core.logging.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * A durable append only log of metrics that couldn't be delivered to bosun, kept so they can be replayed once bosun
+ * is reachable again.
+ *
+ * The log is split into fixed size memory mapped segment files. Each segment starts with a small header holding
+ * how far into the segment has been replayed, followed by records of [length][crc32][metric json]. The length is
+ * written last so a record only becomes visible once it is complete, and a zero length marks the end of the data,
+ * which lets a restart find everything that is left by just hopping along the record lengths.
+ *
+ * When the log is full the oldest segment is dropped to make room for new data.
+ */
+public class MetricSpool {
+
+    private static final Logger logger = LoggerFactory.getLogger(MetricSpool.class);
+
+    private static final int MAGIC = 0x4253504c;
+    private static final int READ_OFFSET_POSITION = 4;
+    private static final int SEGMENT_HEADER_SIZE = 8;
+    private static final int RECORD_HEADER_SIZE = 8;
+    private static final String SEGMENT_PREFIX = "spool-";
+    private static final String SEGMENT_SUFFIX = ".seg";
+
+    private final File directory;
+    private final int segmentSize;
+    private final int maxSegments;
+    private final ArrayDeque<Segment> segments = new ArrayDeque<>();
+    private final CRC32 crc = new CRC32();
+
+    private long pendingRecords;
+    private long droppedRecords;
+    private long nextSegmentId;
+
+    // where the batch handed out by read() ends, applied on ack()
+    private Segment readSegment;
+    private int readEndOffset = -1;
+    private int readCount;
+
+    /**
+     * Open the spool, recovering anything a previous run left behind
+     *
+     * @param directory where the segment files live, created if missing
+     * @param segmentSize the size of each segment file in bytes
+     * @param maxSize the most disk the spool will use in bytes, at least two segments are always kept
+     * @throws IOException if the directory or segments can't be used
+     */
+    public MetricSpool(File directory, int segmentSize, long maxSize) throws IOException {
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.maxSegments = (int) Math.max(2, maxSize / segmentSize);
+
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Could not create spool directory " + directory);
+        }
+        recover();
+    }
+
+    /**
+     * Scan the existing segments to find out what still needs to be sent
+     */
+    private void recover() throws IOException {
+        List<Long> ids = new ArrayList<>();
+        File[] files = directory.listFiles((dir, name) -> name.startsWith(SEGMENT_PREFIX) &&
+                name.endsWith(SEGMENT_SUFFIX));
+        if (files != null) {
+            for (File file : files) {
+                String name = file.getName();
+                try {
+                    ids.add(Long.parseLong(name.substring(SEGMENT_PREFIX.length(),
+                            name.length() - SEGMENT_SUFFIX.length())));
+                } catch (NumberFormatException ex) {
+                    logger.warn("Ignoring unknown file in spool directory: " + name);
+                }
+            }
+        }
+        ids.sort(Long::compare);
+
+        for (long id : ids) {
+            Segment segment = openSegment(id);
+            if (segment == null) { continue; }
+            segments.addLast(segment);
+            pendingRecords += segment.unread;
+            nextSegmentId = id + 1;
+        }
+
+        // anything beyond the size cap has to go, oldest first
+        while (segments.size() > maxSegments) { dropOldest(); }
+
+        if (pendingRecords > 0) {
+            logger.info(String.format("Recovered %d unsent metrics from spool %s", pendingRecords, directory));
+        }
+    }
+
+    /**
+     * Map an existing segment and find where its data ends
+     */
+    private Segment openSegment(long id) throws IOException {
+        File file = segmentFile(id);
+        if (file.length() != segmentSize) {
+            logger.warn("Discarding spool segment with unexpected size: " + file);
+            file.delete();
+            return null;
+        }
+
+        Segment segment = new Segment(file, map(file));
+        if (segment.buffer.getInt(0) != MAGIC) {
+            logger.warn("Discarding spool segment with a bad header: " + file);
+            file.delete();
+            return null;
+        }
+
+        int readOffset = segment.buffer.getInt(READ_OFFSET_POSITION);
+        int position = SEGMENT_HEADER_SIZE;
+        while (true) {
+            int length = recordLength(segment, position);
+            if (length <= 0) { break; }
+            if (position >= readOffset) { segment.unread++; }
+            position += RECORD_HEADER_SIZE + length;
+        }
+        segment.readOffset = Math.max(SEGMENT_HEADER_SIZE, Math.min(readOffset, position));
+        segment.writeOffset = position;
+        return segment;
+    }
+
+    private Segment createSegment() throws IOException {
+        long id = nextSegmentId++;
+        File file = segmentFile(id);
+        Segment segment = new Segment(file, map(file));
+        segment.buffer.putInt(0, MAGIC);
+        segment.buffer.putInt(READ_OFFSET_POSITION, SEGMENT_HEADER_SIZE);
+        segment.readOffset = SEGMENT_HEADER_SIZE;
+        segment.writeOffset = SEGMENT_HEADER_SIZE;
+        return segment;
+    }
+
+    private MappedByteBuffer map(File file) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(segmentSize);
+            // the mapping stays valid after the channel is closed
+            return raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+        }
+    }
+
+    private File segmentFile(long id) {
+        return new File(directory, String.format("%s%020d%s", SEGMENT_PREFIX, id, SEGMENT_SUFFIX));
+    }
+
+    /**
+     * Get the length of the record at a position
+     *
+     * @return the payload length or 0 if there is no complete record there
+     */
+    private int recordLength(Segment segment, int position) {
+        if (position + RECORD_HEADER_SIZE > segmentSize) { return 0; }
+        int length = segment.buffer.getInt(position);
+        if (length <= 0 || position + RECORD_HEADER_SIZE + length > segmentSize) { return 0; }
+        return length;
+    }
+
+    /**
+     * Add a metric to the end of the spool
+     *
+     * @param metric the metric to keep
+     * @return false if the metric could not be stored
+     */
+    public synchronized boolean append(OpenTsDbMetric metric) {
+        byte[] payload = metric.asJson().encode().getBytes(StandardCharsets.UTF_8);
+        int recordSize = RECORD_HEADER_SIZE + payload.length;
+        if (recordSize > segmentSize - SEGMENT_HEADER_SIZE) { return false; }
+
+        try {
+            Segment tail = segments.peekLast();
+            if (tail == null || tail.writeOffset + recordSize > segmentSize) {
+                if (segments.size() >= maxSegments) { dropOldest(); }
+                tail = createSegment();
+                segments.addLast(tail);
+            }
+
+            crc.reset();
+            crc.update(payload, 0, payload.length);
+
+            int position = tail.writeOffset;
+            MappedByteBuffer buffer = tail.buffer;
+            buffer.position(position + RECORD_HEADER_SIZE);
+            buffer.put(payload);
+            buffer.putInt(position + 4, (int) crc.getValue());
+            // the length goes in last, that is what makes the record visible
+            buffer.putInt(position, payload.length);
+
+            tail.writeOffset += recordSize;
+            tail.unread++;
+            pendingRecords++;
+            return true;
+        } catch (IOException ex) {
+            logger.error("Failed to write to spool " + directory, ex);
+            return false;
+        }
+    }
+
+    /**
+     * Get the next metrics to replay, they stay in the spool until ack() is called
+     *
+     * @param maxRecords the most metrics to return
+     * @return the metrics in the order they were spooled, empty if there is nothing to send
+     */
+    public synchronized List<OpenTsDbMetric> read(int maxRecords) {
+        List<OpenTsDbMetric> metrics = new ArrayList<>();
+        readSegment = null;
+        readEndOffset = -1;
+        readCount = 0;
+
+        Segment head;
+        while ((head = segments.peekFirst()) != null && head.readOffset >= head.writeOffset) {
+            // fully replayed, only the segment being written to sticks around
+            if (head == segments.peekLast()) { return metrics; }
+            removeHead();
+        }
+        if (head == null) { return metrics; }
+
+        int position = head.readOffset;
+        byte[] payload = new byte[0];
+        while (metrics.size() < maxRecords && position < head.writeOffset) {
+            int length = recordLength(head, position);
+            if (length <= 0) { break; }
+
+            if (payload.length < length) { payload = new byte[length]; }
+            head.buffer.position(position + RECORD_HEADER_SIZE);
+            head.buffer.get(payload, 0, length);
+            int storedCrc = head.buffer.getInt(position + 4);
+            position += RECORD_HEADER_SIZE + length;
+            readCount++;
+
+            crc.reset();
+            crc.update(payload, 0, length);
+            if ((int) crc.getValue() != storedCrc) {
+                logger.warn("Skipping corrupt record in spool segment " + head.file);
+                continue;
+            }
+
+            try {
+                JsonObject obj = new JsonObject(new String(payload, 0, length, StandardCharsets.UTF_8));
+                metrics.add(new OpenTsDbMetric(obj.getString(OpenTsDbMetric.METRIC_FIELD),
+                        obj.getValue(OpenTsDbMetric.VALUE_FIELD), obj.getLong(OpenTsDbMetric.TIMESTAMP_FIELD),
+                        obj.getJsonObject(OpenTsDbMetric.TAGS_FIELD)));
+            } catch (RuntimeException ex) {
+                logger.warn("Skipping unreadable record in spool segment " + head.file);
+            }
+        }
+
+        readSegment = head;
+        readEndOffset = position;
+
+        // nothing usable came out, skip past the bad records
+        if (metrics.isEmpty() && readCount > 0) { ack(); }
+        return metrics;
+    }
+
+    /**
+     * Mark the metrics handed out by the last read() as delivered
+     */
+    public synchronized void ack() {
+        // the segment may have been dropped to make room while the batch was out
+        if (readSegment == null || readSegment != segments.peekFirst()) { return; }
+
+        readSegment.readOffset = readEndOffset;
+        readSegment.buffer.putInt(READ_OFFSET_POSITION, readEndOffset);
+        readSegment.unread -= readCount;
+        pendingRecords -= readCount;
+        readSegment = null;
+        readEndOffset = -1;
+        readCount = 0;
+    }
+
+    private void dropOldest() {
+        Segment head = segments.peekFirst();
+        if (head == null) { return; }
+
+        droppedRecords += head.unread;
+        logger.warn(String.format("Spool %s is full, dropping %d unsent metrics", directory, head.unread));
+        removeHead();
+    }
+
+    private void removeHead() {
+        Segment head = segments.pollFirst();
+        pendingRecords -= head.unread;
+        if (!head.file.delete()) { logger.warn("Failed to delete spool segment " + head.file); }
+    }
+
+    /**
+     * Flush everything written so far to disk
+     */
+    public synchronized void close() {
+        for (Segment segment : segments) { segment.buffer.force(); }
+    }
+
+    public synchronized boolean isEmpty() {
+        return pendingRecords == 0;
+    }
+
+    public synchronized long getPendingRecords() {
+        return pendingRecords;
+    }
+
+    public synchronized long getDroppedRecords() {
+        return droppedRecords;
+    }
+
+    private static class Segment {
+        final File file;
+        final MappedByteBuffer buffer;
+        int readOffset;
+        int writeOffset;
+        int unread;
+
+        Segment(File file, MappedByteBuffer buffer) {
+            this.file = file;
+            this.buffer = buffer;
+        }
+    }
+}
@@ -33,10 +33,18 @@ public class OpenTsDbMetric {
     public static String TAGS_FIELD = "tags";
     public static String TIMESTAMP_FIELD = "timestamp";
 
+    // like OpenTsDb, timestamps up to 10 digits are in seconds and anything longer is in ms
+    private static final long MAX_SECONDS_TIMESTAMP = 9999999999L;
+    private static final long MAX_MS_TIMESTAMP = 9999999999999L;
+
     public final String metric;
     public final Object value;
     public final long timestamp;
     public final JsonObject tags;
+    // set when the metric came from a SeriesHandle, which has already done the per series work
+    final SeriesHandle series;
+    // computed the first time it's asked for, 0 until then like String.hashCode
+    private volatile long fingerprint;
 
     public OpenTsDbMetric(JsonObject obj) {
         if(obj == null) { throw new IllegalArgumentException("You must supply a non-null JsonObject"); }
@@ -44,7 +52,17 @@ public class OpenTsDbMetric {
         this.metric = obj.getString(METRIC_FIELD);
         this.value = obj.getValue(VALUE_FIELD);
         this.tags = obj.getJsonObject(TAGS_FIELD);
-        timestamp = System.currentTimeMillis();
+        this.series = null;
+
+        // senders stamp the time they captured the metric, fall back to now for ones that don't
+        Object time = obj.getValue(TIMESTAMP_FIELD);
+        if (time == null) {
+            timestamp = System.currentTimeMillis();
+        } else if (time instanceof Number) {
+            timestamp = toMillis(((Number) time).longValue());
+        } else {
+            throw new IllegalArgumentException("The 'timestamp' field must be a number");
+        }
         validateObj();
     }
 
@@ -56,20 +74,77 @@ public class OpenTsDbMetric {
      * @param tags any tags associated to the metric
      */
     public OpenTsDbMetric(String metric, Object value, JsonObject tags) {
+        this(metric, value, System.currentTimeMillis(), tags);
+    }
+
+    /**
+     * Constructor for a metric that was captured earlier, ie one being replayed from the spool
+     *
+     * @param metric the metric name
+     * @param value the metric value
+     * @param timestamp when the metric was captured in ms, see toMillis for timestamps that may be in seconds
+     * @param tags any tags associated to the metric
+     */
+    public OpenTsDbMetric(String metric, Object value, long timestamp, JsonObject tags) {
         this.metric = metric;
         this.value = value;
         this.tags = tags;
-        timestamp = System.currentTimeMillis();
+        this.timestamp = timestamp;
+        this.series = null;
         validateObj();
     }
 
+    /**
+     * Constructor for a metric on a series that has already been validated
+     *
+     * @param series the series the metric is on
+     * @param value the metric value
+     * @param timestamp when the metric was captured in ms
+     */
+    OpenTsDbMetric(SeriesHandle series, Object value, long timestamp) {
+        this.metric = series.metric;
+        this.value = value;
+        this.tags = series.tags;
+        this.timestamp = timestamp;
+        this.series = series;
+        validateValue(value);
+    }
+
+    /**
+     * Get a timestamp in ms, timestamps of up to 10 digits are taken to be in seconds the same way OpenTsDb does
+     *
+     * @param timestamp the time since the epoch in seconds or ms
+     * @return the time since the epoch in ms
+     * @throws IllegalArgumentException if the timestamp isn't positive or has more than 13 digits
+     */
+    public static long toMillis(long timestamp) {
+        if (timestamp <= 0 || timestamp > MAX_MS_TIMESTAMP) {
+            throw new IllegalArgumentException("The timestamp must be positive in seconds or ms, got " + timestamp);
+        }
+        return timestamp <= MAX_SECONDS_TIMESTAMP ? timestamp * 1000 : timestamp;
+    }
+
     /**
      * Is the object valid?
      */
     private void validateObj() {
         if(StringUtils.isEmpty(metric)) { throw new IllegalArgumentException("All metrics need a 'name' field"); }
+        validateValue(value);
+        validateTags(tags);
+    }
+
+    /**
+     * NaN and infinity have no JSON form, a batch with one in it would be rejected by bosun as a whole
+     */
+    static void validateValue(Object value) {
         if(value == null) { throw new IllegalArgumentException("All metrics need a 'value' field");  }
+        if((value instanceof Double && !Double.isFinite((Double) value)) ||
+                (value instanceof Float && !Float.isFinite((Float) value))) {
+            throw new IllegalArgumentException("The 'value' field must be a finite number, got " + value);
+        }
+    }
 
+    static void validateTags(JsonObject tags) {
         if(tags == null || tags.size() == 0) {
             throw new IllegalArgumentException("You must specify at least one tag");
         }
@@ -100,6 +175,34 @@ public class OpenTsDbMetric {
      * @return a unique key to represent this metric
      */
     public String getDistinctKey() {
+        return series != null ? series.distinctKey : getDistinctKey(metric, tags);
+    }
+
+    /**
+     * Get a 64 bit fingerprint of the metric name and tags, cheaper to compute and store than the distinct key. It is
+     * worked out once per metric, the tags shouldn't change after the metric has been created.
+     *
+     * @return the series fingerprint
+     */
+    public long getFingerprint() {
+        if (series != null) { return series.fingerprint; }
+
+        long result = fingerprint;
+        if (result == 0) {
+            result = SeriesKeyIndex.fingerprint(metric, tags);
+            fingerprint = result;
+        }
+        return result;
+    }
+
+    /**
+     * Get a deterministic representation of a metric name including its tags
+     *
+     * @param metric the metric name
+     * @param tags the tags associated to the metric
+     * @return a unique key to represent the metric
+     */
+    public static String getDistinctKey(String metric, JsonObject tags) {
         StringBuilder builder = new StringBuilder();
         builder.append(metric);
 
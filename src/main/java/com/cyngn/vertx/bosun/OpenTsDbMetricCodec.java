@@ -0,0 +1,154 @@
+/*
+ * Copyright 2015 Cyanogen Inc.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.cyngn.vertx.bosun;
+
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.eventbus.EventBus;
+import io.vertx.core.eventbus.MessageCodec;
+import io.vertx.core.json.JsonObject;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Event bus codec that lets an {@link OpenTsDbMetric} be sent as is rather than as a JsonObject.
+ *
+ * Local delivery hands the receiver the same object, so a metric must not be changed once it has been sent.
+ * Clustered delivery uses a compact binary form: the metric name, a typed value, the timestamp and the tags.
+ */
+public class OpenTsDbMetricCodec implements MessageCodec<OpenTsDbMetric, OpenTsDbMetric> {
+
+    public static final String NAME = "bosun-opentsdb-metric";
+
+    private static final byte INT_VALUE = 0;
+    private static final byte LONG_VALUE = 1;
+    private static final byte DOUBLE_VALUE = 2;
+    private static final byte FLOAT_VALUE = 3;
+    private static final byte STRING_VALUE = 4;
+
+    /**
+     * Make the codec the default for OpenTsDbMetric on an event bus, it is fine to call this more than once
+     *
+     * @param bus the event bus to register with
+     */
+    public static void register(EventBus bus) {
+        try {
+            bus.registerDefaultCodec(OpenTsDbMetric.class, new OpenTsDbMetricCodec());
+        } catch (IllegalStateException ex) {
+            // someone on this vertx instance beat us to it
+        }
+    }
+
+    @Override
+    public void encodeToWire(Buffer buffer, OpenTsDbMetric metric) {
+        appendString(buffer, metric.metric);
+
+        Object value = metric.value;
+        if (value instanceof Integer) {
+            buffer.appendByte(INT_VALUE).appendInt((Integer) value);
+        } else if (value instanceof Long) {
+            buffer.appendByte(LONG_VALUE).appendLong((Long) value);
+        } else if (value instanceof Double) {
+            buffer.appendByte(DOUBLE_VALUE).appendDouble((Double) value);
+        } else if (value instanceof Float) {
+            buffer.appendByte(FLOAT_VALUE).appendFloat((Float) value);
+        } else {
+            buffer.appendByte(STRING_VALUE);
+            appendString(buffer, value.toString());
+        }
+
+        buffer.appendLong(metric.timestamp);
+
+        buffer.appendInt(metric.tags.size());
+        for (String key : metric.tags.fieldNames()) {
+            appendString(buffer, key);
+            appendString(buffer, String.valueOf(metric.tags.getValue(key)));
+        }
+    }
+
+    @Override
+    public OpenTsDbMetric decodeFromWire(int pos, Buffer buffer) {
+        int length = buffer.getInt(pos);
+        pos += 4;
+        String metric = buffer.getString(pos, pos + length, StandardCharsets.UTF_8.name());
+        pos += length;
+
+        Object value;
+        byte type = buffer.getByte(pos++);
+        switch (type) {
+            case INT_VALUE:
+                value = buffer.getInt(pos);
+                pos += 4;
+                break;
+            case LONG_VALUE:
+                value = buffer.getLong(pos);
+                pos += 8;
+                break;
+            case DOUBLE_VALUE:
+                value = buffer.getDouble(pos);
+                pos += 8;
+                break;
+            case FLOAT_VALUE:
+                value = buffer.getFloat(pos);
+                pos += 4;
+                break;
+            default:
+                length = buffer.getInt(pos);
+                pos += 4;
+                value = buffer.getString(pos, pos + length, StandardCharsets.UTF_8.name());
+                pos += length;
+        }
+
+        long timestamp = buffer.getLong(pos);
+        pos += 8;
+
+        int tagCount = buffer.getInt(pos);
+        pos += 4;
+        JsonObject tags = new JsonObject();
+        for (int i = 0; i < tagCount; i++) {
+            length = buffer.getInt(pos);
+            pos += 4;
+            String key = buffer.getString(pos, pos + length, StandardCharsets.UTF_8.name());
+            pos += length;
+
+            length = buffer.getInt(pos);
+            pos += 4;
+            tags.put(key, buffer.getString(pos, pos + length, StandardCharsets.UTF_8.name()));
+            pos += length;
+        }
+
+        return new OpenTsDbMetric(metric, value, timestamp, tags);
+    }
+
+    @Override
+    public OpenTsDbMetric transform(OpenTsDbMetric metric) {
+        // metrics are never changed after they are sent, no need for a copy
+        return metric;
+    }
+
+    @Override
+    public String name() {
+        return NAME;
+    }
+
+    @Override
+    public byte systemCodecID() {
+        return -1;
+    }
+
+    private static void appendString(Buffer buffer, String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        buffer.appendInt(bytes.length).appendBytes(bytes);
+    }
+}
@@ -0,0 +1,54 @@
+/*
+ * Copyright 2015 Cyanogen Inc.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.cyngn.vertx.bosun;
+
+/**
+ * What to do with a request to bosun when the in flight limits are hit and the pending queue can't take it.
+ */
+public enum OverloadPolicy {
+
+    /**
+     * Don't queue anything, fail requests as soon as the in flight limits are hit
+     */
+    FAIL_FAST("fail_fast"),
+    /**
+     * Queue requests, once the queue is full fail the incoming request
+     */
+    DROP_NEWEST("drop_newest"),
+    /**
+     * Queue requests, once the queue is full fail the request that has been waiting longest to make room
+     */
+    DROP_OLDEST("drop_oldest");
+
+    public final String configName;
+
+    OverloadPolicy(String configName) {
+        this.configName = configName;
+    }
+
+    /**
+     * Get a policy by its config name
+     *
+     * @param name the policy name, ie 'drop_newest'
+     * @return the policy
+     * @throws IllegalArgumentException if the name isn't a known policy
+     */
+    public static OverloadPolicy fromConfig(String name) {
+        for (OverloadPolicy policy : values()) {
+            if (policy.configName.equals(name)) { return policy; }
+        }
+        throw new IllegalArgumentException("Unknown overload_policy: " + name);
+    }
+}
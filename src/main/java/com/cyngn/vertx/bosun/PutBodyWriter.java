@@ -0,0 +1,251 @@
+/*
+ * Copyright 2015 Cyanogen Inc.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.cyngn.vertx.bosun;
+
+import io.netty.buffer.Unpooled;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.json.JsonObject;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Writes metrics as the JSON body the bosun put and index apis expect, without going through JsonObject.
+ *
+ * This skips the JsonObject, String and byte[] the asJson().encode() route builds for every metric. A Buffer
+ * can't be reused once it is handed to an http request, so metrics are written into a scratch array the writer
+ * holds on to and then copied once into an exactly sized Buffer.
+ *
+ * Instances are not thread safe, use one per event loop.
+ */
+public class PutBodyWriter {
+
+    private static final int INITIAL_SCRATCH_SIZE = 4096;
+    private static final byte[] METRIC_KEY = "{\"metric\":".getBytes();
+    private static final byte[] VALUE_KEY = ",\"value\":".getBytes();
+    private static final byte[] TIMESTAMP_KEY = ",\"timestamp\":".getBytes();
+    private static final byte[] TAGS_KEY = ",\"tags\":".getBytes();
+    private static final byte[] NULL = "null".getBytes();
+    private static final byte[] HEX = "0123456789abcdef".getBytes();
+    private static final byte[] MIN_LONG = Long.toString(Long.MIN_VALUE).getBytes();
+
+    private byte[] scratch = new byte[INITIAL_SCRATCH_SIZE];
+    private int position;
+
+    /**
+     * Write metrics as a request body, a single metric is written as an object and several as an array
+     *
+     * @param metrics the metrics to write
+     * @return the request body
+     */
+    public Buffer write(List<OpenTsDbMetric> metrics) {
+        position = 0;
+        int count = metrics.size();
+
+        if (count == 1) {
+            write(metrics.get(0));
+        } else {
+            writeByte('[');
+            for (int i = 0; i < count; i++) {
+                if (i > 0) { writeByte(','); }
+                write(metrics.get(i));
+            }
+            writeByte(']');
+        }
+
+        return Buffer.buffer(Unpooled.copiedBuffer(scratch, 0, position));
+    }
+
+    /**
+     * Encode a metric name the way it is written in a body, for series that write it over and over
+     *
+     * @param metric the metric name
+     * @return the quoted and escaped name as UTF-8
+     */
+    static byte[] encodeName(String metric) {
+        PutBodyWriter writer = new PutBodyWriter();
+        writer.writeString(metric);
+        return Arrays.copyOf(writer.scratch, writer.position);
+    }
+
+    /**
+     * Encode tags the way they are written in a body, for series that write them over and over
+     *
+     * @param tags the tags
+     * @return the tags as a UTF-8 JSON object
+     */
+    static byte[] encodeTags(JsonObject tags) {
+        PutBodyWriter writer = new PutBodyWriter();
+        writer.writeTags(tags);
+        return Arrays.copyOf(writer.scratch, writer.position);
+    }
+
+    private void write(OpenTsDbMetric metric) {
+        SeriesHandle series = metric.series;
+        writeBytes(METRIC_KEY);
+        if (series != null) {
+            writeBytes(series.encodedName);
+        } else {
+            writeString(metric.metric);
+        }
+        writeBytes(VALUE_KEY);
+        writeValue(metric.value);
+        writeBytes(TIMESTAMP_KEY);
+        writeLong(metric.timestamp);
+        writeBytes(TAGS_KEY);
+        if (series != null) {
+            writeBytes(series.encodedTags);
+        } else {
+            writeTags(metric.tags);
+        }
+        writeByte('}');
+    }
+
+    private void writeTags(JsonObject tags) {
+        writeByte('{');
+        boolean first = true;
+        for (String key : tags.fieldNames()) {
+            if (!first) { writeByte(','); }
+            first = false;
+            writeString(key);
+            writeByte(':');
+            writeValue(tags.getValue(key));
+        }
+        writeByte('}');
+    }
+
+    private void writeValue(Object value) {
+        if (value instanceof Integer || value instanceof Long || value instanceof Short || value instanceof Byte) {
+            writeLong(((Number) value).longValue());
+        } else if (value instanceof CharSequence) {
+            writeString((CharSequence) value);
+        } else if (value == null) {
+            writeBytes(NULL);
+        } else {
+            // doubles, floats and booleans, their JSON form is the same as their string form
+            String text = value.toString();
+            ensureCapacity(text.length());
+            for (int i = 0; i < text.length(); i++) { scratch[position++] = (byte) text.charAt(i); }
+        }
+    }
+
+    private void writeLong(long value) {
+        if (value == Long.MIN_VALUE) {
+            writeBytes(MIN_LONG);
+            return;
+        }
+
+        ensureCapacity(20);
+        if (value < 0) {
+            scratch[position++] = '-';
+            value = -value;
+        }
+
+        // write the digits backwards from where the number ends
+        int end = position + digitCount(value);
+        int index = end;
+        do {
+            scratch[--index] = (byte) ('0' + (value % 10));
+            value /= 10;
+        } while (value != 0);
+        position = end;
+    }
+
+    private static int digitCount(long value) {
+        int digits = 1;
+        while (value >= 10) {
+            value /= 10;
+            digits++;
+        }
+        return digits;
+    }
+
+    /**
+     * Write a quoted, escaped JSON string encoded as UTF-8
+     */
+    private void writeString(CharSequence value) {
+        int length = value.length();
+        // worst case every char is a six byte escape
+        ensureCapacity(length * 6 + 2);
+
+        byte[] out = scratch;
+        int pos = position;
+        out[pos++] = '"';
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                out[pos++] = '\\';
+                out[pos++] = (byte) c;
+            } else if (c < 0x20) {
+                pos = writeControl(out, pos, c);
+            } else if (c < 0x80) {
+                out[pos++] = (byte) c;
+            } else if (c < 0x800) {
+                out[pos++] = (byte) (0xc0 | (c >> 6));
+                out[pos++] = (byte) (0x80 | (c & 0x3f));
+            } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(value.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                out[pos++] = (byte) (0xf0 | (codePoint >> 18));
+                out[pos++] = (byte) (0x80 | ((codePoint >> 12) & 0x3f));
+                out[pos++] = (byte) (0x80 | ((codePoint >> 6) & 0x3f));
+                out[pos++] = (byte) (0x80 | (codePoint & 0x3f));
+            } else if (Character.isSurrogate(c)) {
+                // an unpaired surrogate can't be encoded, same as String.getBytes we write a '?'
+                out[pos++] = '?';
+            } else {
+                out[pos++] = (byte) (0xe0 | (c >> 12));
+                out[pos++] = (byte) (0x80 | ((c >> 6) & 0x3f));
+                out[pos++] = (byte) (0x80 | (c & 0x3f));
+            }
+        }
+        out[pos++] = '"';
+        position = pos;
+    }
+
+    private static int writeControl(byte[] out, int pos, char c) {
+        out[pos++] = '\\';
+        switch (c) {
+            case '\b': out[pos++] = 'b'; break;
+            case '\f': out[pos++] = 'f'; break;
+            case '\n': out[pos++] = 'n'; break;
+            case '\r': out[pos++] = 'r'; break;
+            case '\t': out[pos++] = 't'; break;
+            default:
+                out[pos++] = 'u';
+                out[pos++] = '0';
+                out[pos++] = '0';
+                out[pos++] = HEX[c >> 4];
+                out[pos++] = HEX[c & 0xf];
+        }
+        return pos;
+    }
+
+    private void writeByte(char c) {
+        ensureCapacity(1);
+        scratch[position++] = (byte) c;
+    }
+
+    private void writeBytes(byte[] bytes) {
+        ensureCapacity(bytes.length);
+        System.arraycopy(bytes, 0, scratch, position, bytes.length);
+        position += bytes.length;
+    }
+
+    private void ensureCapacity(int needed) {
+        if (position + needed > scratch.length) {
+            scratch = Arrays.copyOf(scratch, Math.max(scratch.length * 2, position + needed));
+        }
+    }
+}
@@ -0,0 +1,200 @@
+/*
+ * Copyright 2015 Cyanogen Inc.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.cyngn.vertx.bosun;
+
+import io.netty.buffer.Unpooled;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.json.JsonObject;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Writes metrics as OpenTsDb telnet style put lines, 'put &lt;metric&gt; &lt;timestamp&gt; &lt;value&gt;
+ * &lt;tagk1=tagv1 ...&gt;', one line per metric.
+ *
+ * Like the PutBodyWriter, lines are written into a scratch array the writer holds on to and copied once into an
+ * exactly sized Buffer. The line protocol has no escaping, so like OpenTsDb the metric name, tag keys and tag values
+ * may only contain letters, digits and '-', '_', '.' and '/'. Anything else, a space or a newline in particular,
+ * would break the line or start a new one, check metrics with isWritable before writing them.
+ *
+ * Instances are not thread safe, use one per event loop.
+ */
+public class PutLineWriter {
+
+    private static final int INITIAL_SCRATCH_SIZE = 4096;
+    private static final byte[] PUT = "put ".getBytes();
+    private static final byte[] MIN_LONG = Long.toString(Long.MIN_VALUE).getBytes();
+
+    private byte[] scratch = new byte[INITIAL_SCRATCH_SIZE];
+    private int position;
+
+    /**
+     * Can the metric be written as a put line, are its name, tags and value made of characters OpenTsDb allows
+     *
+     * @param metric the metric to check
+     * @return true if it can be written
+     */
+    public static boolean isWritable(OpenTsDbMetric metric) {
+        if (!isValid(metric.metric)) { return false; }
+        // numbers only ever print as characters that are allowed
+        if (!(metric.value instanceof Number) && !isValid(String.valueOf(metric.value))) { return false; }
+
+        JsonObject tags = metric.tags;
+        for (String key : tags.fieldNames()) {
+            if (!isValid(key) || !isValid(String.valueOf(tags.getValue(key)))) { return false; }
+        }
+        return true;
+    }
+
+    private static boolean isValid(String value) {
+        int length = value.length();
+        if (length == 0) { return false; }
+
+        for (int i = 0; i < length; ) {
+            int codePoint = value.codePointAt(i);
+            if (!isAllowed(codePoint)) { return false; }
+            i += Character.charCount(codePoint);
+        }
+        return true;
+    }
+
+    private static boolean isAllowed(int c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '-' || c == '_' ||
+                c == '.' || c == '/' || Character.isLetter(c);
+    }
+
+    /**
+     * Write metrics as put lines
+     *
+     * @param metrics the metrics to write
+     * @return the lines
+     * @throws IllegalArgumentException if a metric isn't writable, see isWritable
+     */
+    public Buffer write(List<OpenTsDbMetric> metrics) {
+        position = 0;
+        for (int i = 0; i < metrics.size(); i++) { write(metrics.get(i)); }
+        return Buffer.buffer(Unpooled.copiedBuffer(scratch, 0, position));
+    }
+
+    private void write(OpenTsDbMetric metric) {
+        writeBytes(PUT);
+        writeString(metric.metric);
+        writeByte(' ');
+        writeLong(metric.timestamp);
+        writeByte(' ');
+        writeValue(metric.value);
+
+        JsonObject tags = metric.tags;
+        for (String key : tags.fieldNames()) {
+            writeByte(' ');
+            writeString(key);
+            writeByte('=');
+            writeValue(tags.getValue(key));
+        }
+        writeByte('\n');
+    }
+
+    private void writeValue(Object value) {
+        if (value instanceof Integer || value instanceof Long || value instanceof Short || value instanceof Byte) {
+            writeLong(((Number) value).longValue());
+        } else {
+            writeString(String.valueOf(value));
+        }
+    }
+
+    private void writeLong(long value) {
+        if (value == Long.MIN_VALUE) {
+            writeBytes(MIN_LONG);
+            return;
+        }
+
+        ensureCapacity(20);
+        if (value < 0) {
+            scratch[position++] = '-';
+            value = -value;
+        }
+
+        // write the digits backwards from where the number ends
+        int digits = 1;
+        for (long rest = value; rest >= 10; rest /= 10) { digits++; }
+        int end = position + digits;
+        int index = end;
+        do {
+            scratch[--index] = (byte) ('0' + (value % 10));
+            value /= 10;
+        } while (value != 0);
+        position = end;
+    }
+
+    /**
+     * Write a string encoded as UTF-8, checking it only has characters OpenTsDb allows as it goes
+     */
+    private void writeString(String value) {
+        int length = value.length();
+        if (length == 0) { throw new IllegalArgumentException("Empty names, tags and values can't be put"); }
+        ensureCapacity(length * 3);
+
+        byte[] out = scratch;
+        int pos = position;
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(value.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                if (!isAllowed(codePoint)) { throw notAllowed(value); }
+                out[pos++] = (byte) (0xf0 | (codePoint >> 18));
+                out[pos++] = (byte) (0x80 | ((codePoint >> 12) & 0x3f));
+                out[pos++] = (byte) (0x80 | ((codePoint >> 6) & 0x3f));
+                out[pos++] = (byte) (0x80 | (codePoint & 0x3f));
+                continue;
+            }
+
+            if (!isAllowed(c)) { throw notAllowed(value); }
+            if (c < 0x80) {
+                out[pos++] = (byte) c;
+            } else if (c < 0x800) {
+                out[pos++] = (byte) (0xc0 | (c >> 6));
+                out[pos++] = (byte) (0x80 | (c & 0x3f));
+            } else {
+                out[pos++] = (byte) (0xe0 | (c >> 12));
+                out[pos++] = (byte) (0x80 | ((c >> 6) & 0x3f));
+                out[pos++] = (byte) (0x80 | (c & 0x3f));
+            }
+        }
+        position = pos;
+    }
+
+    private static IllegalArgumentException notAllowed(String value) {
+        return new IllegalArgumentException("Only letters, digits and '-', '_', '.' and '/' can be put, got '" +
+                value + "'");
+    }
+
+    private void writeByte(char c) {
+        ensureCapacity(1);
+        scratch[position++] = (byte) c;
+    }
+
+    private void writeBytes(byte[] bytes) {
+        ensureCapacity(bytes.length);
+        System.arraycopy(bytes, 0, scratch, position, bytes.length);
+        position += bytes.length;
+    }
+
+    private void ensureCapacity(int extra) {
+        if (position + extra > scratch.length) {
+            scratch = Arrays.copyOf(scratch, Math.max(scratch.length * 2, position + extra));
+        }
+    }
+}
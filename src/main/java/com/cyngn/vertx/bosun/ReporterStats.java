@@ -0,0 +1,266 @@
+/*
+ * Copyright 2015 Cyanogen Inc.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.cyngn.vertx.bosun;
+
+import io.vertx.core.json.JsonObject;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * What the reporter is doing, shared by every instance on an address. Counters are LongAdders so instances on
+ * different event loops can bump them without contending, they only ever go up. Latencies and batch sizes go into
+ * histograms that are rotated every interval, what gets reported is the last complete interval.
+ */
+public class ReporterStats {
+
+    public static final String API_TAG = "api";
+    public static final String BOSUN_HOST_TAG = "bosun_host";
+    public static final String BOSUN_PORT_TAG = "bosun_port";
+
+    public final LongAdder metricsPut = new LongAdder();
+    public final LongAdder metricsIndexed = new LongAdder();
+    public final LongAdder metricsErrors = new LongAdder();
+    public final LongAdder metricsSpooled = new LongAdder();
+    public final LongAdder metricsReplayed = new LongAdder();
+    public final LongAdder metricsShed = new LongAdder();
+    // metrics that came in over the ingest endpoint rather than the event bus
+    public final LongAdder metricsIngested = new LongAdder();
+    // metrics rejected or rewritten for going over the cardinality limits
+    public final LongAdder metricsLimited = new LongAdder();
+    public final LongAdder indexHits = new LongAdder();
+    public final LongAdder requestsSent = new LongAdder();
+    public final LongAdder bytesSent = new LongAdder();
+    public final LongAdder bytesUncompressed = new LongAdder();
+    public final LongAdder retries = new LongAdder();
+    // retries the retry budget didn't have room for
+    public final LongAdder retriesDenied = new LongAdder();
+    // these go up and down
+    public final LongAdder pendingRequests = new LongAdder();
+    public final LongAdder bufferedPuts = new LongAdder();
+
+    private final long intervalMs;
+    private final AtomicLong nextRotation;
+    private final ConcurrentMap<String, HostStats> hosts = new ConcurrentHashMap<>();
+    private final Map<String, LongSupplier> gauges = new ConcurrentHashMap<>();
+    private final LatencyHistogram batchSizes = new LatencyHistogram();
+    private volatile LatencyHistogram lastBatchSizes = new LatencyHistogram();
+
+    /**
+     * @param intervalMs how often the histograms are rotated
+     */
+    public ReporterStats(long intervalMs) {
+        this.intervalMs = intervalMs;
+        nextRotation = new AtomicLong(System.currentTimeMillis() + intervalMs);
+    }
+
+    /**
+     * Get the stats for a bosun host, all instances get the same one
+     *
+     * @param host the bosun host name
+     * @param port the bosun port
+     * @return the stats for the host
+     */
+    public HostStats getHost(String host, int port) {
+        return hosts.computeIfAbsent(host + ":" + port, key -> new HostStats(host, port));
+    }
+
+    /**
+     * Add a value that is read when stats are reported, ie the size of the index cache
+     *
+     * @param name the name of the gauge, used as the JSON field and metric name suffix
+     * @param value reads the current value
+     */
+    public void addGauge(String name, LongSupplier value) {
+        gauges.put(name, value);
+    }
+
+    /**
+     * Count a request going out to bosun
+     *
+     * @param metricCount the number of metrics in the request
+     * @param bytes the size of the request body on the wire
+     * @param uncompressedBytes the size of the request body before any compression
+     */
+    public void recordRequest(int metricCount, int bytes, int uncompressedBytes) {
+        requestsSent.increment();
+        bytesSent.add(bytes);
+        bytesUncompressed.add(uncompressedBytes);
+        batchSizes.record(metricCount);
+    }
+
+    /**
+     * Start a new interval for the histograms if the current one is over, when there are several instances only one
+     * of them gets to do it
+     *
+     * @param now the current time in ms
+     * @return true if the interval was rotated by this call
+     */
+    public boolean rotateIfDue(long now) {
+        long due = nextRotation.get();
+        if (now < due || !nextRotation.compareAndSet(due, now + intervalMs)) { return false; }
+
+        lastBatchSizes = batchSizes.snapshotAndReset();
+        for (HostStats host : hosts.values()) { host.rotate(); }
+        return true;
+    }
+
+    /**
+     * @return the stats as JSON, as replied on the stats address
+     */
+    public JsonObject toJson() {
+        long misses = metricsIndexed.sum();
+        long hits = indexHits.sum();
+        JsonObject json = new JsonObject()
+                .put("interval_ms", intervalMs)
+                .put("metrics", new JsonObject().put("put", metricsPut.sum()).put("indexed", misses)
+                        .put("errors", metricsErrors.sum()).put("spooled", metricsSpooled.sum())
+                        .put("replayed", metricsReplayed.sum()).put("shed", metricsShed.sum())
+                        .put("ingested", metricsIngested.sum()).put("limited", metricsLimited.sum()))
+                .put("index", new JsonObject().put("hits", hits).put("misses", misses)
+                        .put("hit_rate", hits + misses == 0 ? 0.0 : (double) hits / (hits + misses)))
+                .put("requests", new JsonObject().put("sent", requestsSent.sum()).put("bytes_sent", bytesSent.sum())
+                        .put("bytes_uncompressed", bytesUncompressed.sum()).put("retries", retries.sum())
+                        .put("retries_denied", retriesDenied.sum())
+                        .put("pending", pendingRequests.sum()).put("buffered_puts", bufferedPuts.sum()))
+                .put("batch_size", toJson(lastBatchSizes));
+
+        JsonObject gaugeValues = new JsonObject();
+        for (Map.Entry<String, LongSupplier> gauge : gauges.entrySet()) {
+            gaugeValues.put(gauge.getKey(), gauge.getValue().getAsLong());
+        }
+        json.put("gauges", gaugeValues);
+
+        JsonObject hostValues = new JsonObject();
+        for (Map.Entry<String, HostStats> host : hosts.entrySet()) {
+            HostStats stats = host.getValue();
+            hostValues.put(host.getKey(), new JsonObject().put("in_flight", stats.inFlight.sum())
+                    .put("latency_us", new JsonObject().put(BosunReporter.PUT_COMMAND, toJson(stats.lastPutLatency))
+                            .put(BosunReporter.INDEX_COMMAND, toJson(stats.lastIndexLatency))));
+        }
+        json.put("hosts", hostValues);
+        return json;
+    }
+
+    private static JsonObject toJson(LatencyHistogram histogram) {
+        JsonObject json = new JsonObject().put("count", histogram.getCount());
+        for (double percentile : BosunAggregator.DEFAULT_PERCENTILES) {
+            json.put(BosunAggregator.getPercentileName(percentile), histogram.getValueAtPercentile(percentile));
+        }
+        return json;
+    }
+
+    /**
+     * Get the stats as metrics to send to bosun
+     *
+     * @param prefix the start of every metric name, ie 'vertx.bosun'
+     * @param tags the tags to put on every metric
+     * @return the metrics
+     */
+    public List<OpenTsDbMetric> toMetrics(String prefix, JsonObject tags) {
+        List<OpenTsDbMetric> metrics = new ArrayList<>();
+        long now = System.currentTimeMillis();
+        addMetric(metrics, prefix + ".metrics.put", metricsPut.sum(), now, tags);
+        addMetric(metrics, prefix + ".metrics.indexed", metricsIndexed.sum(), now, tags);
+        addMetric(metrics, prefix + ".metrics.errors", metricsErrors.sum(), now, tags);
+        addMetric(metrics, prefix + ".metrics.spooled", metricsSpooled.sum(), now, tags);
+        addMetric(metrics, prefix + ".metrics.replayed", metricsReplayed.sum(), now, tags);
+        addMetric(metrics, prefix + ".metrics.shed", metricsShed.sum(), now, tags);
+        addMetric(metrics, prefix + ".metrics.ingested", metricsIngested.sum(), now, tags);
+        addMetric(metrics, prefix + ".metrics.limited", metricsLimited.sum(), now, tags);
+        addMetric(metrics, prefix + ".index.hits", indexHits.sum(), now, tags);
+        addMetric(metrics, prefix + ".requests.sent", requestsSent.sum(), now, tags);
+        addMetric(metrics, prefix + ".requests.bytes_sent", bytesSent.sum(), now, tags);
+        addMetric(metrics, prefix + ".requests.bytes_uncompressed", bytesUncompressed.sum(), now, tags);
+        addMetric(metrics, prefix + ".requests.retries", retries.sum(), now, tags);
+        addMetric(metrics, prefix + ".requests.retries_denied", retriesDenied.sum(), now, tags);
+        addMetric(metrics, prefix + ".requests.pending", pendingRequests.sum(), now, tags);
+        addMetric(metrics, prefix + ".requests.buffered_puts", bufferedPuts.sum(), now, tags);
+        for (Map.Entry<String, LongSupplier> gauge : gauges.entrySet()) {
+            addMetric(metrics, prefix + "." + gauge.getKey(), gauge.getValue().getAsLong(), now, tags);
+        }
+        addPercentiles(metrics, prefix + ".batch_size", lastBatchSizes, now, tags);
+
+        for (HostStats host : hosts.values()) {
+            JsonObject hostTags = tags.copy().put(BOSUN_HOST_TAG, host.host)
+                    .put(BOSUN_PORT_TAG, String.valueOf(host.port));
+            addMetric(metrics, prefix + ".requests.in_flight", host.inFlight.sum(), now, hostTags);
+            addPercentiles(metrics, prefix + ".request.latency_us", host.lastPutLatency, now,
+                    hostTags.copy().put(API_TAG, BosunReporter.PUT_COMMAND));
+            addPercentiles(metrics, prefix + ".request.latency_us", host.lastIndexLatency, now,
+                    hostTags.copy().put(API_TAG, BosunReporter.INDEX_COMMAND));
+        }
+        return metrics;
+    }
+
+    private static void addMetric(List<OpenTsDbMetric> metrics, String name, long value, long now, JsonObject tags) {
+        metrics.add(new OpenTsDbMetric(name, value, now, tags));
+    }
+
+    private static void addPercentiles(List<OpenTsDbMetric> metrics, String name, LatencyHistogram histogram,
+                                       long now, JsonObject tags) {
+        if (histogram.getCount() == 0) { return; }
+
+        for (double percentile : BosunAggregator.DEFAULT_PERCENTILES) {
+            metrics.add(new OpenTsDbMetric(name, histogram.getValueAtPercentile(percentile), now,
+                    tags.copy().put(BosunAggregator.QUANTILE_TAG, BosunAggregator.getPercentileName(percentile))));
+        }
+    }
+
+    /**
+     * Stats for the requests going to one bosun host
+     */
+    public static class HostStats {
+        public final String host;
+        public final int port;
+        public final LongAdder inFlight = new LongAdder();
+
+        private final LatencyHistogram putLatency = new LatencyHistogram();
+        private final LatencyHistogram indexLatency = new LatencyHistogram();
+        private volatile LatencyHistogram lastPutLatency = new LatencyHistogram();
+        private volatile LatencyHistogram lastIndexLatency = new LatencyHistogram();
+
+        public HostStats(String host, int port) {
+            this.host = host;
+            this.port = port;
+        }
+
+        /**
+         * Record how long a request took
+         *
+         * @param api the api the request went to
+         * @param nanos how long it took
+         */
+        public void recordLatency(String api, long nanos) {
+            long micros = nanos / 1000;
+            if (BosunReporter.INDEX_API.equals(api)) {
+                indexLatency.record(micros);
+            } else {
+                putLatency.record(micros);
+            }
+        }
+
+        private void rotate() {
+            lastPutLatency = putLatency.snapshotAndReset();
+            lastIndexLatency = indexLatency.snapshotAndReset();
+        }
+    }
+}
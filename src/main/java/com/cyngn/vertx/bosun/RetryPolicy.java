@@ -0,0 +1,118 @@
+/*
+ * Copyright 2015 Cyanogen Inc.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.cyngn.vertx.bosun;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Decides whether a failed request to bosun is worth trying again and how long to wait first. Retries back off
+ * exponentially with jitter, and are paid for out of a budget that every new request adds a fraction of a retry
+ * to, so an outage can only add that fraction of extra traffic on top of what is already being sent.
+ *
+ * Instances are not thread safe, use one per event loop.
+ */
+public class RetryPolicy {
+
+    // there is always room for this many retries, so quiet reporters can still retry
+    public static final int MIN_BUDGET = 10;
+
+    private final int maxRetries;
+    private final long backoffMs;
+    private final long maxBackoffMs;
+    private final Set<Integer> retryStatuses;
+    private final double budgetRatio;
+    private final double maxBudget;
+    private double budget;
+
+    /**
+     * Constructor
+     *
+     * @param maxRetries how many times a request can be retried, 0 disables retries
+     * @param backoffMs the delay before the first retry, it doubles for every retry after that
+     * @param maxBackoffMs the longest delay between retries
+     * @param retryStatuses the HTTP status codes worth retrying, connection errors and timeouts always are
+     * @param budgetRatio how many retries each new request pays for, ie 0.1 for at most 10% extra traffic
+     */
+    public RetryPolicy(int maxRetries, long backoffMs, long maxBackoffMs, Collection<Integer> retryStatuses,
+                       double budgetRatio) {
+        if (backoffMs < 1) { throw new IllegalArgumentException("backoffMs must be positive"); }
+        if (budgetRatio < 0) { throw new IllegalArgumentException("budgetRatio can't be negative"); }
+
+        this.maxRetries = Math.max(0, maxRetries);
+        this.backoffMs = backoffMs;
+        this.maxBackoffMs = Math.max(backoffMs, maxBackoffMs);
+        this.retryStatuses = new HashSet<>(retryStatuses);
+        this.budgetRatio = budgetRatio;
+        // don't let a long quiet spell save up enough for a storm
+        this.maxBudget = MIN_BUDGET + budgetRatio * 1000;
+        this.budget = MIN_BUDGET;
+    }
+
+    /**
+     * A new request is going out, it adds its share to the retry budget
+     */
+    public void onRequest() {
+        budget = Math.min(maxBudget, budget + budgetRatio);
+    }
+
+    /**
+     * Is a failure the kind that is worth another go
+     *
+     * @param retries how many times the request has already been retried
+     * @param statusCode the HTTP status bosun replied with, or 0 if there was no response at all
+     * @return true if the request can be retried, as long as the budget allows
+     */
+    public boolean isRetryable(int retries, int statusCode) {
+        return retries < maxRetries && (statusCode == 0 || retryStatuses.contains(statusCode));
+    }
+
+    /**
+     * Take a retry out of the budget
+     *
+     * @return true if there was budget left for it
+     */
+    public boolean tryAcquire() {
+        if (budget < 1) { return false; }
+        budget--;
+        return true;
+    }
+
+    /**
+     * Get how long to wait before the next retry, somewhere between half and all of the exponential delay so
+     * requests that failed together don't all come back together
+     *
+     * @param retries how many times the request has already been retried
+     * @return the delay in ms, at least 1 as that is the shortest vert.x timer
+     */
+    public long getBackoffMs(int retries) {
+        long delay = backoffMs;
+        for (int i = 0; i < retries && delay < maxBackoffMs; i++) { delay *= 2; }
+        delay = Math.min(delay, maxBackoffMs);
+
+        long half = delay / 2;
+        return Math.max(1, half + ThreadLocalRandom.current().nextLong(delay - half + 1));
+    }
+
+    public int getMaxRetries() {
+        return maxRetries;
+    }
+
+    public double getBudget() {
+        return budget;
+    }
+}
@@ -0,0 +1,32 @@
+/*
+ * Copyright 2015 Cyanogen Inc.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.cyngn.vertx.bosun;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Hands out hosts in turn regardless of how they are doing.
+ */
+public class RoundRobinSelector implements HostSelector {
+
+    private final AtomicInteger next = new AtomicInteger(0);
+
+    @Override
+    public BosunHost select(List<BosunHost> hosts) {
+        // floorMod keeps us in range once the counter wraps around to negative
+        return hosts.get(Math.floorMod(next.getAndIncrement(), hosts.size()));
+    }
+}
@@ -0,0 +1,135 @@
+/*
+ * Copyright 2015 Cyanogen Inc.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.cyngn.vertx.bosun;
+
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Handler;
+import io.vertx.core.eventbus.Message;
+import io.vertx.core.json.JsonObject;
+import org.apache.commons.lang.StringUtils;
+
+import java.util.Map;
+
+/**
+ * A metric name and set of tags that get published over and over. Everything that only depends on the series is
+ * done once up front, the validation, the distinct key, the fingerprint vertx-bosun indexes it by and the JSON
+ * for the name and tags, so putting a value costs little more than the metric object carrying it.
+ *
+ * The precomputed parts only travel with the metric when the publisher uses the OpenTsDbMetricCodec and
+ * vertx-bosun is in the same vertx instance, otherwise puts go out the same as BosunPublisher.put.
+ *
+ * Get one from BosunPublisher.series, handles are immutable and can be shared between threads.
+ */
+public class SeriesHandle {
+
+    public final String metric;
+    final JsonObject tags;
+    final String distinctKey;
+    final long fingerprint;
+    final byte[] encodedName;
+    final byte[] encodedTags;
+    private final BosunPublisher publisher;
+
+    /**
+     * Constructor
+     *
+     * @param publisher the publisher values are put through
+     * @param metric the metric name
+     * @param tags the tags, copied so later changes to them don't affect the handle
+     * @throws IllegalArgumentException if the metric name is empty or there are no tags
+     */
+    SeriesHandle(BosunPublisher publisher, String metric, JsonObject tags) {
+        if(StringUtils.isEmpty(metric)) { throw new IllegalArgumentException("All metrics need a 'name' field"); }
+        OpenTsDbMetric.validateTags(tags);
+
+        this.publisher = publisher;
+        this.metric = metric.intern();
+
+        // lots of series share the same tag keys and values, keep one copy of each
+        this.tags = new JsonObject();
+        for (Map.Entry<String, Object> tag : tags.getMap().entrySet()) {
+            this.tags.put(tag.getKey().intern(), String.valueOf(tag.getValue()).intern());
+        }
+
+        distinctKey = OpenTsDbMetric.getDistinctKey(this.metric, this.tags);
+        fingerprint = SeriesKeyIndex.fingerprint(this.metric, this.tags);
+        encodedName = PutBodyWriter.encodeName(this.metric);
+        encodedTags = PutBodyWriter.encodeTags(this.tags);
+    }
+
+    /**
+     * Publish a value on the series, vertx-bosun doesn't reply and failures only show up in its stats
+     *
+     * @param value the value
+     * @param <T> the type of value int, double etc..
+     */
+    public <T> void put(T value) {
+        publisher.putSeries(this, value, publisher.now(), null);
+    }
+
+    /**
+     * Publish a value captured at a given time on the series, vertx-bosun doesn't reply and failures only show up
+     * in its stats
+     *
+     * @param value the value
+     * @param timestamp when the value was captured, in seconds or ms since the epoch
+     * @param <T> the type of value int, double etc..
+     */
+    public <T> void put(T value, long timestamp) {
+        publisher.putSeries(this, value, timestamp, null);
+    }
+
+    /**
+     * Publish a value on the series
+     *
+     * @param value the value
+     * @param onComplete a handler to receive the result of the call
+     * @param <T> the type of value int, double etc..
+     * @param <U> the type of object coming back in the response
+     */
+    public <T,U> void put(T value, Handler<AsyncResult<Message<U>>> onComplete) {
+        publisher.putSeries(this, value, publisher.now(), onComplete);
+    }
+
+    /**
+     * Publish a value captured at a given time on the series
+     *
+     * @param value the value
+     * @param timestamp when the value was captured, in seconds or ms since the epoch
+     * @param onComplete a handler to receive the result of the call
+     * @param <T> the type of value int, double etc..
+     * @param <U> the type of object coming back in the response
+     */
+    public <T,U> void put(T value, long timestamp, Handler<AsyncResult<Message<U>>> onComplete) {
+        publisher.putSeries(this, value, timestamp, onComplete);
+    }
+
+    /**
+     * Get the tags on the series
+     *
+     * @return a copy of the tags
+     */
+    public JsonObject getTags() {
+        return tags.copy();
+    }
+
+    public String getDistinctKey() {
+        return distinctKey;
+    }
+
+    public long getFingerprint() {
+        return fingerprint;
+    }
+}
@@ -0,0 +1,242 @@
+/*
+ * Copyright 2015 Cyanogen Inc.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.cyngn.vertx.bosun;
+
+import io.vertx.core.json.JsonObject;
+
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Remembers which series have been indexed lately by 64 bit fingerprints of their metric name and tags.
+ *
+ * Fingerprints and expiry times live in two primitive arrays sized up front, a million series takes 24MB
+ * and nothing is allocated after that. A series lives within a short run of slots from where its fingerprint
+ * hashes to, when that run is full the entry closest to expiring is overwritten. That only costs an extra call to
+ * the index api, same as falling out of an LRU cache would.
+ *
+ * Series added together would all expire together and come back to the index api in one burst, so two things spread
+ * them out. Each entry's lifetime is cut short by a random amount up to the jitter, and each entry gets a point in the
+ * refresh ahead window at the end of its life, spread evenly across the window, from which it is re-indexed early. An
+ * active series still gets re-indexed once per lifetime, just at a random point instead of all at the same one, and
+ * how often it is seen doesn't change when. The point comes from hashing the fingerprint with the expiry, which is
+ * picked each time the entry is added, so it needs no room of its own.
+ *
+ * Instances are not thread safe.
+ */
+public class SeriesKeyIndex {
+
+    // how far from its home slot a fingerprint can be placed
+    private static final int MAX_PROBES = 8;
+    private static final int MAX_ENTRIES = 1 << 28;
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+    private static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
+
+    private final long[] fingerprints;
+    // seconds after baseTime the entry expires at, to keep the array to 4 bytes a slot
+    private final int[] expiries;
+    private final int mask;
+    private final long expiryMs;
+    private final long jitterMs;
+    private final int refreshWindowSeconds;
+    private final long baseTime;
+    private int size;
+    private long refreshes;
+
+    /**
+     * @param maxEntries the number of series to size the index for
+     * @param expiryMs how long a series is remembered after being added
+     */
+    public SeriesKeyIndex(int maxEntries, long expiryMs) {
+        this(maxEntries, expiryMs, 0, 0);
+    }
+
+    /**
+     * @param maxEntries the number of series to size the index for
+     * @param expiryMs the longest a series is remembered after being added
+     * @param jitter the most each entry's lifetime is randomly cut short by, as a fraction of expiryMs
+     * @param refreshAhead the end part of an entry's lifetime it can be re-indexed early in, as a fraction of expiryMs
+     */
+    public SeriesKeyIndex(int maxEntries, long expiryMs, double jitter, double refreshAhead) {
+        if (maxEntries < 1 || maxEntries > MAX_ENTRIES) {
+            throw new IllegalArgumentException("maxEntries must be between 1 and " + MAX_ENTRIES);
+        }
+        if (expiryMs < 1) { throw new IllegalArgumentException("expiryMs must be positive"); }
+        if (jitter < 0 || jitter >= 1) { throw new IllegalArgumentException("jitter must be at least 0 and below 1"); }
+        if (refreshAhead < 0 || refreshAhead >= 1) {
+            throw new IllegalArgumentException("refreshAhead must be at least 0 and below 1");
+        }
+
+        // keep the table at most half full so runs stay short
+        int capacity = Integer.highestOneBit(Math.max(maxEntries, MAX_PROBES) * 2 - 1) << 1;
+        fingerprints = new long[capacity];
+        expiries = new int[capacity];
+        mask = capacity - 1;
+        this.expiryMs = expiryMs;
+        jitterMs = (long) (expiryMs * jitter);
+        refreshWindowSeconds = (int) (expiryMs * refreshAhead / 1000);
+        baseTime = System.currentTimeMillis();
+    }
+
+    /**
+     * Add a series to the index
+     *
+     * @param fingerprint the series fingerprint, see {@link #fingerprint(String, JsonObject)}
+     * @param now the current time in ms
+     * @return true if the series is new, had expired or is due to be refreshed, false if it was already in the index
+     */
+    public boolean add(long fingerprint, long now) {
+        long key = fingerprint == 0 ? 1 : fingerprint;
+        int nowSeconds = toSeconds(now);
+        int home = (int) (key ^ (key >>> 32)) & mask;
+
+        int victim = -1;
+        for (int i = 0; i < MAX_PROBES; i++) {
+            int slot = (home + i) & mask;
+            long existing = fingerprints[slot];
+            if (existing == key) {
+                int remaining = expiries[slot] - nowSeconds;
+                if (remaining > 0) {
+                    if (!shouldRefresh(key, expiries[slot], remaining)) { return false; }
+                    refreshes++;
+                }
+                // seen before but expired or due a refresh, let it be indexed again
+                expiries[slot] = getExpiry(now);
+                return true;
+            }
+
+            if (existing == 0) {
+                // use the empty slot unless an expired one came before it
+                if (victim == -1 || expiries[victim] > nowSeconds) { victim = slot; }
+                // nothing gets placed past an empty slot
+                break;
+            }
+
+            // prefer an expired slot, otherwise whichever would expire first
+            if (victim == -1 || (fingerprints[victim] != 0 && expiries[slot] < expiries[victim])) { victim = slot; }
+        }
+
+        if (fingerprints[victim] == 0) { size++; }
+        fingerprints[victim] = key;
+        expiries[victim] = getExpiry(now);
+        return true;
+    }
+
+    private int getExpiry(long now) {
+        long jitter = jitterMs > 0 ? ThreadLocalRandom.current().nextLong(jitterMs + 1) : 0;
+        return toSeconds(now + expiryMs - jitter);
+    }
+
+    /**
+     * Has an entry reached its refresh point, somewhere between 1 and refreshWindowSeconds before it expires
+     *
+     * @param key the entry's fingerprint
+     * @param expiry the entry's expiry
+     * @param remaining the seconds left before the entry expires
+     */
+    private boolean shouldRefresh(long key, int expiry, int remaining) {
+        if (remaining > refreshWindowSeconds) { return false; }
+        long refreshPoint = Math.floorMod(combine(key, expiry), (long) refreshWindowSeconds) + 1;
+        return remaining <= refreshPoint;
+    }
+
+    /**
+     * Is the series in the index and not expired
+     *
+     * @param fingerprint the series fingerprint
+     * @param now the current time in ms
+     * @return true if the series was added lately
+     */
+    public boolean contains(long fingerprint, long now) {
+        long key = fingerprint == 0 ? 1 : fingerprint;
+        int home = (int) (key ^ (key >>> 32)) & mask;
+        for (int i = 0; i < MAX_PROBES; i++) {
+            int slot = (home + i) & mask;
+            long existing = fingerprints[slot];
+            if (existing == key) { return expiries[slot] > toSeconds(now); }
+            if (existing == 0) { break; }
+        }
+        return false;
+    }
+
+    /**
+     * @return the number of slots holding a series, including ones that have expired but not yet been replaced
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return the number of series that have been re-indexed before they expired
+     */
+    public long getRefreshes() {
+        return refreshes;
+    }
+
+    private int toSeconds(long time) {
+        long seconds = (time - baseTime) / 1000;
+        return (int) Math.max(Integer.MIN_VALUE, Math.min(Integer.MAX_VALUE, seconds));
+    }
+
+    /**
+     * Get a 64 bit fingerprint of a series without building its distinct key, the order of the tags doesn't matter.
+     *
+     * @param metric the metric name
+     * @param tags the tags associated to the metric
+     * @return the fingerprint
+     */
+    public static long fingerprint(String metric, JsonObject tags) {
+        // summing the tag hashes makes the result independent of the order the tags come in
+        long tagSum = 0;
+        for (Map.Entry<String, Object> tag : tags.getMap().entrySet()) {
+            Object value = tag.getValue();
+            long valueHash = value instanceof String ? hash((String) value) : hash(String.valueOf(value));
+            tagSum += mix(hash(tag.getKey()) * GOLDEN_GAMMA + valueHash);
+        }
+        return mix(hash(metric) * GOLDEN_GAMMA + tagSum);
+    }
+
+    /**
+     * Combine two hashes into one, the order matters
+     */
+    static long combine(long first, long second) {
+        return mix(first * GOLDEN_GAMMA + second);
+    }
+
+    /**
+     * FNV-1a over the chars of a string
+     */
+    static long hash(String value) {
+        long hash = FNV_OFFSET;
+        for (int i = 0; i < value.length(); i++) {
+            hash ^= value.charAt(i);
+            hash *= FNV_PRIME;
+        }
+        return mix(hash);
+    }
+
+    /**
+     * The murmur3 64 bit finalizer, spreads every input bit across the output
+     */
+    private static long mix(long value) {
+        value ^= value >>> 33;
+        value *= 0xff51afd7ed558ccdL;
+        value ^= value >>> 33;
+        value *= 0xc4ceb9fe1a85ec53L;
+        value ^= value >>> 33;
+        return value;
+    }
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright 2015 Cyanogen Inc.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.cyngn.vertx.bosun;
+
+import io.vertx.core.Vertx;
+import io.vertx.core.shareddata.LocalMap;
+import io.vertx.core.shareddata.Shareable;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * State every BosunReporter instance listening on the same address shares, so deploying with more than one
+ * instance spreads the work across event loops without splitting the index cache or each instance deciding on its
+ * own whether a host is healthy. Kept in a vert.x local map so it is scoped to the Vertx it was created in.
+ *
+ * Http clients stay with each instance as they are bound to its event loop.
+ */
+public class SharedReporterState implements Shareable {
+
+    private static final String MAP_NAME = "vertx-bosun.shared-state";
+    private static final long DEFAULT_STATS_INTERVAL_MS = 60000;
+
+    public final StripedSeriesKeyIndex indexedSeries;
+    // null when there is no spool configured
+    public final MetricSpool spool;
+    public final ReporterStats stats;
+    // null when there is no cardinality limit configured
+    public final CardinalityLimiter cardinalityLimiter;
+    // only one instance replays the spool at a time
+    public final AtomicBoolean replaying = new AtomicBoolean(false);
+
+    private final ConcurrentMap<String, CircuitBreaker> breakers = new ConcurrentHashMap<>();
+    private int references;
+
+    public SharedReporterState(StripedSeriesKeyIndex indexedSeries, MetricSpool spool) {
+        this(indexedSeries, spool, new ReporterStats(DEFAULT_STATS_INTERVAL_MS));
+    }
+
+    public SharedReporterState(StripedSeriesKeyIndex indexedSeries, MetricSpool spool, ReporterStats stats) {
+        this(indexedSeries, spool, stats, null);
+    }
+
+    public SharedReporterState(StripedSeriesKeyIndex indexedSeries, MetricSpool spool, ReporterStats stats,
+                               CardinalityLimiter cardinalityLimiter) {
+        this.indexedSeries = indexedSeries;
+        this.spool = spool;
+        this.stats = stats;
+        this.cardinalityLimiter = cardinalityLimiter;
+    }
+
+    /**
+     * Get the circuit breaker for a host, all instances get the same one
+     *
+     * @param host the bosun host name
+     * @param port the bosun port
+     * @param failureThreshold used if the breaker gets created
+     * @param backoffMs used if the breaker gets created
+     * @param maxBackoffMs used if the breaker gets created
+     * @return the breaker for the host
+     */
+    public CircuitBreaker getBreaker(String host, int port, int failureThreshold, int backoffMs, int maxBackoffMs) {
+        return breakers.computeIfAbsent(host + ":" + port,
+                key -> new CircuitBreaker(failureThreshold, backoffMs, maxBackoffMs));
+    }
+
+    /**
+     * Get the state for an address, creating it if this is the first instance to ask
+     *
+     * @param vertx the vertx instance the reporters run in
+     * @param address the address the reporters listen on
+     * @param factory creates the state, only called for the first instance
+     * @return the shared state
+     * @throws Exception if the state had to be created and that failed
+     */
+    public static SharedReporterState acquire(Vertx vertx, String address, Callable<SharedReporterState> factory)
+            throws Exception {
+        LocalMap<String, SharedReporterState> states = vertx.sharedData().getLocalMap(MAP_NAME);
+        synchronized (SharedReporterState.class) {
+            SharedReporterState state = states.get(address);
+            if (state == null) {
+                state = factory.call();
+                states.put(address, state);
+            }
+            state.references++;
+            return state;
+        }
+    }
+
+    /**
+     * Let go of the state for an address once an instance stops
+     *
+     * @param vertx the vertx instance the reporters run in
+     * @param address the address the reporters listen on
+     * @return true if this was the last instance using the state, which should now clean it up
+     */
+    public static boolean release(Vertx vertx, String address) {
+        LocalMap<String, SharedReporterState> states = vertx.sharedData().getLocalMap(MAP_NAME);
+        synchronized (SharedReporterState.class) {
+            SharedReporterState state = states.get(address);
+            if (state == null) { return false; }
+
+            state.references--;
+            if (state.references > 0) { return false; }
+            states.remove(address);
+            return true;
+        }
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright 2015 Cyanogen Inc.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.cyngn.vertx.bosun;
+
+/**
+ * A thread safe SeriesKeyIndex for reporter instances on different event loops to share. The index is split into
+ * stripes by the top bits of the fingerprint, each with its own lock, so instances rarely wait on each other.
+ */
+public class StripedSeriesKeyIndex {
+
+    private static final int DEFAULT_STRIPES = 16;
+
+    private final SeriesKeyIndex[] stripes;
+    private final int shift;
+
+    /**
+     * @param maxEntries the number of series to size the index for across all stripes
+     * @param expiryMs the longest a series is remembered after being added
+     * @param jitter the most each entry's lifetime is randomly cut short by, as a fraction of expiryMs
+     * @param refreshAhead the end part of an entry's lifetime it can be re-indexed early in, as a fraction of expiryMs
+     */
+    public StripedSeriesKeyIndex(int maxEntries, long expiryMs, double jitter, double refreshAhead) {
+        this(maxEntries, expiryMs, jitter, refreshAhead, DEFAULT_STRIPES);
+    }
+
+    /**
+     * @param stripeCount the number of independently locked stripes, rounded up to a power of two
+     */
+    public StripedSeriesKeyIndex(int maxEntries, long expiryMs, double jitter, double refreshAhead, int stripeCount) {
+        if (stripeCount < 1) { throw new IllegalArgumentException("stripeCount must be positive"); }
+
+        int count = Integer.highestOneBit(stripeCount * 2 - 1);
+        stripes = new SeriesKeyIndex[count];
+        int perStripe = Math.max(1, (maxEntries + count - 1) / count);
+        for (int i = 0; i < count; i++) {
+            stripes[i] = new SeriesKeyIndex(perStripe, expiryMs, jitter, refreshAhead);
+        }
+        // a single stripe gets a shift of 64, which java treats as 0, so guard it
+        shift = 64 - Integer.numberOfTrailingZeros(count);
+    }
+
+    /**
+     * Add a series to the index
+     *
+     * @param fingerprint the series fingerprint, see {@link SeriesKeyIndex#fingerprint}
+     * @param now the current time in ms
+     * @return true if the series is new, had expired or is due to be refreshed, false if it was already in the index
+     */
+    public boolean add(long fingerprint, long now) {
+        SeriesKeyIndex stripe = getStripe(fingerprint);
+        synchronized (stripe) {
+            return stripe.add(fingerprint, now);
+        }
+    }
+
+    /**
+     * Is the series in the index and not expired
+     *
+     * @param fingerprint the series fingerprint
+     * @param now the current time in ms
+     * @return true if the series was added lately
+     */
+    public boolean contains(long fingerprint, long now) {
+        SeriesKeyIndex stripe = getStripe(fingerprint);
+        synchronized (stripe) {
+            return stripe.contains(fingerprint, now);
+        }
+    }
+
+    /**
+     * @return the number of slots holding a series across all stripes
+     */
+    public int size() {
+        int size = 0;
+        for (SeriesKeyIndex stripe : stripes) {
+            synchronized (stripe) { size += stripe.size(); }
+        }
+        return size;
+    }
+
+    /**
+     * @return the number of series that have been re-indexed before they expired across all stripes
+     */
+    public long getRefreshes() {
+        long refreshes = 0;
+        for (SeriesKeyIndex stripe : stripes) {
+            synchronized (stripe) { refreshes += stripe.getRefreshes(); }
+        }
+        return refreshes;
+    }
+
+    private SeriesKeyIndex getStripe(long fingerprint) {
+        return stripes.length == 1 ? stripes[0] : stripes[(int) (fingerprint >>> shift)];
+    }
+}
@@ -0,0 +1,215 @@
+/*
+ * Copyright 2015 Cyanogen Inc.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.cyngn.vertx.bosun;
+
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.logging.Logger;
+import io.vertx.core.logging.LoggerFactory;
+import io.vertx.core.net.NetClient;
+import io.vertx.core.net.NetSocket;
+import io.vertx.core.parsetools.RecordParser;
+
+/**
+ * A persistent connection to an OpenTsDb telnet style port that put lines are pipelined down. OpenTsDb doesn't
+ * answer puts, only errors come back and those get logged. When the connection drops it is opened again after a
+ * backoff that doubles on every failed attempt.
+ *
+ * All calls have to come from the event loop that created the NetClient.
+ */
+public class TelnetConnection {
+
+    private static final Logger logger = LoggerFactory.getLogger(TelnetConnection.class);
+    private static final int DEFAULT_WRITE_QUEUE_MAX_SIZE = 64 * 1024;
+
+    public final String host;
+    public final int port;
+
+    private final Vertx vertx;
+    private final NetClient client;
+    private final int writeQueueMaxSize;
+    private final long minReconnectMs;
+    private final long maxReconnectMs;
+
+    private NetSocket socket;
+    private boolean connecting;
+    private boolean closed;
+    private long reconnectMs;
+    private long reconnectTimerId = -1;
+    private long errorLines;
+    private Handler<Void> connectHandler;
+    private Handler<Void> drainHandler;
+    private Handler<Throwable> failureHandler;
+
+    /**
+     * Constructor, call connect() to open the connection
+     *
+     * @param vertx the vertx instance to schedule reconnects on
+     * @param client the client to connect with
+     * @param host the OpenTsDb host
+     * @param port the OpenTsDb telnet port
+     * @param writeQueueMaxSize how many bytes can be waiting to go out before the connection stops taking writes
+     * @param minReconnectMs the delay before the first reconnect attempt
+     * @param maxReconnectMs the longest delay between reconnect attempts
+     */
+    public TelnetConnection(Vertx vertx, NetClient client, String host, int port, int writeQueueMaxSize,
+                            long minReconnectMs, long maxReconnectMs) {
+        this.vertx = vertx;
+        this.client = client;
+        this.host = host;
+        this.port = port;
+        this.writeQueueMaxSize = writeQueueMaxSize;
+        this.minReconnectMs = minReconnectMs;
+        this.maxReconnectMs = Math.max(minReconnectMs, maxReconnectMs);
+        this.reconnectMs = minReconnectMs;
+    }
+
+    /**
+     * @param handler told whenever the connection is opened
+     */
+    public TelnetConnection connectHandler(Handler<Void> handler) {
+        connectHandler = handler;
+        return this;
+    }
+
+    /**
+     * @param handler told when a full write queue has room again
+     */
+    public TelnetConnection drainHandler(Handler<Void> handler) {
+        drainHandler = handler;
+        return this;
+    }
+
+    /**
+     * @param handler told when connecting fails or an open connection fails
+     */
+    public TelnetConnection failureHandler(Handler<Throwable> handler) {
+        failureHandler = handler;
+        return this;
+    }
+
+    /**
+     * Open the connection if it isn't open or being opened already
+     */
+    public void connect() {
+        if (closed || connecting || socket != null) { return; }
+
+        connecting = true;
+        client.connect(port, host, result -> {
+            connecting = false;
+            if (result.failed()) {
+                onFailure(result.cause());
+                return;
+            }
+
+            NetSocket opened = result.result();
+            if (closed) {
+                opened.close();
+                return;
+            }
+
+            socket = opened;
+            reconnectMs = minReconnectMs;
+            setWriteQueueMaxSize(socket, writeQueueMaxSize);
+            socket.handler(RecordParser.newDelimited("\n", line -> {
+                errorLines++;
+                logger.warn("OpenTsDb " + this + " reported: " + line.toString().trim());
+            }));
+            socket.drainHandler(v -> {
+                if (drainHandler != null) { drainHandler.handle(null); }
+            });
+            socket.exceptionHandler(error -> logger.warn("Error on connection to OpenTsDb " + this, error));
+            socket.closeHandler(v -> {
+                if (socket != opened) { return; }
+                socket = null;
+                if (!closed) { onFailure(new IllegalStateException("connection to OpenTsDb " + this + " closed")); }
+            });
+
+            logger.info("Connected to OpenTsDb " + this);
+            if (connectHandler != null) { connectHandler.handle(null); }
+        });
+    }
+
+    private static void setWriteQueueMaxSize(NetSocket socket, int size) {
+        // vert.x moves the low water mark first and netty won't let it go past the current high one, so grow the
+        // queue in steps from netty's 64KB default
+        for (int step = DEFAULT_WRITE_QUEUE_MAX_SIZE; step < size; step *= 2) { socket.setWriteQueueMaxSize(step); }
+        socket.setWriteQueueMaxSize(size);
+    }
+
+    private void onFailure(Throwable error) {
+        if (failureHandler != null) { failureHandler.handle(error); }
+        if (closed) { return; }
+
+        logger.warn(String.format("Connection to OpenTsDb %s failed, trying again in %d ms: %s", this, reconnectMs,
+                error.getMessage()));
+        reconnectTimerId = vertx.setTimer(reconnectMs, id -> {
+            reconnectTimerId = -1;
+            connect();
+        });
+        reconnectMs = Math.min(reconnectMs * 2, maxReconnectMs);
+    }
+
+    /**
+     * @return true if the connection is open and has room in its write queue
+     */
+    public boolean isWritable() {
+        return socket != null && !socket.writeQueueFull();
+    }
+
+    public boolean isConnected() {
+        return socket != null;
+    }
+
+    /**
+     * Queue data to go out on the connection
+     *
+     * @param data the put lines to send
+     * @return false if the connection isn't open
+     */
+    public boolean write(Buffer data) {
+        if (socket == null) { return false; }
+        socket.write(data);
+        return true;
+    }
+
+    /**
+     * How many error lines OpenTsDb has sent back
+     */
+    public long getErrorLines() {
+        return errorLines;
+    }
+
+    /**
+     * Close the connection for good, it isn't reopened after this
+     */
+    public void close() {
+        closed = true;
+        if (reconnectTimerId != -1) {
+            vertx.cancelTimer(reconnectTimerId);
+            reconnectTimerId = -1;
+        }
+        if (socket != null) {
+            socket.close();
+            socket = null;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return host + ":" + port;
+    }
+}
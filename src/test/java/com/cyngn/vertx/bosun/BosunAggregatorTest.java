@@ -0,0 +1,214 @@
+/*
+ * Copyright 2015 Cyanogen Inc.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.cyngn.vertx.bosun;
+
+import io.vertx.core.json.JsonObject;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertTrue;
+
+public class BosunAggregatorTest {
+
+    private Map<String, Object> published;
+    private BosunAggregator aggregator;
+
+    @Before
+    public void before() {
+        published = new HashMap<>();
+        BosunPublisher publisher = new BosunPublisher("test", null) {
+            @Override
+            public <T> void put(String metric, T value, long timestamp, JsonObject tags) {
+                published.put(OpenTsDbMetric.getDistinctKey(metric, tags), value);
+            }
+        };
+        aggregator = new BosunAggregator(null, publisher, 1000);
+    }
+
+    @Test
+    public void testCounter() {
+        JsonObject tags = new JsonObject().put("host", "a");
+        for (int i = 0; i < 10; i++) { aggregator.increment("requests", 2, tags); }
+        aggregator.increment("requests", 1, new JsonObject().put("host", "b"));
+
+        aggregator.flush();
+        assertEquals(2, published.size());
+        assertEquals(20L, published.get("requests::host:a"));
+        assertEquals(1L, published.get("requests::host:b"));
+
+        // idle series publish nothing
+        published.clear();
+        aggregator.flush();
+        assertTrue(published.isEmpty());
+    }
+
+    @Test
+    public void testGauge() {
+        JsonObject tags = new JsonObject().put("host", "a");
+        aggregator.gauge("queue.depth", 5, tags);
+        aggregator.gauge("queue.depth", 7, tags);
+
+        aggregator.flush();
+        assertEquals(7.0, published.get("queue.depth::host:a"));
+    }
+
+    @Test
+    public void testTimer() {
+        JsonObject tags = new JsonObject().put("host", "a");
+        for (int i = 1; i <= 100; i++) { aggregator.time("latency", i, tags); }
+
+        aggregator.flush();
+        assertEquals(100L, published.get("latency.count::host:a"));
+        assertEquals(1.0, published.get("latency.min::host:a"));
+        assertEquals(100.0, published.get("latency.max::host:a"));
+        assertEquals(50.5, published.get("latency.mean::host:a"));
+        assertEquals(50.0, (double) published.get("latency.p50::host:a"), 1.0);
+        assertEquals(99.0, (double) published.get("latency.p99::host:a"), 1.0);
+        assertEquals(100.0, published.get("latency.p999::host:a"));
+    }
+
+    @Test
+    public void testFlushUsesPublisherClock() {
+        AtomicLong timestamp = new AtomicLong();
+        BosunPublisher publisher = new BosunPublisher("test", null, false, () -> 1437523200000L) {
+            @Override
+            public <T> void put(String metric, T value, long time, JsonObject tags) {
+                timestamp.set(time);
+            }
+        };
+        BosunAggregator clocked = new BosunAggregator(null, publisher, 1000);
+        clocked.increment("requests", 1, new JsonObject().put("host", "a"));
+
+        clocked.flush();
+        assertEquals(1437523200000L, timestamp.get());
+    }
+
+    @Test
+    public void testHistogram() {
+        JsonObject tags = new JsonObject().put("host", "a");
+        for (int i = 1; i <= 1000; i++) { aggregator.histogram("latency", i, tags); }
+
+        // another instance's histogram merges into the same series
+        LatencyHistogram other = new LatencyHistogram();
+        for (int i = 1001; i <= 2000; i++) { other.record(i); }
+        aggregator.histogram("latency", other, tags);
+
+        aggregator.flush();
+        assertEquals(4, published.size());
+        assertEquals(1000, (long) published.get("latency::host:a::quantile:p50"), 16);
+        assertEquals(1800, (long) published.get("latency::host:a::quantile:p90"), 32);
+        assertEquals(1980, (long) published.get("latency::host:a::quantile:p99"), 32);
+        assertEquals(1998, (long) published.get("latency::host:a::quantile:p999"), 32);
+    }
+
+    @Test
+    public void testConcurrentEviction() throws Exception {
+        AtomicLong total = new AtomicLong();
+        BosunPublisher publisher = new BosunPublisher("test", null) {
+            @Override
+            public <T> void put(String metric, T value, long timestamp, JsonObject tags) {
+                total.addAndGet(((Number) value).longValue());
+            }
+        };
+        BosunAggregator aggregator = new BosunAggregator(null, publisher, 1000);
+
+        // lots of series each seeing the odd update, so flushing all the time keeps finding idle ones to drop
+        JsonObject[] tags = new JsonObject[50];
+        for (int i = 0; i < tags.length; i++) { tags[i] = new JsonObject().put("host", "host" + i); }
+
+        AtomicBoolean done = new AtomicBoolean();
+        Thread flusher = new Thread(() -> {
+            while (!done.get()) { aggregator.flush(); }
+        });
+        flusher.start();
+
+        int perWriter = 200000;
+        List<Thread> writers = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            Thread writer = new Thread(() -> {
+                for (int j = 0; j < perWriter; j++) {
+                    aggregator.increment("requests", 1, tags[ThreadLocalRandom.current().nextInt(tags.length)]);
+                }
+            });
+            writers.add(writer);
+            writer.start();
+        }
+        for (Thread writer : writers) { writer.join(); }
+
+        done.set(true);
+        flusher.join();
+        aggregator.flush();
+        assertEquals(writers.size() * perWriter, total.get());
+    }
+
+    @Test
+    public void testConcurrentTimerFlushes() throws Exception {
+        AtomicLong count = new AtomicLong();
+        AtomicBoolean inconsistent = new AtomicBoolean();
+        BosunPublisher publisher = new BosunPublisher("test", null) {
+            @Override
+            public <T> void put(String metric, T value, long timestamp, JsonObject tags) {
+                double current = ((Number) value).doubleValue();
+                if (metric.endsWith(".count")) { count.addAndGet((long) current); }
+                // every value is 1, anything else means a flush mixed values from two intervals
+                if (!metric.endsWith(".count") && current != 1.0) { inconsistent.set(true); }
+            }
+        };
+        BosunAggregator aggregator = new BosunAggregator(null, publisher, 1000);
+        JsonObject tags = new JsonObject().put("host", "server1");
+
+        AtomicBoolean done = new AtomicBoolean();
+        Thread flusher = new Thread(() -> {
+            while (!done.get()) { aggregator.flush(); }
+        });
+        flusher.start();
+
+        int perWriter = 200000;
+        List<Thread> writers = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            Thread writer = new Thread(() -> {
+                for (int j = 0; j < perWriter; j++) {
+                    aggregator.time("latency", 1.0, tags);
+                }
+            });
+            writers.add(writer);
+            writer.start();
+        }
+        for (Thread writer : writers) { writer.join(); }
+
+        done.set(true);
+        flusher.join();
+        aggregator.flush();
+        assertEquals(writers.size() * perWriter, count.get());
+        assertFalse(inconsistent.get());
+    }
+
+    @Test
+    public void testPercentileSuffix() {
+        assertEquals(".p50", BosunAggregator.getPercentileSuffix(0.5));
+        assertEquals(".p99", BosunAggregator.getPercentileSuffix(0.99));
+        assertEquals(".p999", BosunAggregator.getPercentileSuffix(0.999));
+    }
+}
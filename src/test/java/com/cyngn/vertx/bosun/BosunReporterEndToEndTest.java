@@ -0,0 +1,319 @@
+/*
+ * Copyright 2015 Cyanogen Inc.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.cyngn.vertx.bosun;
+
+import io.vertx.core.AsyncResult;
+import io.vertx.core.DeploymentOptions;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.core.eventbus.Message;
+import io.vertx.core.eventbus.ReplyException;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.parsetools.RecordParser;
+import io.vertx.ext.unit.Async;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs the reporter against a FakeBosun over real http.
+ */
+@RunWith(VertxUnitRunner.class)
+public class BosunReporterEndToEndTest {
+
+    private static final String TOPIC = "test-bosun-end-to-end";
+    private static final int FAKE_PORT = 8072;
+    private static final int TELNET_PORT = 8073;
+    private static final int INGEST_PORT = 8074;
+    private static final int[] ROUTED_PORTS = {8075, 8076, 8077};
+
+    private Vertx vertx;
+    private FakeBosun bosun;
+    private BosunPublisher publisher;
+
+    @Before
+    public void before(TestContext context) {
+        vertx = Vertx.vertx();
+        bosun = new FakeBosun();
+        publisher = new BosunPublisher(TOPIC, vertx.eventBus());
+
+        JsonObject config = new JsonObject().put("address", TOPIC)
+                .put("hosts", new JsonArray().add(new JsonObject().put("host", "localhost").put("port", FAKE_PORT)))
+                .put("max_batch_size", 10).put("max_batch_delay_ms", 10).put("retry_backoff_ms", 1)
+                .put("retry_max_backoff_ms", 1).put("circuit_failure_threshold", 0);
+
+        Async async = context.async();
+        vertx.deployVerticle(bosun, new DeploymentOptions().setConfig(new JsonObject().put("port", FAKE_PORT)),
+                context.asyncAssertSuccess(fake -> vertx.deployVerticle(BosunReporter.class.getName(),
+                        new DeploymentOptions().setConfig(config), context.asyncAssertSuccess(id -> async.complete()))));
+    }
+
+    @After
+    public void after(TestContext context) {
+        vertx.close(context.asyncAssertSuccess());
+    }
+
+    @Test
+    public void testPutAndIndex(TestContext context) {
+        Async async = context.async();
+        JsonObject tags = new JsonObject().put("host", "my.host.com");
+        AtomicInteger replies = new AtomicInteger();
+        Handler<AsyncResult<Message<JsonObject>>> handler = result -> {
+            context.assertTrue(result.succeeded());
+            if (replies.incrementAndGet() < 102) { return; }
+
+            context.assertEquals(100L, bosun.datapointsPut.get());
+            // the second index call for the series never makes it to bosun
+            context.assertEquals(1L, bosun.datapointsIndexed.get());
+            context.assertEquals(0L, bosun.rejected.get());
+            async.complete();
+        };
+
+        for (int i = 0; i < 100; i++) { publisher.put("test.metric", i, tags, handler); }
+        publisher.<Integer, JsonObject>index("test.metric", 1, tags, result -> {
+            handler.handle(result);
+            publisher.index("test.metric", 2, tags, handler);
+        });
+    }
+
+    @Test
+    public void testErrorsAreRetried(TestContext context) {
+        Async async = context.async();
+        JsonObject tags = new JsonObject().put("host", "my.host.com");
+        bosun.setErrorRate(1);
+
+        publisher.put("test.metric", 1, tags, result -> {
+            context.assertTrue(result.failed());
+            context.assertEquals(503, ((ReplyException) result.cause()).failureCode());
+            // the first attempt and two retries
+            context.assertEquals(3L, bosun.errors.get());
+
+            bosun.setErrorRate(0);
+            publisher.put("test.metric", 2, tags, context.asyncAssertSuccess(reply -> {
+                context.assertEquals(1L, bosun.datapointsPut.get());
+                async.complete();
+            }));
+        });
+    }
+
+    @Test
+    public void testDroppedConnections(TestContext context) {
+        Async async = context.async();
+        JsonObject tags = new JsonObject().put("host", "my.host.com");
+        bosun.setDropRate(1);
+
+        publisher.put("test.metric", 1, tags, result -> {
+            context.assertTrue(result.failed());
+            context.assertEquals(3L, bosun.drops.get());
+
+            bosun.setDropRate(0);
+            publisher.put("test.metric", 2, tags, context.asyncAssertSuccess(reply -> {
+                context.assertEquals(1L, bosun.datapointsPut.get());
+                async.complete();
+            }));
+        });
+    }
+
+    @Test
+    public void testStopWaitsForInFlightRequestsWithoutRetrying(TestContext context) {
+        Async replied = context.async();
+        Async undeployed = context.async();
+        String address = TOPIC + "-stopping";
+        JsonObject config = new JsonObject().put("address", address)
+                .put("hosts", new JsonArray().add(new JsonObject().put("host", "localhost").put("port", FAKE_PORT)))
+                .put("retry_backoff_ms", 1).put("retry_max_backoff_ms", 1).put("circuit_failure_threshold", 0);
+        bosun.setErrorRate(1);
+        bosun.setLatencyMs(200);
+
+        vertx.deployVerticle(BosunReporter.class.getName(), new DeploymentOptions().setConfig(config),
+                context.asyncAssertSuccess(id -> {
+            new BosunPublisher(address, vertx.eventBus()).put("test.metric", 1,
+                    new JsonObject().put("host", "my.host.com"), result -> {
+                context.assertTrue(result.failed());
+                context.assertEquals(503, ((ReplyException) result.cause()).failureCode());
+                replied.complete();
+            });
+
+            // stop while the first attempt is still waiting on bosun
+            vertx.setTimer(100, timerId -> vertx.undeploy(id, context.asyncAssertSuccess(done -> {
+                context.assertEquals(1L, bosun.errors.get());
+                // nothing was left to retry on a closed connection
+                vertx.setTimer(100, checkId -> {
+                    context.assertEquals(1L, bosun.requests.get());
+                    undeployed.complete();
+                });
+            })));
+        }));
+    }
+
+    @Test
+    public void testTelnetRejectsInvalidCharacters(TestContext context) {
+        Async async = context.async();
+        List<String> lines = new CopyOnWriteArrayList<>();
+        String address = TOPIC + "-telnet";
+        JsonObject config = new JsonObject().put("address", address)
+                .put("hosts", new JsonArray().add(new JsonObject().put("host", "localhost").put("port", TELNET_PORT)
+                        .put("protocol", "telnet")))
+                .put("max_batch_size", 10).put("max_batch_delay_ms", 10);
+
+        vertx.createNetServer().connectHandler(socket ->
+                socket.handler(RecordParser.newDelimited("\n", line -> lines.add(line.toString())))
+        ).listen(TELNET_PORT, context.asyncAssertSuccess(server ->
+            vertx.deployVerticle(BosunReporter.class.getName(), new DeploymentOptions().setConfig(config),
+                    context.asyncAssertSuccess(id -> {
+                BosunPublisher telnet = new BosunPublisher(address, vertx.eventBus());
+                AtomicInteger replies = new AtomicInteger();
+                Handler<AsyncResult<Message<JsonObject>>> handler = result -> {
+                    if (replies.incrementAndGet() < 3) { return; }
+                    // give the good line time to arrive
+                    vertx.setTimer(100, timerId -> {
+                        context.assertEquals(1, lines.size());
+                        context.assertEquals("put test.metric 1437523200123 1 host=my.host.com", lines.get(0));
+                        async.complete();
+                    });
+                };
+
+                long time = 1437523200123L;
+                telnet.put("test.metric", 1, time, new JsonObject().put("host", "my.host.com"), handler);
+                telnet.<Integer, JsonObject>put("test.metric", 2, time, new JsonObject().put("host", "my host"),
+                        result -> {
+                    context.assertTrue(result.failed());
+                    handler.handle(result);
+                });
+                JsonObject injected = new JsonObject().put("host", "a\nput evil.metric 1 1 host=a");
+                telnet.<Integer, JsonObject>put("test.metric", 3, time, injected, result -> {
+                    context.assertTrue(result.failed());
+                    handler.handle(result);
+                });
+            }))
+        ));
+    }
+
+    @Test
+    public void testFailedStartReleasesSharedState(TestContext context) throws IOException {
+        Async async = context.async();
+        String address = TOPIC + "-failed";
+        JsonObject config = new JsonObject().put("address", address)
+                .put("hosts", new JsonArray().add(new JsonObject().put("host", "localhost").put("port", FAKE_PORT)))
+                .put("ingest_port", INGEST_PORT);
+
+        // vert.x shares ports between its own servers, something outside it has to hold the port
+        ServerSocket taken = new ServerSocket(INGEST_PORT, 1, InetAddress.getByName("localhost"));
+        vertx.deployVerticle(BosunReporter.class.getName(), new DeploymentOptions().setConfig(config), result -> {
+            try {
+                taken.close();
+                context.assertTrue(result.failed());
+
+                // the failed instance was the only one on the address, so the next gets new state
+                AtomicInteger created = new AtomicInteger();
+                SharedReporterState.acquire(vertx, address, () -> {
+                    created.incrementAndGet();
+                    return new SharedReporterState(new StripedSeriesKeyIndex(100, 60000, 0, 0), null);
+                });
+                context.assertEquals(1, created.get());
+                SharedReporterState.release(vertx, address);
+                async.complete();
+            } catch (Exception ex) {
+                context.fail(ex);
+            }
+        });
+    }
+
+    @Test
+    public void testRoutedSeriesFailOverToTheirOwnSuccessor(TestContext context) {
+        Async async = context.async();
+        String address = TOPIC + "-routed";
+        int failingPort = ROUTED_PORTS[1];
+        Map<String, Integer> received = new ConcurrentHashMap<>();
+        JsonArray hosts = new JsonArray();
+        List<BosunHost> ring = new ArrayList<>();
+        for (int port : ROUTED_PORTS) {
+            hosts.add(new JsonObject().put("host", "localhost").put("port", port));
+            ring.add(new BosunHost("localhost", port, null, 1, new CircuitBreaker(0, 0, 0)));
+            vertx.createHttpServer().requestHandler(request -> request.bodyHandler(body -> {
+                if (port == failingPort) {
+                    request.response().setStatusCode(503).end();
+                    return;
+                }
+                // a batch of one is sent as a bare object
+                String json = body.toString();
+                JsonArray metrics = json.startsWith("[") ? new JsonArray(json)
+                        : new JsonArray().add(new JsonObject(json));
+                for (Object metric : metrics) {
+                    received.put(((JsonObject) metric).getJsonObject("tags").getString("series"), port);
+                }
+                request.response().setStatusCode(204).end();
+            })).listen(port);
+        }
+
+        JsonObject config = new JsonObject().put("address", address).put("hosts", hosts)
+                .put("host_selection", HostSelector.CONSISTENT_HASH).put("max_batch_size", 10)
+                .put("max_batch_delay_ms", 10).put("retry_backoff_ms", 1).put("retry_max_backoff_ms", 1)
+                .put("retry_budget_percent", 100).put("circuit_failure_threshold", 0);
+        ConsistentHashSelector selector = new ConsistentHashSelector();
+        selector.setHosts(ring);
+
+        vertx.deployVerticle(BosunReporter.class.getName(), new DeploymentOptions().setConfig(config),
+                context.asyncAssertSuccess(id -> {
+            BosunPublisher routed = new BosunPublisher(address, vertx.eventBus());
+            int seriesCount = 100;
+            AtomicInteger replies = new AtomicInteger();
+            for (int i = 0; i < seriesCount; i++) {
+                routed.put("test.metric", i, new JsonObject().put("series", "series" + i), context.asyncAssertSuccess(
+                        reply -> {
+                    if (replies.incrementAndGet() < seriesCount) { return; }
+
+                    context.assertEquals(seriesCount, received.size());
+                    for (Map.Entry<String, Integer> series : received.entrySet()) {
+                        long key = new OpenTsDbMetric("test.metric", 0, 0, new JsonObject()
+                                .put("series", series.getKey())).getFingerprint();
+                        // series owned by the failing host each move to the next host along the ring
+                        BosunHost owner = selector.getOwner(key, host -> host.port != failingPort);
+                        context.assertEquals(owner.port, series.getValue());
+                    }
+                    async.complete();
+                }));
+            }
+        }));
+    }
+
+    @Test
+    public void testLoadGenerator(TestContext context) {
+        Async async = context.async();
+        new LoadGenerator(vertx, publisher, 2000, 100).run(1000, report -> {
+            // how much gets sent depends on the machine, everything that was has to get through
+            context.assertTrue(report.sent > 0);
+            context.assertEquals(0L, report.failed);
+            context.assertEquals(report.sent, report.acked);
+            context.assertEquals(report.sent, bosun.datapointsPut.get());
+            context.assertEquals(report.sent, report.latencyUs.getCount());
+            async.complete();
+        });
+    }
+}
@@ -0,0 +1,139 @@
+/*
+ * Copyright 2015 Cyanogen Inc.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.cyngn.vertx.bosun;
+
+import io.vertx.core.AsyncResult;
+import io.vertx.core.DeploymentOptions;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.core.eventbus.Message;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.unit.Async;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Ignore;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Load tests against a local FakeBosun, how put throughput scales with the connection pool size and what the reporter
+ * sustains at increasing put rates.
+ */
+@Ignore("Load tests, comment out annotation to run the tests")
+@RunWith(VertxUnitRunner.class)
+public class BosunReporterLoadTest {
+
+    private static final String TOPIC = "test-bosun-load";
+    private static final int STUB_PORT = 8071;
+    private static final int STUB_LATENCY_MS = 5;
+    private static final int TOTAL_MESSAGES = 2000;
+    private static final int RUN_MS = 5000;
+    private static final int SERIES = 1000;
+
+    private Vertx vertx;
+
+    @Before
+    public void before(TestContext context) {
+        vertx = Vertx.vertx();
+
+        // pretend to be a bosun node that takes a little while to answer
+        JsonObject config = new JsonObject().put("port", STUB_PORT).put("latency_ms", STUB_LATENCY_MS);
+        vertx.deployVerticle(new FakeBosun(), new DeploymentOptions().setConfig(config), context.asyncAssertSuccess());
+    }
+
+    @After
+    public void after(TestContext context) {
+        vertx.close(context.asyncAssertSuccess());
+    }
+
+    @Test
+    public void testPoolScaling(TestContext context) {
+        Async async = context.async();
+        runNext(context, Arrays.asList(1, 2, 4, 8, 16, 32).iterator(), async);
+    }
+
+    @Test
+    public void testSustainedRate(TestContext context) {
+        Async async = context.async();
+        JsonObject config = new JsonObject()
+                .put("address", TOPIC)
+                .put("hosts", new JsonArray().add(new JsonObject().put("host", "localhost").put("port", STUB_PORT)))
+                .put("max_batch_size", 100)
+                .put("max_batch_delay_ms", 10)
+                .put("max_pool_size", 16);
+
+        vertx.deployVerticle(BosunReporter.class.getName(), new DeploymentOptions().setConfig(config),
+                context.asyncAssertSuccess(id -> runRates(context, Arrays.asList(1000, 5000, 20000, 50000).iterator(),
+                        new BosunPublisher(TOPIC, vertx.eventBus(), true), async)));
+    }
+
+    private void runRates(TestContext context, Iterator<Integer> rates, BosunPublisher publisher, Async async) {
+        if (!rates.hasNext()) {
+            async.complete();
+            return;
+        }
+
+        new LoadGenerator(vertx, publisher, rates.next(), SERIES).run(RUN_MS, report -> {
+            System.out.println(report);
+            runRates(context, rates, publisher, async);
+        });
+    }
+
+    private void runNext(TestContext context, Iterator<Integer> poolSizes, Async async) {
+        if (!poolSizes.hasNext()) {
+            async.complete();
+            return;
+        }
+
+        int poolSize = poolSizes.next();
+        JsonObject config = new JsonObject()
+                .put("address", TOPIC)
+                .put("hosts", new JsonArray().add(new JsonObject().put("host", "localhost").put("port", STUB_PORT)))
+                .put("max_pool_size", poolSize)
+                .put("default_timeout_ms", 60000);
+
+        vertx.deployVerticle(BosunReporter.class.getName(), new DeploymentOptions().setConfig(config), deployed -> {
+            if (deployed.failed()) {
+                context.fail(deployed.cause());
+                return;
+            }
+
+            BosunPublisher publisher = new BosunPublisher(TOPIC, vertx.eventBus());
+            JsonObject tags = new JsonObject().put("host", "load.test");
+            AtomicInteger count = new AtomicInteger(0);
+            long start = System.nanoTime();
+
+            Handler<AsyncResult<Message<JsonObject>>> handler = result -> {
+                if (result.failed()) { context.fail(result.cause()); }
+
+                if (count.incrementAndGet() == TOTAL_MESSAGES) {
+                    double seconds = (System.nanoTime() - start) / 1e9;
+                    System.out.println(String.format("max_pool_size=%d sent %d puts in %.2fs, %.0f puts/sec",
+                            poolSize, TOTAL_MESSAGES, seconds, TOTAL_MESSAGES / seconds));
+                    vertx.undeploy(deployed.result(), undeployed -> runNext(context, poolSizes, async));
+                }
+            };
+
+            for (int i = 0; i < TOTAL_MESSAGES; i++) { publisher.put("load.test.metric", i, tags, handler); }
+        });
+    }
+}
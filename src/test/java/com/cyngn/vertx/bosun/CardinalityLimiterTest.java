@@ -0,0 +1,131 @@
+/*
+ * Copyright 2015 Cyanogen Inc.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.cyngn.vertx.bosun;
+
+import io.vertx.core.json.JsonObject;
+import org.junit.Test;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertSame;
+import static junit.framework.Assert.fail;
+
+public class CardinalityLimiterTest {
+
+    private static OpenTsDbMetric metric(String name, String requestId) {
+        return new OpenTsDbMetric(name, 1, 1000L, new JsonObject().put("host", "a").put("request_id", requestId));
+    }
+
+    private static void assertRejected(CardinalityLimiter limiter, OpenTsDbMetric metric, long now) {
+        try {
+            limiter.apply(metric, now);
+            fail("expected " + metric.getDistinctKey() + " to be rejected");
+        } catch (CardinalityLimiter.LimitExceededException ex) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testReject() {
+        CardinalityLimiter limiter = new CardinalityLimiter(100, 10, 1000, 60000,
+                CardinalityLimiter.REJECT_POLICY, 0);
+        int accepted = 0;
+        for (int i = 0; i < 1000; i++) {
+            try {
+                OpenTsDbMetric metric = metric("api.time", "id" + i);
+                assertSame(metric, limiter.apply(metric, 0));
+                accepted++;
+            } catch (CardinalityLimiter.LimitExceededException ex) {
+                assertEquals("Tag 'request_id' on metric 'api.time' is over the cardinality limit", ex.getMessage());
+            }
+        }
+        assertEquals(100, accepted, 5);
+
+        // the whole tag is blocked, including values it had before
+        assertRejected(limiter, metric("api.time", "id0"), 0);
+        // other metrics aren't affected
+        OpenTsDbMetric other = metric("api.count", "id0");
+        assertSame(other, limiter.apply(other, 0));
+    }
+
+    @Test
+    public void testRewrite() {
+        CardinalityLimiter limiter = new CardinalityLimiter(100, 10, 1000, 60000,
+                CardinalityLimiter.REWRITE_POLICY, 0);
+        for (int i = 0; i < 1000; i++) { limiter.apply(metric("api.time", "id" + i), 0); }
+
+        OpenTsDbMetric rewritten = limiter.apply(metric("api.time", "id5000"), 0);
+        assertEquals(new JsonObject().put("host", "a").put("request_id", CardinalityLimiter.OTHER_VALUE),
+                rewritten.tags);
+        assertEquals(1000L, rewritten.timestamp);
+        assertEquals(1, rewritten.value);
+    }
+
+    @Test
+    public void testWindow() {
+        CardinalityLimiter limiter = new CardinalityLimiter(10, 10, 1000, 60000, CardinalityLimiter.REJECT_POLICY, 0);
+        for (int i = 0; i < 100; i++) {
+            try {
+                limiter.apply(metric("api.time", "id" + i), 0);
+            } catch (CardinalityLimiter.LimitExceededException ex) {
+                // expected once over the limit
+            }
+        }
+        assertRejected(limiter, metric("api.time", "id0"), 59999);
+
+        // a new window starts over
+        OpenTsDbMetric metric = metric("api.time", "id0");
+        assertSame(metric, limiter.apply(metric, 60000));
+    }
+
+    @Test
+    public void testMaxMetrics() {
+        CardinalityLimiter limiter = new CardinalityLimiter(10, 5, 1000, 60000, CardinalityLimiter.REWRITE_POLICY, 0);
+        for (int i = 0; i < 5; i++) { limiter.apply(metric("metric" + i, "id"), 0); }
+        assertEquals(5, limiter.size());
+
+        assertRejected(limiter, metric("metric5", "id"), 0);
+        // ones already tracked still go through
+        limiter.apply(metric("metric0", "id"), 0);
+    }
+
+    @Test
+    public void testMaxSketches() {
+        CardinalityLimiter limiter = new CardinalityLimiter(10, 10, 3, 60000, CardinalityLimiter.REWRITE_POLICY, 0);
+        OpenTsDbMetric first = metric("metric0", "id");
+        assertSame(first, limiter.apply(first, 0));
+        assertEquals(2, limiter.getSketchCount());
+
+        // only the host tag fits, the other is treated as over its limit
+        OpenTsDbMetric rewritten = limiter.apply(metric("metric1", "id"), 0);
+        assertEquals(new JsonObject().put("host", "a").put("request_id", CardinalityLimiter.OTHER_VALUE),
+                rewritten.tags);
+        assertEquals(3, limiter.getSketchCount());
+
+        // a new window starts over
+        OpenTsDbMetric metric = metric("metric1", "id");
+        assertSame(metric, limiter.apply(metric, 60000));
+        assertEquals(2, limiter.getSketchCount());
+    }
+
+    @Test
+    public void testConfig() {
+        try {
+            new CardinalityLimiter(10, 5, 1000, 60000, "drop", 0);
+            fail("expected the policy to be rejected");
+        } catch (IllegalArgumentException ex) {
+            assertEquals("Unknown cardinality policy: drop", ex.getMessage());
+        }
+    }
+}
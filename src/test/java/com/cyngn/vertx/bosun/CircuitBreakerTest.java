@@ -0,0 +1,84 @@
+/*
+ * Copyright 2015 Cyanogen Inc.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.cyngn.vertx.bosun;
+
+import org.junit.Test;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertTrue;
+
+public class CircuitBreakerTest {
+
+    @Test
+    public void testEjectsAfterThreshold() {
+        CircuitBreaker breaker = new CircuitBreaker(3, 1000, 8000);
+        assertFalse(breaker.onFailure(0));
+        assertFalse(breaker.onFailure(0));
+        assertTrue(breaker.isAvailable(0));
+        assertTrue(breaker.onFailure(0));
+
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertFalse(breaker.isAvailable(999));
+        assertFalse(breaker.allowRequest(999));
+    }
+
+    @Test
+    public void testSuccessResetsFailures() {
+        CircuitBreaker breaker = new CircuitBreaker(2, 1000, 8000);
+        breaker.onFailure(0);
+        breaker.onSuccess();
+        assertFalse(breaker.onFailure(0));
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+    }
+
+    @Test
+    public void testSingleProbe() {
+        CircuitBreaker breaker = new CircuitBreaker(1, 1000, 8000);
+        breaker.onFailure(0);
+
+        assertTrue(breaker.isAvailable(1000));
+        assertTrue(breaker.allowRequest(1000));
+        // only one probe at a time
+        assertFalse(breaker.isAvailable(1000));
+        assertFalse(breaker.allowRequest(1000));
+
+        breaker.onSuccess();
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        assertTrue(breaker.allowRequest(1000));
+    }
+
+    @Test
+    public void testFailedProbeBacksOff() {
+        CircuitBreaker breaker = new CircuitBreaker(1, 1000, 3000);
+        breaker.onFailure(0);
+        assertTrue(breaker.allowRequest(1000));
+        assertTrue(breaker.onFailure(1000));
+        assertEquals(2000, breaker.getBackoffMs());
+        assertFalse(breaker.isAvailable(2999));
+        assertTrue(breaker.isAvailable(3000));
+
+        assertTrue(breaker.allowRequest(3000));
+        breaker.onFailure(3000);
+        assertEquals(3000, breaker.getBackoffMs());
+    }
+
+    @Test
+    public void testDisabled() {
+        CircuitBreaker breaker = new CircuitBreaker(0, 1000, 3000);
+        for (int i = 0; i < 100; i++) { assertFalse(breaker.onFailure(0)); }
+        assertTrue(breaker.allowRequest(0));
+    }
+}
@@ -0,0 +1,145 @@
+/*
+ * Copyright 2015 Cyanogen Inc.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.cyngn.vertx.bosun;
+
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.vertx.core.AbstractVerticle;
+import io.vertx.core.Future;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.HttpHeaders;
+import io.vertx.core.http.HttpServerRequest;
+import io.vertx.core.json.JsonObject;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Stands in for a bosun node in tests. Takes put and index requests over http, single datapoints or arrays and
+ * gzipped or not, and answers 204 the way bosun does or 400 for datapoints bosun wouldn't take. It can be made to
+ * answer slowly, fail a share of requests or drop connections without answering, and those can be changed while it
+ * runs to see how the reporter copes.
+ *
+ * Takes the following config:
+ *
+ * port - the port to listen on, defaults to 8070
+ * latency_ms - how long to wait before answering, defaults to 0
+ * latency_jitter_ms - up to this much longer again picked at random per request, defaults to 0
+ * error_rate - the share of requests, between 0 and 1, that get error_status back, defaults to 0
+ * error_status - the status failed requests get, defaults to 503
+ * drop_rate - the share of requests, between 0 and 1, whose connection is closed without an answer, defaults to 0
+ */
+public class FakeBosun extends AbstractVerticle {
+
+    public static final int DEFAULT_PORT = 8070;
+
+    public final AtomicLong requests = new AtomicLong();
+    public final AtomicLong datapointsPut = new AtomicLong();
+    public final AtomicLong datapointsIndexed = new AtomicLong();
+    public final AtomicLong rejected = new AtomicLong();
+    public final AtomicLong errors = new AtomicLong();
+    public final AtomicLong drops = new AtomicLong();
+
+    private final IngestParser parser = new IngestParser(Integer.MAX_VALUE);
+    private volatile int latencyMs;
+    private volatile int latencyJitterMs;
+    private volatile double errorRate;
+    private volatile int errorStatus;
+    private volatile double dropRate;
+
+    @Override
+    public void start(Future<Void> startedResult) {
+        JsonObject config = context.config();
+        int port = config.getInteger("port", DEFAULT_PORT);
+        latencyMs = config.getInteger("latency_ms", 0);
+        latencyJitterMs = config.getInteger("latency_jitter_ms", 0);
+        errorRate = config.getDouble("error_rate", 0.0);
+        errorStatus = config.getInteger("error_status", HttpResponseStatus.SERVICE_UNAVAILABLE.code());
+        dropRate = config.getDouble("drop_rate", 0.0);
+
+        vertx.createHttpServer().requestHandler(this::handle).listen(port, result -> {
+            if (result.succeeded()) { startedResult.complete(); }
+            else { startedResult.fail(result.cause()); }
+        });
+    }
+
+    private void handle(HttpServerRequest request) {
+        request.bodyHandler(body -> {
+            requests.incrementAndGet();
+            double roll = ThreadLocalRandom.current().nextDouble();
+            if (roll < dropRate) {
+                drops.incrementAndGet();
+                request.response().close();
+                return;
+            }
+
+            int status;
+            if (roll < dropRate + errorRate) {
+                errors.incrementAndGet();
+                status = errorStatus;
+            } else {
+                status = accept(request, body);
+            }
+
+            int delay = latencyMs + (latencyJitterMs > 0 ? ThreadLocalRandom.current().nextInt(latencyJitterMs + 1) : 0);
+            if (delay <= 0) {
+                request.response().setStatusCode(status).end();
+            } else {
+                vertx.setTimer(delay, timerId -> request.response().setStatusCode(status).end());
+            }
+        });
+    }
+
+    /**
+     * Count the datapoints in a request
+     *
+     * @return the status to answer with
+     */
+    private int accept(HttpServerRequest request, Buffer body) {
+        AtomicLong counter;
+        if (BosunReporter.PUT_API.equals(request.path())) { counter = datapointsPut; }
+        else if (BosunReporter.INDEX_API.equals(request.path())) { counter = datapointsIndexed; }
+        else { return HttpResponseStatus.NOT_FOUND.code(); }
+
+        try {
+            InputStream in = new ByteArrayInputStream(body.getBytes());
+            if ("gzip".equals(request.getHeader(HttpHeaders.CONTENT_ENCODING.toString()))) {
+                in = new GZIPInputStream(in);
+            }
+            IngestParser.Result result = parser.parse(in);
+            counter.addAndGet(result.metrics.size());
+            if (result.getFailed() == 0) { return HttpResponseStatus.NO_CONTENT.code(); }
+        } catch (IOException ex) {
+            // not JSON
+        }
+        rejected.incrementAndGet();
+        return HttpResponseStatus.BAD_REQUEST.code();
+    }
+
+    public void setLatencyMs(int latencyMs) {
+        this.latencyMs = latencyMs;
+    }
+
+    public void setErrorRate(double errorRate) {
+        this.errorRate = errorRate;
+    }
+
+    public void setDropRate(double dropRate) {
+        this.dropRate = dropRate;
+    }
+}
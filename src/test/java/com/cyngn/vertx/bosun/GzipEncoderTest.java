@@ -0,0 +1,88 @@
+/*
+ * Copyright 2015 Cyanogen Inc.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.cyngn.vertx.bosun;
+
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.json.JsonObject;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
+
+public class GzipEncoderTest {
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        GzipEncoder encoder = new GzipEncoder(1);
+        Buffer body = new PutBodyWriter().write(createMetrics(100));
+
+        Buffer compressed = encoder.encode(body);
+        assertTrue(compressed.length() < body.length());
+        assertEquals(body.toString(), gunzip(compressed));
+        encoder.close();
+    }
+
+    @Test
+    public void testReuse() throws IOException {
+        GzipEncoder encoder = new GzipEncoder(6);
+        PutBodyWriter writer = new PutBodyWriter();
+
+        // bodies big enough to grow the output, then small ones again
+        for (int batchSize : new int[]{1, 2000, 5, 500}) {
+            Buffer body = writer.write(createMetrics(batchSize));
+            assertEquals(body.toString(), gunzip(encoder.encode(body)));
+        }
+        encoder.close();
+    }
+
+    @Test
+    public void testBufferWithoutArray() throws IOException {
+        GzipEncoder encoder = new GzipEncoder(1);
+        Buffer body = Buffer.buffer("{\"metric\":\"test.value\",\"value\":1,\"timestamp\":1,\"tags\":{\"foo\":\"bar\"}}");
+
+        assertEquals(body.toString(), gunzip(encoder.encode(body)));
+        encoder.close();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testBadLevel() {
+        new GzipEncoder(0);
+    }
+
+    private static List<OpenTsDbMetric> createMetrics(int count) {
+        List<OpenTsDbMetric> metrics = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            metrics.add(new OpenTsDbMetric("test.value", i, new JsonObject().put("host", "server" + (i % 10))));
+        }
+        return metrics;
+    }
+
+    private static String gunzip(Buffer data) throws IOException {
+        try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(data.getBytes()))) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] chunk = new byte[1024];
+            int read;
+            while ((read = in.read(chunk)) != -1) { out.write(chunk, 0, read); }
+            return out.toString("UTF-8");
+        }
+    }
+}
@@ -0,0 +1,164 @@
+/*
+ * Copyright 2015 Cyanogen Inc.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.cyngn.vertx.bosun;
+
+import io.vertx.core.json.JsonObject;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertSame;
+import static junit.framework.Assert.assertTrue;
+
+public class HostSelectorTest {
+
+    private List<BosunHost> getHosts() {
+        return Arrays.asList(new BosunHost("a", 1, null, -1, new CircuitBreaker(0, 0, 0)), new BosunHost("b", 1, null, -1, new CircuitBreaker(0, 0, 0)),
+                new BosunHost("c", 1, null, -1, new CircuitBreaker(0, 0, 0)));
+    }
+
+    @Test
+    public void testRoundRobin() {
+        List<BosunHost> hosts = getHosts();
+        HostSelector selector = HostSelector.create(HostSelector.ROUND_ROBIN);
+        for (int i = 0; i < 9; i++) {
+            assertSame(hosts.get(i % 3), selector.select(hosts));
+        }
+    }
+
+    @Test
+    public void testLeastInFlight() {
+        List<BosunHost> hosts = getHosts();
+        hosts.get(0).tryAcquire();
+        hosts.get(0).tryAcquire();
+        hosts.get(2).tryAcquire();
+
+        HostSelector selector = HostSelector.create(HostSelector.LEAST_IN_FLIGHT);
+        for (int i = 0; i < 5; i++) {
+            assertSame(hosts.get(1), selector.select(hosts));
+        }
+    }
+
+    @Test
+    public void testEwmaAvoidsSlowHost() {
+        List<BosunHost> hosts = getHosts();
+        for (int i = 0; i < 20; i++) {
+            hosts.get(0).recordLatency(TimeUnit.MILLISECONDS.toNanos(500));
+            hosts.get(1).recordLatency(TimeUnit.MILLISECONDS.toNanos(5));
+            hosts.get(2).recordLatency(TimeUnit.MILLISECONDS.toNanos(10));
+        }
+        assertTrue(hosts.get(0).getLatencyEwmaNanos() > hosts.get(2).getLatencyEwmaNanos());
+
+        HostSelector selector = HostSelector.create(HostSelector.EWMA_LATENCY);
+        assertSame(hosts.get(1), selector.select(hosts));
+
+        // enough queued work on the fast host tips it over to the next best one
+        for (int i = 0; i < 3; i++) { hosts.get(1).tryAcquire(); }
+        assertSame(hosts.get(2), selector.select(hosts));
+    }
+
+    @Test
+    public void testFailingFastHostIsAvoided() {
+        long timeout = TimeUnit.SECONDS.toNanos(3);
+        for (String name : Arrays.asList(HostSelector.LEAST_IN_FLIGHT, HostSelector.EWMA_LATENCY)) {
+            List<BosunHost> hosts = getHosts();
+            HostSelector selector = HostSelector.create(name);
+
+            // host a refuses every request at once, b and c answer in a few ms and so always have work outstanding
+            int picks = 0;
+            for (int i = 0; i < 300; i++) {
+                BosunHost host = selector.select(hosts);
+                if (host == hosts.get(0)) {
+                    picks++;
+                    host.recordFailure(timeout);
+                } else {
+                    host.recordLatency(TimeUnit.MILLISECONDS.toNanos(5));
+                    if (host.getInFlight() < 2) { host.tryAcquire(); }
+                }
+            }
+
+            assertEquals(0, hosts.get(0).getInFlight());
+            assertTrue(name + " picked the failing host " + picks + " times", picks < 10);
+        }
+    }
+
+    @Test
+    public void testConsistentHash() {
+        List<BosunHost> hosts = getHosts();
+        HostSelector selector = HostSelector.create(HostSelector.CONSISTENT_HASH);
+        selector.setHosts(hosts);
+
+        Map<BosunHost, Integer> counts = new HashMap<>();
+        Map<Long, BosunHost> owners = new HashMap<>();
+        for (int i = 0; i < 30000; i++) {
+            long series = SeriesKeyIndex.fingerprint("api.time", new JsonObject().put("id", String.valueOf(i)));
+            BosunHost owner = selector.select(hosts, series);
+            // a series always goes to the same host
+            assertSame(owner, selector.select(hosts, series));
+            owners.put(series, owner);
+            counts.merge(owner, 1, Integer::sum);
+        }
+        for (BosunHost host : hosts) {
+            assertTrue("uneven spread " + counts, counts.get(host) > 8000 && counts.get(host) < 12000);
+        }
+
+        // with a host gone only its series move
+        List<BosunHost> remaining = Arrays.asList(hosts.get(0), hosts.get(2));
+        for (Map.Entry<Long, BosunHost> series : owners.entrySet()) {
+            BosunHost owner = selector.select(remaining, series.getKey());
+            if (series.getValue() != hosts.get(1)) { assertSame(series.getValue(), owner); }
+        }
+    }
+
+    @Test
+    public void testConsistentHashAcrossInstances() {
+        // every instance has its own host objects, they have to agree on where a series goes
+        List<BosunHost> first = getHosts();
+        List<BosunHost> second = getHosts();
+        ConsistentHashSelector firstSelector = new ConsistentHashSelector();
+        firstSelector.setHosts(first);
+        ConsistentHashSelector secondSelector = new ConsistentHashSelector();
+        secondSelector.setHosts(second);
+
+        for (long series = 0; series < 1000; series++) {
+            long key = SeriesKeyIndex.hash(String.valueOf(series));
+            int index = first.indexOf(firstSelector.select(first, key));
+            assertSame(second.get(index), secondSelector.select(second, key));
+            assertEquals(firstSelector.getHostSeriesKey(key, first.get(index)),
+                    secondSelector.getHostSeriesKey(key, second.get(index)));
+        }
+        assertTrue(firstSelector.getHostSeriesKey(1, first.get(0)) != firstSelector.getHostSeriesKey(1, first.get(1)));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnknownSelector() {
+        HostSelector.create("random");
+    }
+
+    @Test
+    public void testMaxOutstanding() {
+        BosunHost host = new BosunHost("a", 1, null, 2, new CircuitBreaker(0, 0, 0));
+        assertTrue(host.tryAcquire());
+        assertTrue(host.tryAcquire());
+        assertEquals(false, host.tryAcquire());
+        host.release();
+        assertTrue(host.tryAcquire());
+    }
+}
@@ -0,0 +1,65 @@
+/*
+ * Copyright 2015 Cyanogen Inc.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.cyngn.vertx.bosun;
+
+import org.junit.Test;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertTrue;
+import static junit.framework.Assert.fail;
+
+public class HyperLogLogTest {
+
+    @Test
+    public void testSmallCountsAreClose() {
+        HyperLogLog sketch = new HyperLogLog(10);
+        assertEquals(0, sketch.estimate());
+        for (int i = 0; i < 100; i++) { sketch.add(SeriesKeyIndex.hash("value" + i)); }
+        assertTrue(Math.abs(sketch.estimate() - 100) <= 2);
+    }
+
+    @Test
+    public void testDuplicatesDontCount() {
+        HyperLogLog sketch = new HyperLogLog(10);
+        for (int i = 0; i < 1000; i++) { sketch.add(SeriesKeyIndex.hash("value" + (i % 10))); }
+        assertEquals(10, sketch.estimate());
+        // a value that's already in never changes the sketch
+        assertFalse(sketch.add(SeriesKeyIndex.hash("value3")));
+    }
+
+    @Test
+    public void testLargeCounts() {
+        for (int count : new int[] {1000, 10000, 1000000}) {
+            HyperLogLog sketch = new HyperLogLog(10);
+            for (int i = 0; i < count; i++) { sketch.add(SeriesKeyIndex.hash("request-" + i)); }
+            // within 4 standard errors
+            double error = Math.abs(sketch.estimate() - count) / (double) count;
+            assertTrue("count " + count + " estimated " + sketch.estimate(), error < 0.13);
+        }
+    }
+
+    @Test
+    public void testPrecision() {
+        for (int precision : new int[] {3, 17}) {
+            try {
+                new HyperLogLog(precision);
+                fail("expected precision " + precision + " to be rejected");
+            } catch (IllegalArgumentException ex) {
+                // expected
+            }
+        }
+    }
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright 2015 Cyanogen Inc.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.cyngn.vertx.bosun;
+
+import com.fasterxml.jackson.core.JsonParseException;
+import io.vertx.core.json.JsonObject;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
+import static junit.framework.Assert.fail;
+
+public class IngestParserTest {
+
+    private final IngestParser parser = new IngestParser(2);
+
+    private IngestParser.Result parse(String body) throws IOException {
+        return parser.parse(new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Test
+    public void testSingleDatapoint() throws IOException {
+        IngestParser.Result result = parse("{\"metric\":\"api.add_item.time\",\"timestamp\":1437523200," +
+                "\"value\":150.23,\"tags\":{\"host\":\"my.host.com\",\"dc\":\"\u00fcs-west\"}}");
+
+        assertEquals(0, result.getFailed());
+        assertEquals(1, result.metrics.size());
+        OpenTsDbMetric metric = result.metrics.get(0);
+        assertEquals("api.add_item.time", metric.metric);
+        assertEquals(150.23, metric.value);
+        assertEquals(1437523200000L, metric.timestamp);
+        assertEquals(new JsonObject().put("host", "my.host.com").put("dc", "\u00fcs-west"), metric.tags);
+    }
+
+    @Test
+    public void testArray() throws IOException {
+        IngestParser.Result result = parse("[{\"metric\":\"a\",\"value\":1,\"timestamp\":1437523200123," +
+                "\"tags\":{\"host\":\"x\"}},{\"tags\":{\"status\":200},\"value\":\"42\",\"metric\":\"b\"," +
+                "\"unknown\":{\"nested\":[1,2]}}]");
+
+        assertEquals(0, result.getFailed());
+        assertEquals(2, result.metrics.size());
+        assertEquals(1, result.metrics.get(0).value);
+        assertEquals(1437523200123L, result.metrics.get(0).timestamp);
+        assertEquals("42", result.metrics.get(1).value);
+        // numeric tag values are taken as their text
+        assertEquals("200", result.metrics.get(1).tags.getString("status"));
+        // no timestamp means now
+        assertTrue(System.currentTimeMillis() - result.metrics.get(1).timestamp < 5000);
+    }
+
+    @Test
+    public void testBadDatapointsAreSkipped() throws IOException {
+        IngestParser.Result result = parse("[{\"metric\":\"a\",\"value\":1}," +
+                "{\"metric\":\"b\",\"value\":{\"x\":1},\"tags\":{\"host\":\"x\"}}," +
+                "{\"metric\":\"c\",\"value\":1,\"tags\":{\"a\":\"1\",\"b\":\"2\",\"c\":\"3\"}}," +
+                "{\"metric\":\"d\",\"value\":1,\"timestamp\":-5,\"tags\":{\"host\":\"x\"}}," +
+                "5," +
+                // too big for a double, so infinity
+                "{\"metric\":\"f\",\"value\":1e999,\"tags\":{\"host\":\"x\"}}," +
+                "{\"metric\":\"e\",\"value\":1,\"tags\":{\"host\":\"x\"}}]");
+
+        assertEquals(6, result.getFailed());
+        assertEquals(1, result.metrics.size());
+        assertEquals("e", result.metrics.get(0).metric);
+        for (int i = 0; i < 6; i++) {
+            assertEquals(i, (int) result.errors.getJsonObject(i).getInteger(IngestParser.INDEX_FIELD));
+        }
+        assertEquals("You must specify at least one tag",
+                result.errors.getJsonObject(0).getString(IngestParser.ERROR_FIELD));
+        assertEquals("Cannot send more than 2 tags, 3 were attempted",
+                result.errors.getJsonObject(2).getString(IngestParser.ERROR_FIELD));
+    }
+
+    @Test
+    public void testCardinalityLimit() throws IOException {
+        IngestParser limited = new IngestParser(2, new CardinalityLimiter(10, 10, 1000, 60000,
+                CardinalityLimiter.REJECT_POLICY, System.currentTimeMillis()));
+        StringBuilder body = new StringBuilder("[");
+        for (int i = 0; i < 100; i++) {
+            body.append(i == 0 ? "" : ",").append("{\"metric\":\"a\",\"value\":1,\"tags\":{\"id\":\"").append(i)
+                    .append("\"}}");
+        }
+        IngestParser.Result result = limited.parse(new ByteArrayInputStream(
+                body.append("]").toString().getBytes(StandardCharsets.UTF_8)));
+
+        assertEquals(100, result.metrics.size() + result.getFailed());
+        assertEquals(result.getFailed(), result.getLimited());
+        assertTrue(result.metrics.size() >= 8 && result.metrics.size() <= 12);
+        assertEquals("Tag 'id' on metric 'a' is over the cardinality limit",
+                result.errors.getJsonObject(0).getString(IngestParser.ERROR_FIELD));
+    }
+
+    @Test
+    public void testMalformedBody() throws IOException {
+        String[] bodies = {"", "5", "[{\"metric\":\"a\",\"value\":1,\"tags\":{\"host\":\"x\"}}",
+                "{\"metric\":\"a\",\"value\":1,\"tags\":{\"host\":\"x\"}} {}", "{\"metric\":"};
+        for (String body : bodies) {
+            try {
+                parse(body);
+                fail("expected a parse failure for " + body);
+            } catch (JsonParseException ex) {
+                // expected
+            }
+        }
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright 2015 Cyanogen Inc.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.cyngn.vertx.bosun;
+
+import org.junit.Test;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void testSmallValuesAreExact() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 0; i < 100; i++) { histogram.record(i); }
+
+        assertEquals(100, histogram.getCount());
+        assertEquals(49, histogram.getValueAtPercentile(0.5));
+        assertEquals(99, histogram.getValueAtPercentile(1.0));
+    }
+
+    @Test
+    public void testPrecision() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long value = 1; value < (1L << 39); value = value * 3 + 1) {
+            long reported = histogram.getHighestEquivalentValue(histogram.getIndex(value));
+            assertTrue(reported >= value);
+            // within 1/64 for the default 7 bits of precision
+            assertTrue((reported - value) <= value / 64);
+        }
+    }
+
+    @Test
+    public void testBucketsAreContiguous() {
+        LatencyHistogram histogram = new LatencyHistogram(4, 12);
+        long previous = -1;
+        for (int i = 0; histogram.getHighestEquivalentValue(i) < (1 << 12) - 1; i++) {
+            long highest = histogram.getHighestEquivalentValue(i);
+            assertEquals(i, histogram.getIndex(highest));
+            assertEquals(i, histogram.getIndex(previous + 1));
+            previous = highest;
+        }
+    }
+
+    @Test
+    public void testOutOfRangeValues() {
+        LatencyHistogram histogram = new LatencyHistogram(4, 12);
+        histogram.record(-5);
+        histogram.record(Long.MAX_VALUE);
+
+        assertEquals(0, histogram.getValueAtPercentile(0.5));
+        assertEquals((1 << 12) - 1, histogram.getValueAtPercentile(1.0));
+    }
+
+    @Test
+    public void testMergeAndReset() {
+        LatencyHistogram first = new LatencyHistogram();
+        LatencyHistogram second = new LatencyHistogram();
+        for (int i = 0; i < 50; i++) { first.record(i); }
+        for (int i = 50; i < 100; i++) { second.record(i); }
+
+        first.merge(second);
+        assertEquals(100, first.getCount());
+        assertEquals(89, first.getValueAtPercentile(0.9));
+
+        LatencyHistogram snapshot = first.snapshotAndReset();
+        assertEquals(100, snapshot.getCount());
+        assertEquals(0, first.getCount());
+        assertEquals(0, first.getValueAtPercentile(0.9));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testMergeDifferentLayouts() {
+        new LatencyHistogram().merge(new LatencyHistogram(5, 40));
+    }
+}
@@ -0,0 +1,223 @@
+/*
+ * Copyright 2015 Cyanogen Inc.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.cyngn.vertx.bosun;
+
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Drives a BosunPublisher at a steady rate of puts for a while and reports what the reporter behind it kept up
+ * with: puts acked per second, percentiles of the time to a reply, and what the heap and the GC did meanwhile.
+ * Puts go out every few ms to make up the rate, spread over a number of series.
+ */
+public class LoadGenerator {
+
+    private static final long TICK_MS = 5;
+    private static final String METRIC = "load.test.metric";
+
+    private final Vertx vertx;
+    private final BosunPublisher publisher;
+    private final int putsPerSecond;
+    private final JsonObject[] tags;
+
+    /**
+     * Constructor
+     *
+     * @param vertx the vertx instance to run in
+     * @param publisher where the puts go
+     * @param putsPerSecond the rate to put at
+     * @param series how many series to spread the puts over
+     */
+    public LoadGenerator(Vertx vertx, BosunPublisher publisher, int putsPerSecond, int series) {
+        this.vertx = vertx;
+        this.publisher = publisher;
+        this.putsPerSecond = putsPerSecond;
+        tags = new JsonObject[series];
+        for (int i = 0; i < series; i++) { tags[i] = new JsonObject().put("host", "host" + i).put("load", "test"); }
+    }
+
+    /**
+     * Put at the rate for a while, the report comes once every put has its reply
+     *
+     * @param durationMs how long to put for
+     * @param onDone given the report
+     */
+    public void run(long durationMs, Handler<Report> onDone) {
+        vertx.runOnContext(v -> new Run(durationMs, onDone).start());
+    }
+
+    private class Run {
+        final long durationNanos;
+        final Handler<Report> onDone;
+        final LatencyHistogram latencyUs = new LatencyHistogram();
+        final AtomicLong acked = new AtomicLong();
+        final AtomicLong failed = new AtomicLong();
+        long sent;
+        long start;
+        long timerId;
+        boolean sending = true;
+        HeapSample before;
+
+        Run(long durationMs, Handler<Report> onDone) {
+            this.durationNanos = TimeUnit.MILLISECONDS.toNanos(durationMs);
+            this.onDone = onDone;
+        }
+
+        void start() {
+            before = HeapSample.take(true);
+            start = System.nanoTime();
+            timerId = vertx.setPeriodic(TICK_MS, id -> tick());
+        }
+
+        void tick() {
+            long elapsed = Math.min(System.nanoTime() - start, durationNanos);
+            // catch up to where the rate says we should be, so a late timer doesn't lower the rate
+            long due = putsPerSecond * elapsed / TimeUnit.SECONDS.toNanos(1);
+            for (; sent < due; sent++) {
+                long sentAt = System.nanoTime();
+                publisher.put(METRIC, sent, tags[(int) (sent % tags.length)], result -> {
+                    latencyUs.record(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - sentAt));
+                    if (result.succeeded()) { acked.incrementAndGet(); }
+                    else { failed.incrementAndGet(); }
+                    finishIfDone();
+                });
+            }
+
+            if (elapsed >= durationNanos) {
+                vertx.cancelTimer(timerId);
+                sending = false;
+                finishIfDone();
+            }
+        }
+
+        void finishIfDone() {
+            if (sending || acked.get() + failed.get() < sent) { return; }
+
+            // only the first to see the last reply reports
+            sending = true;
+            double seconds = (System.nanoTime() - start) / 1e9;
+            onDone.handle(new Report(putsPerSecond, sent, acked.get(), failed.get(), seconds, latencyUs, before,
+                    HeapSample.take(false)));
+        }
+    }
+
+    /**
+     * The heap and GC counts at a point in time
+     */
+    private static class HeapSample {
+        final long heapUsed;
+        final long heapPeak;
+        final long gcCount;
+        final long gcTimeMs;
+
+        HeapSample(long heapUsed, long heapPeak, long gcCount, long gcTimeMs) {
+            this.heapUsed = heapUsed;
+            this.heapPeak = heapPeak;
+            this.gcCount = gcCount;
+            this.gcTimeMs = gcTimeMs;
+        }
+
+        static HeapSample take(boolean resetPeak) {
+            long used = 0;
+            long peak = 0;
+            for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+                if (pool.getType() != MemoryType.HEAP) { continue; }
+                used += pool.getUsage().getUsed();
+                peak += pool.getPeakUsage().getUsed();
+                if (resetPeak) { pool.resetPeakUsage(); }
+            }
+
+            long count = 0;
+            long time = 0;
+            for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+                count += Math.max(0, gc.getCollectionCount());
+                time += Math.max(0, gc.getCollectionTime());
+            }
+            return new HeapSample(used, peak, count, time);
+        }
+    }
+
+    /**
+     * What happened during a run
+     */
+    public static class Report {
+        public final int targetPerSecond;
+        public final long sent;
+        public final long acked;
+        public final long failed;
+        public final double seconds;
+        // reply latency in microseconds
+        public final LatencyHistogram latencyUs;
+        public final long heapUsedBefore;
+        public final long heapUsedAfter;
+        // summed over the heap pools, so a little over the real peak
+        public final long heapPeak;
+        public final long gcCount;
+        public final long gcTimeMs;
+
+        private Report(int targetPerSecond, long sent, long acked, long failed, double seconds,
+                       LatencyHistogram latencyUs, HeapSample before, HeapSample after) {
+            this.targetPerSecond = targetPerSecond;
+            this.sent = sent;
+            this.acked = acked;
+            this.failed = failed;
+            this.seconds = seconds;
+            this.latencyUs = latencyUs;
+            this.heapUsedBefore = before.heapUsed;
+            this.heapUsedAfter = after.heapUsed;
+            this.heapPeak = after.heapPeak;
+            this.gcCount = after.gcCount - before.gcCount;
+            this.gcTimeMs = after.gcTimeMs - before.gcTimeMs;
+        }
+
+        /**
+         * Get the rate puts were acked at over the whole run, including waiting on the last replies
+         *
+         * @return acked puts per second
+         */
+        public double getAckedPerSecond() {
+            return acked / seconds;
+        }
+
+        public JsonObject toJson() {
+            JsonObject latency = new JsonObject();
+            for (double percentile : BosunAggregator.DEFAULT_PERCENTILES) {
+                latency.put(BosunAggregator.getPercentileName(percentile), latencyUs.getValueAtPercentile(percentile));
+            }
+            return new JsonObject().put("target_per_second", targetPerSecond).put("sent", sent).put("acked", acked)
+                    .put("failed", failed).put("seconds", seconds).put("acked_per_second", getAckedPerSecond())
+                    .put("latency_us", latency).put("heap_used_before", heapUsedBefore)
+                    .put("heap_used_after", heapUsedAfter).put("heap_peak", heapPeak).put("gc_count", gcCount)
+                    .put("gc_time_ms", gcTimeMs);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("target %d/s sent %d acked %d failed %d in %.2fs, %.0f acked/s, reply latency us " +
+                    "p50 %d p99 %d p99.9 %d, heap %dMB -> %dMB peak %dMB, %d GCs taking %d ms", targetPerSecond, sent,
+                    acked, failed, seconds, getAckedPerSecond(), latencyUs.getValueAtPercentile(0.5),
+                    latencyUs.getValueAtPercentile(0.99), latencyUs.getValueAtPercentile(0.999),
+                    heapUsedBefore >> 20, heapUsedAfter >> 20, heapPeak >> 20, gcCount, gcTimeMs);
+        }
+    }
+}
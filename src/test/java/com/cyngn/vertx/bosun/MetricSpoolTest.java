@@ -0,0 +1,101 @@
+/*
+ * Copyright 2015 Cyanogen Inc.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.cyngn.vertx.bosun;
+
+import io.vertx.core.json.JsonObject;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.List;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
+
+public class MetricSpoolTest {
+
+    private static final int SEGMENT_SIZE = 4096;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private OpenTsDbMetric getMetric(int i) {
+        return new OpenTsDbMetric("test.metric", i, 1000L + i, new JsonObject().put("host", "my.host.com"));
+    }
+
+    @Test
+    public void testAppendReadAck() throws Exception {
+        MetricSpool spool = new MetricSpool(folder.getRoot(), SEGMENT_SIZE, SEGMENT_SIZE * 4);
+        assertTrue(spool.isEmpty());
+
+        for (int i = 0; i < 10; i++) { assertTrue(spool.append(getMetric(i))); }
+        assertEquals(10, spool.getPendingRecords());
+
+        List<OpenTsDbMetric> metrics = spool.read(4);
+        assertEquals(4, metrics.size());
+        assertEquals(0, metrics.get(0).value);
+        assertEquals(1000L, metrics.get(0).timestamp);
+
+        // without an ack the same data comes back
+        metrics = spool.read(4);
+        assertEquals(0, metrics.get(0).value);
+        spool.ack();
+        assertEquals(6, spool.getPendingRecords());
+
+        metrics = spool.read(100);
+        assertEquals(6, metrics.size());
+        assertEquals(4, metrics.get(0).value);
+        spool.ack();
+        assertTrue(spool.isEmpty());
+        assertTrue(spool.read(100).isEmpty());
+    }
+
+    @Test
+    public void testRecoverAfterRestart() throws Exception {
+        MetricSpool spool = new MetricSpool(folder.getRoot(), SEGMENT_SIZE, SEGMENT_SIZE * 8);
+        for (int i = 0; i < 100; i++) { spool.append(getMetric(i)); }
+        spool.read(30);
+        spool.ack();
+        spool.close();
+
+        MetricSpool reopened = new MetricSpool(folder.getRoot(), SEGMENT_SIZE, SEGMENT_SIZE * 8);
+        assertEquals(70, reopened.getPendingRecords());
+
+        int expected = 30;
+        while (!reopened.isEmpty()) {
+            for (OpenTsDbMetric metric : reopened.read(25)) {
+                assertEquals(expected++, metric.value);
+            }
+            reopened.ack();
+        }
+        assertEquals(100, expected);
+    }
+
+    @Test
+    public void testDropsOldestWhenFull() throws Exception {
+        MetricSpool spool = new MetricSpool(folder.getRoot(), SEGMENT_SIZE, SEGMENT_SIZE * 2);
+        for (int i = 0; i < 1000; i++) { assertTrue(spool.append(getMetric(i))); }
+
+        assertTrue(spool.getDroppedRecords() > 0);
+        assertEquals(1000, spool.getDroppedRecords() + spool.getPendingRecords());
+        File[] segments = folder.getRoot().listFiles();
+        assertEquals(2, segments.length);
+
+        // what is left is the newest data
+        List<OpenTsDbMetric> metrics = spool.read(1);
+        assertEquals((int) spool.getDroppedRecords(), metrics.get(0).value);
+    }
+}
@@ -0,0 +1,58 @@
+/*
+ * Copyright 2015 Cyanogen Inc.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.cyngn.vertx.bosun;
+
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.json.JsonObject;
+import org.junit.Test;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertSame;
+
+public class OpenTsDbMetricCodecTest {
+
+    private final OpenTsDbMetricCodec codec = new OpenTsDbMetricCodec();
+
+    private OpenTsDbMetric roundTrip(OpenTsDbMetric metric) {
+        Buffer buffer = Buffer.buffer();
+        // the event bus puts its own data in front of ours
+        buffer.appendString("header");
+        codec.encodeToWire(buffer, metric);
+        return codec.decodeFromWire(6, buffer);
+    }
+
+    @Test
+    public void testWireRoundTrip() {
+        JsonObject tags = new JsonObject().put("host", "my.host.com").put("dc", "\u00fctf8");
+        Object[] values = {5, 5L, 5.5, 5.5f, "150.23"};
+
+        for (Object value : values) {
+            OpenTsDbMetric metric = new OpenTsDbMetric("test.metric", value, 1234L, tags);
+            OpenTsDbMetric decoded = roundTrip(metric);
+
+            assertEquals(metric.metric, decoded.metric);
+            assertEquals(value, decoded.value);
+            assertEquals(1234L, decoded.timestamp);
+            assertEquals(tags, decoded.tags);
+            assertEquals(metric.getDistinctKey(), decoded.getDistinctKey());
+        }
+    }
+
+    @Test
+    public void testLocalDeliveryIsByReference() {
+        OpenTsDbMetric metric = new OpenTsDbMetric("test.metric", 5, new JsonObject().put("host", "my.host.com"));
+        assertSame(metric, codec.transform(metric));
+    }
+}
@@ -18,6 +18,8 @@ import io.vertx.core.json.JsonObject;
 import org.junit.Test;
 
 import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
+import static junit.framework.Assert.fail;
 
 /**
  * @author truelove@cyngn.com (Jeremy Truelove) 7/24/15
@@ -34,6 +36,28 @@ public class OpenTsDbMetricTest {
         new OpenTsDbMetric("foo", null, null);
     }
 
+    @Test
+    public void testNonFiniteValues() {
+        JsonObject tags = new JsonObject().put("host", "my.host.com");
+        Object[] values = {Double.NaN, Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY, Float.NaN,
+                Float.POSITIVE_INFINITY};
+        for (Object value : values) {
+            try {
+                new OpenTsDbMetric("test.metric", value, tags);
+                fail("Took " + value);
+            } catch (IllegalArgumentException ex) {
+                // expected
+            }
+
+            try {
+                new OpenTsDbMetric(new JsonObject().put("metric", "test.metric").put("value", value).put("tags", tags));
+                fail("Took " + value + " from JSON");
+            } catch (IllegalArgumentException ex) {
+                // expected
+            }
+        }
+    }
+
     @Test(expected = IllegalArgumentException.class)
     public void testInvalidTags(){
         new OpenTsDbMetric("foo", 5, null);
@@ -56,4 +80,56 @@ public class OpenTsDbMetricTest {
         metric = new OpenTsDbMetric("test.metric", 5, new JsonObject().put("asset", "2").put("host", "my.host.com"));
         assertEquals("test.metric::asset:2::host:my.host.com", metric.getDistinctKey());
     }
+
+    @Test
+    public void testJsonTimestamp() {
+        JsonObject obj = new JsonObject().put("metric", "test.metric").put("value", 5)
+                .put("tags", new JsonObject().put("host", "my.host.com"));
+
+        // senders that don't stamp the metric get the time it was read
+        long before = System.currentTimeMillis();
+        OpenTsDbMetric metric = new OpenTsDbMetric(obj);
+        assertTrue(metric.timestamp >= before && metric.timestamp <= System.currentTimeMillis());
+
+        metric = new OpenTsDbMetric(obj.put("timestamp", 1437523200123L));
+        assertEquals(1437523200123L, metric.timestamp);
+
+        metric = new OpenTsDbMetric(obj.put("timestamp", 1437523200));
+        assertEquals(1437523200000L, metric.timestamp);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidJsonTimestamp() {
+        new OpenTsDbMetric(new JsonObject().put("metric", "test.metric").put("value", 5).put("timestamp", "now")
+                .put("tags", new JsonObject().put("host", "my.host.com")));
+    }
+
+    @Test
+    public void testToMillis() {
+        assertEquals(1437523200000L, OpenTsDbMetric.toMillis(1437523200L));
+        assertEquals(1437523200123L, OpenTsDbMetric.toMillis(1437523200123L));
+        assertEquals(9999999999000L, OpenTsDbMetric.toMillis(9999999999L));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testToMillisTooLong() {
+        OpenTsDbMetric.toMillis(14375232001230L);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testToMillisNegative() {
+        OpenTsDbMetric.toMillis(-1);
+    }
+
+    @Test
+    public void testFingerprintIsCached() {
+        JsonObject tags = new JsonObject().put("host", "my.host.com");
+        OpenTsDbMetric metric = new OpenTsDbMetric("test.metric", 1, tags);
+        long fingerprint = metric.getFingerprint();
+        assertEquals(SeriesKeyIndex.fingerprint("test.metric", tags), fingerprint);
+
+        // worked out once, later calls don't look at the tags again
+        tags.put("host", "other.host.com");
+        assertEquals(fingerprint, metric.getFingerprint());
+    }
 }
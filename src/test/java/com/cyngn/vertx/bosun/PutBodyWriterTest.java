@@ -0,0 +1,67 @@
+/*
+ * Copyright 2015 Cyanogen Inc.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.cyngn.vertx.bosun;
+
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
+
+public class PutBodyWriterTest {
+
+    private final PutBodyWriter writer = new PutBodyWriter();
+
+    @Test
+    public void testSingleMetricIsAnObject() {
+        OpenTsDbMetric metric = new OpenTsDbMetric("test.metric", 5, new JsonObject().put("host", "my.host.com"));
+        Buffer body = writer.write(Collections.singletonList(metric));
+
+        assertEquals(metric.asJson().encode(), body.toString());
+    }
+
+    @Test
+    public void testManyMetricsAreAnArray() {
+        List<OpenTsDbMetric> metrics = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            metrics.add(new OpenTsDbMetric("test.metric" + i, i, new JsonObject().put("host", "my.host.com")));
+        }
+
+        String encoded = writer.write(metrics).toString();
+        assertTrue(encoded.startsWith("["));
+        JsonArray body = new JsonArray(encoded);
+        assertEquals(3, body.size());
+        assertEquals(metrics.get(2).asJson(), body.getJsonObject(2));
+    }
+
+    @Test
+    public void testMatchesJsonEncoding() {
+        JsonObject tags = new JsonObject().put("host", "my.host.com").put("quote", "a\"b\\c")
+                .put("control", "tab\there\u0001").put("unicode", "\u00fc\u20ac\ud83d\ude00");
+        Object[] values = {0, -17, Long.MIN_VALUE, Long.MAX_VALUE, 150.23, 1.5e20, 2.5f, "150.23"};
+
+        for (Object value : values) {
+            OpenTsDbMetric metric = new OpenTsDbMetric("test.metric", value, -1234L, tags);
+            String written = writer.write(Collections.singletonList(metric)).toString();
+            assertEquals(metric.asJson().encode(), written);
+        }
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright 2015 Cyanogen Inc.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.cyngn.vertx.bosun;
+
+import io.vertx.core.json.JsonObject;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertTrue;
+import static junit.framework.Assert.fail;
+
+public class PutLineWriterTest {
+
+    private final PutLineWriter writer = new PutLineWriter();
+
+    @Test
+    public void testSingleMetric() {
+        OpenTsDbMetric metric = new OpenTsDbMetric("api.add_item.time", 150.23, 1437523200123L,
+                new JsonObject().put("host", "my.host.com").put("status", "200"));
+
+        assertEquals("put api.add_item.time 1437523200123 150.23 host=my.host.com status=200\n",
+                writer.write(Collections.singletonList(metric)).toString());
+    }
+
+    @Test
+    public void testValues() {
+        JsonObject tags = new JsonObject().put("host", "a");
+        List<OpenTsDbMetric> metrics = Arrays.asList(new OpenTsDbMetric("m", 5, 1L, tags),
+                new OpenTsDbMetric("m", -7L, 2L, tags), new OpenTsDbMetric("m", Long.MIN_VALUE, 3L, tags),
+                new OpenTsDbMetric("m", 1.5f, 4L, tags), new OpenTsDbMetric("m", "42", 5L, tags));
+
+        assertEquals("put m 1 5 host=a\nput m 2 -7 host=a\nput m 3 " + Long.MIN_VALUE + " host=a\n" +
+                "put m 4 1.5 host=a\nput m 5 42 host=a\n", writer.write(metrics).toString());
+    }
+
+    @Test
+    public void testUtf8() {
+        OpenTsDbMetric metric = new OpenTsDbMetric("test.metric", 1, 1L, new JsonObject().put("dc", "\u00fctf8"));
+        assertEquals("put test.metric 1 1 dc=\u00fctf8\n", writer.write(Collections.singletonList(metric)).toString());
+    }
+
+    @Test
+    public void testInvalidCharacters() {
+        JsonObject tags = new JsonObject().put("host", "a");
+        List<OpenTsDbMetric> invalid = Arrays.asList(new OpenTsDbMetric("test metric", 1, 1L, tags),
+                new OpenTsDbMetric("test.metric", 1, 1L, new JsonObject().put("host", "a b")),
+                new OpenTsDbMetric("test.metric", 1, 1L, new JsonObject().put("host a", "b")),
+                new OpenTsDbMetric("test.metric", 1, 1L, new JsonObject().put("host", "a\nput evil 1 1 host=a")),
+                new OpenTsDbMetric("test.metric\n", 1, 1L, tags),
+                new OpenTsDbMetric("test.metric", "1 2", 1L, tags),
+                new OpenTsDbMetric("test.metric", 1, 1L, new JsonObject().put("host", "")));
+
+        for (OpenTsDbMetric metric : invalid) {
+            assertFalse(metric.metric + " " + metric.tags, PutLineWriter.isWritable(metric));
+            try {
+                writer.write(Collections.singletonList(metric));
+                fail("Wrote " + metric.metric + " " + metric.tags);
+            } catch (IllegalArgumentException ex) {
+                // expected
+            }
+        }
+
+        OpenTsDbMetric valid = new OpenTsDbMetric("test-metric_1/x", 1.5, 1L,
+                new JsonObject().put("host", "\u00fctf8.\ud801\udc00").put("count", 5));
+        assertTrue(PutLineWriter.isWritable(valid));
+        assertEquals("put test-metric_1/x 1 1.5 host=\u00fctf8.\ud801\udc00 count=5\n",
+                writer.write(Collections.singletonList(valid)).toString());
+    }
+
+    @Test
+    public void testReuse() {
+        JsonObject tags = new JsonObject().put("host", "my.host.com");
+        List<OpenTsDbMetric> metrics = new ArrayList<>();
+        StringBuilder expected = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            metrics.add(new OpenTsDbMetric("test.metric", i, 1000L + i, tags));
+            expected.append("put test.metric ").append(1000 + i).append(' ').append(i).append(" host=my.host.com\n");
+        }
+
+        assertEquals(expected.toString(), writer.write(metrics).toString());
+        // a smaller batch after a big one only has its own lines
+        assertEquals("put test.metric 1000 0 host=my.host.com\n",
+                writer.write(metrics.subList(0, 1)).toString());
+    }
+}
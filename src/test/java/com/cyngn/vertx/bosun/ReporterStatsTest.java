@@ -0,0 +1,91 @@
+/*
+ * Copyright 2015 Cyanogen Inc.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.cyngn.vertx.bosun;
+
+import io.vertx.core.json.JsonObject;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertTrue;
+
+public class ReporterStatsTest {
+
+    @Test
+    public void testRotate() {
+        long start = System.currentTimeMillis();
+        ReporterStats stats = new ReporterStats(1000);
+        ReporterStats.HostStats host = stats.getHost("localhost", 8070);
+        host.recordLatency(BosunReporter.PUT_API, TimeUnit.MILLISECONDS.toNanos(5));
+        stats.recordRequest(10, 1000, 1000);
+
+        // nothing shows until the interval is over
+        assertEquals(0L, stats.toJson().getJsonObject("batch_size").getLong("count").longValue());
+
+        assertFalse(stats.rotateIfDue(start));
+        assertTrue(stats.rotateIfDue(start + 2000));
+        // only one instance gets to rotate an interval
+        assertFalse(stats.rotateIfDue(start + 2000));
+
+        JsonObject json = stats.toJson();
+        assertEquals(1L, json.getJsonObject("batch_size").getLong("count").longValue());
+        assertEquals(1000L, json.getJsonObject("requests").getLong("bytes_sent").longValue());
+        JsonObject putLatency = json.getJsonObject("hosts").getJsonObject("localhost:8070")
+                .getJsonObject("latency_us").getJsonObject(BosunReporter.PUT_COMMAND);
+        assertEquals(1L, putLatency.getLong("count").longValue());
+        assertTrue(Math.abs(putLatency.getLong("p50") - 5000) < 100);
+    }
+
+    @Test
+    public void testIndexHitRate() {
+        ReporterStats stats = new ReporterStats(1000);
+        stats.indexHits.add(3);
+        stats.metricsIndexed.increment();
+
+        assertEquals(0.75, stats.toJson().getJsonObject("index").getDouble("hit_rate"));
+    }
+
+    @Test
+    public void testToMetrics() {
+        ReporterStats stats = new ReporterStats(1000);
+        stats.getHost("localhost", 8070).recordLatency(BosunReporter.INDEX_API, 1000);
+        stats.addGauge("index.size", () -> 42);
+        stats.metricsPut.add(7);
+        stats.rotateIfDue(System.currentTimeMillis() + 2000);
+
+        List<OpenTsDbMetric> metrics = stats.toMetrics("vertx.bosun", new JsonObject().put("host", "server1"));
+        boolean foundPut = false, foundGauge = false, foundLatency = false;
+        for (OpenTsDbMetric metric : metrics) {
+            assertEquals("server1", metric.tags.getString("host"));
+            for (String tag : metric.tags.fieldNames()) {
+                assertTrue(tag, metric.tags.getValue(tag) instanceof String);
+            }
+            if (metric.metric.equals("vertx.bosun.metrics.put")) { foundPut = (Long) metric.value == 7; }
+            if (metric.metric.equals("vertx.bosun.index.size")) { foundGauge = (Long) metric.value == 42; }
+            if (metric.metric.equals("vertx.bosun.request.latency_us")) {
+                assertEquals(BosunReporter.INDEX_COMMAND, metric.tags.getString(ReporterStats.API_TAG));
+                assertEquals("localhost", metric.tags.getString(ReporterStats.BOSUN_HOST_TAG));
+                assertEquals("8070", metric.tags.getString(ReporterStats.BOSUN_PORT_TAG));
+                foundLatency = true;
+            }
+        }
+        assertTrue(foundPut);
+        assertTrue(foundGauge);
+        assertTrue(foundLatency);
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright 2015 Cyanogen Inc.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.cyngn.vertx.bosun;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertTrue;
+
+public class RetryPolicyTest {
+
+    @Test
+    public void testClassification() {
+        RetryPolicy policy = new RetryPolicy(2, 100, 1000, Arrays.asList(502, 503), 0.1);
+
+        // no response at all is always worth another go
+        assertTrue(policy.isRetryable(0, 0));
+        assertTrue(policy.isRetryable(0, 503));
+        assertFalse(policy.isRetryable(0, 500));
+        assertFalse(policy.isRetryable(0, 400));
+
+        assertTrue(policy.isRetryable(1, 502));
+        assertFalse(policy.isRetryable(2, 502));
+    }
+
+    @Test
+    public void testDisabled() {
+        RetryPolicy policy = new RetryPolicy(0, 100, 1000, Arrays.asList(503), 0.1);
+        assertFalse(policy.isRetryable(0, 0));
+    }
+
+    @Test
+    public void testBackoff() {
+        RetryPolicy policy = new RetryPolicy(10, 100, 1000, Arrays.asList(503), 0.1);
+        for (int i = 0; i < 100; i++) {
+            long first = policy.getBackoffMs(0);
+            assertTrue(first >= 50 && first <= 100);
+
+            long third = policy.getBackoffMs(2);
+            assertTrue(third >= 200 && third <= 400);
+
+            // capped
+            long last = policy.getBackoffMs(9);
+            assertTrue(last >= 500 && last <= 1000);
+        }
+    }
+
+    @Test
+    public void testShortBackoff() {
+        // vert.x won't take a timer under 1ms
+        RetryPolicy policy = new RetryPolicy(10, 1, 1, Arrays.asList(503), 0.1);
+        for (int i = 0; i < 100; i++) { assertEquals(1, policy.getBackoffMs(0)); }
+    }
+
+    @Test
+    public void testBudget() {
+        RetryPolicy policy = new RetryPolicy(2, 100, 1000, Arrays.asList(503), 0.5);
+
+        // the reserve gets used up first
+        for (int i = 0; i < RetryPolicy.MIN_BUDGET; i++) { assertTrue(policy.tryAcquire()); }
+        assertFalse(policy.tryAcquire());
+
+        // then every request pays for half a retry
+        policy.onRequest();
+        assertFalse(policy.tryAcquire());
+        policy.onRequest();
+        assertTrue(policy.tryAcquire());
+        assertFalse(policy.tryAcquire());
+    }
+
+    @Test
+    public void testBudgetIsCapped() {
+        RetryPolicy policy = new RetryPolicy(2, 100, 1000, Arrays.asList(503), 0.1);
+        for (int i = 0; i < 1000000; i++) { policy.onRequest(); }
+
+        assertEquals(RetryPolicy.MIN_BUDGET + 100.0, policy.getBudget(), 0.001);
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright 2015 Cyanogen Inc.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.cyngn.vertx.bosun;
+
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertSame;
+import static junit.framework.Assert.assertTrue;
+
+public class SeriesHandleTest {
+
+    private final BosunPublisher publisher = new BosunPublisher("test", null);
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidName() {
+        publisher.series("", new JsonObject().put("host", "my.host.com"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidTags() {
+        publisher.series("test.metric", new JsonObject());
+    }
+
+    @Test
+    public void testPrecomputed() {
+        JsonObject tags = new JsonObject().put("host", "my.host.com").put("status", 200);
+        SeriesHandle series = publisher.series("test.metric", tags);
+        OpenTsDbMetric plain = new OpenTsDbMetric("test.metric", 5, new JsonObject().put("host", "my.host.com")
+                .put("status", "200"));
+
+        assertEquals(plain.getDistinctKey(), series.getDistinctKey());
+        assertEquals(plain.getFingerprint(), series.getFingerprint());
+
+        // the handle keeps its own copy
+        tags.put("host", "other.host.com");
+        assertEquals("my.host.com", series.getTags().getString("host"));
+    }
+
+    @Test
+    public void testTagsAreInterned() {
+        SeriesHandle first = publisher.series("test.metric", new JsonObject().put("host", new String("my.host.com")));
+        SeriesHandle second = publisher.series("test.other", new JsonObject().put("host", new String("my.host.com")));
+
+        assertSame(first.getTags().getString("host"), second.getTags().getString("host"));
+    }
+
+    @Test
+    public void testBodyMatchesPlainMetric() {
+        SeriesHandle series = publisher.series("test.\"metric\"", new JsonObject().put("host", "my.host.com")
+                .put("dc", "\u00fctf8"));
+        OpenTsDbMetric fromSeries = new OpenTsDbMetric(series, 5.5, 1234L);
+        OpenTsDbMetric plain = new OpenTsDbMetric("test.\"metric\"", 5.5, 1234L, new JsonObject()
+                .put("host", "my.host.com").put("dc", "\u00fctf8"));
+
+        PutBodyWriter writer = new PutBodyWriter();
+        assertEquals(writer.write(Collections.singletonList(plain)).toString(),
+                writer.write(Collections.singletonList(fromSeries)).toString());
+    }
+
+    @Test
+    public void testPutWithCodec() throws InterruptedException {
+        Vertx vertx = Vertx.vertx();
+        AtomicReference<Object> received = new AtomicReference<>();
+        CountDownLatch latch = new CountDownLatch(1);
+        vertx.eventBus().consumer("series", message -> {
+            received.set(message.body());
+            latch.countDown();
+        });
+
+        BosunPublisher codecPublisher = new BosunPublisher("series", vertx.eventBus(), true);
+        SeriesHandle series = codecPublisher.series("test.metric", new JsonObject().put("host", "my.host.com"));
+        series.put(5, 1437523200L);
+
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        OpenTsDbMetric metric = (OpenTsDbMetric) received.get();
+        assertSame(series, metric.series);
+        assertEquals(1437523200000L, metric.timestamp);
+        vertx.close();
+    }
+}
@@ -0,0 +1,148 @@
+/*
+ * Copyright 2015 Cyanogen Inc.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.cyngn.vertx.bosun;
+
+import io.vertx.core.json.JsonObject;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertTrue;
+
+public class SeriesKeyIndexTest {
+
+    @Test
+    public void testFingerprintIgnoresTagOrder() {
+        JsonObject tags = new JsonObject().put("host", "server1").put("endpoint", "/v1/items");
+        JsonObject reordered = new JsonObject().put("endpoint", "/v1/items").put("host", "server1");
+
+        assertEquals(SeriesKeyIndex.fingerprint("api.time", tags), SeriesKeyIndex.fingerprint("api.time", reordered));
+    }
+
+    @Test
+    public void testFingerprintDistinguishesSeries() {
+        JsonObject tags = new JsonObject().put("host", "server1");
+
+        long fingerprint = SeriesKeyIndex.fingerprint("api.time", tags);
+        assertFalse(fingerprint == SeriesKeyIndex.fingerprint("api.count", tags));
+        assertFalse(fingerprint == SeriesKeyIndex.fingerprint("api.time", new JsonObject().put("host", "server2")));
+        assertFalse(fingerprint == SeriesKeyIndex.fingerprint("api.time", new JsonObject().put("hos", "tserver1")));
+        assertFalse(fingerprint == SeriesKeyIndex.fingerprint("api.time", tags.copy().put("dc", "east")));
+    }
+
+    @Test
+    public void testAdd() {
+        SeriesKeyIndex index = new SeriesKeyIndex(100, 60000);
+        long now = System.currentTimeMillis();
+
+        assertTrue(index.add(42, now));
+        assertFalse(index.add(42, now + 1000));
+        assertTrue(index.contains(42, now));
+        assertFalse(index.contains(43, now));
+        assertEquals(1, index.size());
+    }
+
+    @Test
+    public void testExpiry() {
+        SeriesKeyIndex index = new SeriesKeyIndex(100, 60000);
+        long now = System.currentTimeMillis();
+
+        assertTrue(index.add(42, now));
+        assertFalse(index.contains(42, now + 61000));
+        assertTrue(index.add(42, now + 61000));
+        assertFalse(index.add(42, now + 62000));
+        assertEquals(1, index.size());
+    }
+
+    @Test
+    public void testFull() {
+        SeriesKeyIndex index = new SeriesKeyIndex(1000, 60000);
+        long now = System.currentTimeMillis();
+
+        for (int i = 0; i < 100000; i++) {
+            index.add(SeriesKeyIndex.fingerprint("api.time", new JsonObject().put("host", "server" + i)), now);
+        }
+
+        // it never grows past its table and the most recent series are still there
+        assertTrue(index.size() <= 2048);
+        long last = SeriesKeyIndex.fingerprint("api.time", new JsonObject().put("host", "server99999"));
+        assertTrue(index.contains(last, now));
+    }
+
+    @Test
+    public void testJitter() {
+        SeriesKeyIndex index = new SeriesKeyIndex(1000, 100000, 0.5, 0);
+        long now = System.currentTimeMillis();
+
+        for (int i = 0; i < 1000; i++) { index.add(i, now); }
+
+        // everything is gone by the full expiry, and some have gone by the earliest one
+        int remaining = 0;
+        for (int i = 0; i < 1000; i++) {
+            assertFalse(index.contains(i, now + 101000));
+            if (index.contains(i, now + 75000)) { remaining++; }
+        }
+        assertTrue(remaining > 0 && remaining < 1000);
+    }
+
+    @Test
+    public void testRefreshAhead() {
+        SeriesKeyIndex index = new SeriesKeyIndex(1000, 100000, 0, 0.5);
+        long now = System.currentTimeMillis();
+
+        for (int i = 0; i < 1000; i++) { index.add(i, now); }
+
+        // nothing refreshes before the window starts
+        for (int i = 0; i < 1000; i++) { assertFalse(index.add(i, now + 40000)); }
+        assertEquals(0, index.getRefreshes());
+
+        // part way through the window some do
+        int refreshed = 0;
+        for (int i = 0; i < 1000; i++) {
+            if (index.add(i, now + 75000)) { refreshed++; }
+        }
+        assertTrue(refreshed > 0 && refreshed < 1000);
+        assertEquals(refreshed, index.getRefreshes());
+    }
+
+    @Test
+    public void testRefreshSpread() {
+        SeriesKeyIndex index = new SeriesKeyIndex(1000, 100000, 0, 0.5);
+        long now = System.currentTimeMillis();
+        // 0 is stored as 1, start from 1 so every series has its own slot
+        for (int i = 0; i < 1000; i++) { index.add(i + 1, now); }
+
+        // every series is seen 10 times a second, each should still refresh at its own point in the 50s window
+        int[] perTenSeconds = new int[5];
+        boolean[] refreshed = new boolean[1000];
+        for (long elapsed = 100; elapsed < 100000; elapsed += 100) {
+            for (int i = 0; i < 1000; i++) {
+                if (index.add(i + 1, now + elapsed)) {
+                    assertFalse(refreshed[i]);
+                    assertTrue(elapsed >= 50000);
+                    refreshed[i] = true;
+                    perTenSeconds[(int) ((elapsed - 50000) / 10000)]++;
+                }
+            }
+        }
+
+        for (boolean done : refreshed) { assertTrue(done); }
+        // the odd one whose point is in the last second can make it to its expiry first, depending on the clock
+        assertTrue(index.getRefreshes() > 990);
+        for (int count : perTenSeconds) { assertTrue(Arrays.toString(perTenSeconds), count > 150 && count < 250); }
+    }
+}
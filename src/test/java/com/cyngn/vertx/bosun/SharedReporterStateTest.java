@@ -0,0 +1,90 @@
+/*
+ * Copyright 2015 Cyanogen Inc.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.cyngn.vertx.bosun;
+
+import io.vertx.core.Vertx;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertNotSame;
+import static junit.framework.Assert.assertSame;
+import static junit.framework.Assert.assertTrue;
+
+public class SharedReporterStateTest {
+
+    private Vertx vertx;
+
+    @Before
+    public void setUp() {
+        vertx = Vertx.vertx();
+    }
+
+    @After
+    public void tearDown() {
+        vertx.close();
+    }
+
+    @Test
+    public void testInstancesShareState() throws Exception {
+        AtomicInteger created = new AtomicInteger();
+        SharedReporterState first = SharedReporterState.acquire(vertx, "bosun", () -> {
+            created.incrementAndGet();
+            return new SharedReporterState(new StripedSeriesKeyIndex(100, 60000, 0, 0), null);
+        });
+        SharedReporterState second = SharedReporterState.acquire(vertx, "bosun", () -> {
+            created.incrementAndGet();
+            return new SharedReporterState(new StripedSeriesKeyIndex(100, 60000, 0, 0), null);
+        });
+
+        assertSame(first, second);
+        assertEquals(1, created.get());
+        assertSame(first.getBreaker("localhost", 8070, 5, 1000, 1000),
+                second.getBreaker("localhost", 8070, 5, 1000, 1000));
+
+        // the state goes away with the last instance
+        assertFalse(SharedReporterState.release(vertx, "bosun"));
+        assertTrue(SharedReporterState.release(vertx, "bosun"));
+        SharedReporterState third = SharedReporterState.acquire(vertx, "bosun",
+                () -> new SharedReporterState(new StripedSeriesKeyIndex(100, 60000, 0, 0), null));
+        assertNotSame(first, third);
+    }
+
+    @Test
+    public void testStripedIndexAcrossThreads() throws Exception {
+        StripedSeriesKeyIndex index = new StripedSeriesKeyIndex(10000, 60000, 0, 0);
+        AtomicInteger added = new AtomicInteger();
+        long now = System.currentTimeMillis();
+
+        Thread[] threads = new Thread[4];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread(() -> {
+                for (int series = 0; series < 5000; series++) {
+                    if (index.add(series * 0x9e3779b97f4a7c15L, now)) { added.incrementAndGet(); }
+                }
+            });
+            threads[i].start();
+        }
+        for (Thread thread : threads) { thread.join(); }
+
+        // every series gets indexed once no matter how many instances see it
+        assertEquals(5000, added.get());
+        assertEquals(5000, index.size());
+    }
+}